@@ -0,0 +1,345 @@
+package fr.tvbarthel.cheerleader.library.client;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Used to cache retrieved objects in RAM in order to avoid spamming SoundCloud API
+ * due to multiple calls.
+ * <p/>
+ * Thread safe cache bounded by an estimated size in bytes. Least recently used entries are
+ * evicted first when the budget is exceeded and every entry expires once its time to live
+ * has elapsed.
+ */
+final class CacheRam {
+
+    /**
+     * Default maximum size of the cache in bytes.
+     */
+    static final int DEFAULT_MAX_SIZE = 1024 * 1024;
+
+    /**
+     * Default time to live of a cached entry in milliseconds.
+     */
+    static final long DEFAULT_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * Estimated size of an object header and its reference.
+     */
+    private static final int OBJECT_SIZE = 16;
+
+    /**
+     * Estimated size of the primitive and date fields of a {@link SoundCloudTrack}
+     */
+    private static final int TRACK_FIELDS_SIZE = 128;
+
+    /**
+     * Estimated size of the primitive and date fields of a {@link SoundCloudComment}
+     */
+    private static final int COMMENT_FIELDS_SIZE = 64;
+
+    /**
+     * Estimated size of the primitive fields of a {@link SoundCloudUser}
+     */
+    private static final int USER_FIELDS_SIZE = 64;
+
+    /**
+     * Key prefix of the artist profiles.
+     */
+    private static final String KEY_PROFILE = "profile/";
+
+    /**
+     * Key prefix of the artist tracks.
+     */
+    private static final String KEY_TRACKS = "tracks/";
+
+    /**
+     * Key prefix of the track comments.
+     */
+    private static final String KEY_COMMENTS = "comments/";
+
+    /**
+     * Cached entries in access order, from the least recently used to the most recently used.
+     */
+    private final LinkedHashMap<String, Entry> mEntries;
+
+    /**
+     * Estimated size of the cached entries in bytes.
+     */
+    private int mSize;
+
+    /**
+     * Maximum size of the cache in bytes.
+     */
+    private int mMaxSize;
+
+    /**
+     * Time to live of a cached entry in milliseconds.
+     */
+    private long mTimeToLive;
+
+    /**
+     * Cache using default size and time to live.
+     */
+    CacheRam() {
+        mEntries = new LinkedHashMap<>(16, 0.75f, true);
+        mMaxSize = DEFAULT_MAX_SIZE;
+        mTimeToLive = DEFAULT_TIME_TO_LIVE;
+    }
+
+    /**
+     * Configure the cache. Entries are evicted if the new size is exceeded.
+     * <p/>
+     * The time to live is only applied to the entries cached afterward.
+     *
+     * @param maxSize    maximum size of the cache in bytes.
+     * @param timeToLive time to live of a cached entry in milliseconds.
+     */
+    synchronized void configure(int maxSize, long timeToLive) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Cache size can't be negative.");
+        }
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("Cache time to live can't be negative.");
+        }
+        mMaxSize = maxSize;
+        mTimeToLive = timeToLive;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Retrieve a cached artist profile.
+     *
+     * @param artistName artist name.
+     * @return cached profile or null if not cached or expired.
+     */
+    SoundCloudUser getArtistProfile(String artistName) {
+        return (SoundCloudUser) get(KEY_PROFILE + artistName);
+    }
+
+    /**
+     * Cache an artist profile.
+     *
+     * @param artistName artist name.
+     * @param user       artist profile.
+     */
+    void putArtistProfile(String artistName, SoundCloudUser user) {
+        put(KEY_PROFILE + artistName, user, sizeOf(user));
+    }
+
+    /**
+     * Retrieve cached artist tracks.
+     *
+     * @param artistName artist name.
+     * @return cached tracks or null if not cached or expired.
+     */
+    @SuppressWarnings("unchecked")
+    ArrayList<SoundCloudTrack> getTracks(String artistName) {
+        return (ArrayList<SoundCloudTrack>) get(KEY_TRACKS + artistName);
+    }
+
+    /**
+     * Cache artist tracks.
+     *
+     * @param artistName artist name.
+     * @param tracks     artist tracks.
+     */
+    void putTracks(String artistName, ArrayList<SoundCloudTrack> tracks) {
+        int size = OBJECT_SIZE;
+        for (int i = 0; i < tracks.size(); i++) {
+            size += sizeOf(tracks.get(i));
+        }
+        put(KEY_TRACKS + artistName, tracks, size);
+    }
+
+    /**
+     * Retrieve cached comments of a track.
+     *
+     * @param trackId track id.
+     * @return cached comments or null if not cached or expired.
+     */
+    @SuppressWarnings("unchecked")
+    ArrayList<SoundCloudComment> getTrackComments(int trackId) {
+        return (ArrayList<SoundCloudComment>) get(KEY_COMMENTS + trackId);
+    }
+
+    /**
+     * Cache comments of a track.
+     *
+     * @param trackId  track id.
+     * @param comments track comments.
+     */
+    void putTrackComments(int trackId, ArrayList<SoundCloudComment> comments) {
+        int size = OBJECT_SIZE;
+        for (int i = 0; i < comments.size(); i++) {
+            size += sizeOf(comments.get(i));
+        }
+        put(KEY_COMMENTS + trackId, comments, size);
+    }
+
+    /**
+     * Remove every cached entry.
+     */
+    synchronized void invalidate() {
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    /**
+     * Retrieve a cached value.
+     *
+     * @param key entry key.
+     * @return cached value or null if not cached or expired.
+     */
+    private synchronized Object get(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiration <= SystemClock.elapsedRealtime()) {
+            mEntries.remove(key);
+            mSize -= entry.size;
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Cache a value, values larger than the cache size aren't cached.
+     *
+     * @param key   entry key.
+     * @param value value to cache.
+     * @param size  estimated size of the value in bytes.
+     */
+    private synchronized void put(String key, Object value, int size) {
+        int entrySize = size + sizeOf(key);
+        Entry previous = mEntries.remove(key);
+        if (previous != null) {
+            mSize -= previous.size;
+        }
+        if (entrySize > mMaxSize) {
+            return;
+        }
+        mEntries.put(key, new Entry(value, entrySize, SystemClock.elapsedRealtime() + mTimeToLive));
+        mSize += entrySize;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Evict expired entries then least recently used ones until the cache fits in the given size.
+     *
+     * @param maxSize maximum size in bytes.
+     */
+    private void trimToSize(int maxSize) {
+        long now = SystemClock.elapsedRealtime();
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.expiration <= now) {
+                iterator.remove();
+                mSize -= entry.size;
+            }
+        }
+        iterator = mEntries.entrySet().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            iterator.remove();
+            mSize -= entry.size;
+        }
+    }
+
+    /**
+     * Estimate the size of a track.
+     *
+     * @param track track.
+     * @return estimated size in bytes.
+     */
+    private static int sizeOf(SoundCloudTrack track) {
+        return TRACK_FIELDS_SIZE
+                + sizeOf(track.getPermalink())
+                + sizeOf(track.getPermalingUrl())
+                + sizeOf(track.getArtworkUrl())
+                + sizeOf(track.getDownloadUrl())
+                + sizeOf(track.getStreamUrl())
+                + sizeOf(track.getVideoUrl())
+                + sizeOf(track.getUri())
+                + sizeOf(track.getPurchaseUrl())
+                + sizeOf(track.getGenre())
+                + sizeOf(track.getTitle())
+                + sizeOf(track.getArtist())
+                + sizeOf(track.getDescription())
+                + sizeOf(track.getLabelName())
+                + sizeOf(track.getTrackType())
+                + sizeOf(track.getLicense())
+                + sizeOf(track.getOriginalFormat())
+                + sizeOf(track.getWaveFormUrl());
+    }
+
+    /**
+     * Estimate the size of a comment.
+     *
+     * @param comment comment.
+     * @return estimated size in bytes.
+     */
+    private static int sizeOf(SoundCloudComment comment) {
+        return COMMENT_FIELDS_SIZE
+                + sizeOf(comment.getContent())
+                + sizeOf(comment.getUserName())
+                + sizeOf(comment.getUserAvatarUrl());
+    }
+
+    /**
+     * Estimate the size of a user.
+     *
+     * @param user user.
+     * @return estimated size in bytes.
+     */
+    private static int sizeOf(SoundCloudUser user) {
+        return USER_FIELDS_SIZE
+                + sizeOf(user.getPermaLink())
+                + sizeOf(user.getUserName())
+                + sizeOf(user.getUri())
+                + sizeOf(user.getPermaLinkUrl())
+                + sizeOf(user.getAvatarUrl())
+                + sizeOf(user.getCountry())
+                + sizeOf(user.getFullName())
+                + sizeOf(user.getFirstName())
+                + sizeOf(user.getLastName())
+                + sizeOf(user.getCity())
+                + sizeOf(user.getDescription())
+                + sizeOf(user.getDiscogsName())
+                + sizeOf(user.getMyspaceName())
+                + sizeOf(user.getWebsite())
+                + sizeOf(user.getWebsiteTitle());
+    }
+
+    /**
+     * Estimate the size of a string.
+     *
+     * @param value string, can be null.
+     * @return estimated size in bytes.
+     */
+    private static int sizeOf(String value) {
+        return value == null ? 0 : OBJECT_SIZE + 2 * value.length();
+    }
+
+    /**
+     * Cached value.
+     */
+    private static final class Entry {
+        private final Object value;
+        private final int size;
+        private final long expiration;
+
+        Entry(Object value, int size, long expiration) {
+            this.value = value;
+            this.size = size;
+            this.expiration = expiration;
+        }
+    }
+}
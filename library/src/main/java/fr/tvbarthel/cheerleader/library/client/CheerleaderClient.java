@@ -2,7 +2,6 @@ package fr.tvbarthel.cheerleader.library.client;
 
 import android.content.Context;
 import android.support.annotation.StringRes;
-import android.util.SparseArray;
 
 import java.io.Closeable;
 import java.lang.ref.WeakReference;
@@ -15,7 +14,6 @@ import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
 import retrofit2.converter.gson.GsonConverterFactory;
 import rx.Observable;
-import rx.Subscriber;
 import rx.functions.Func1;
 
 /**
@@ -45,6 +43,11 @@ public final class CheerleaderClient implements Closeable {
      */
     public static final int LOG_OFFLINER = 0x00000010;
 
+    /**
+     * Maximum number of items which can be requested per page.
+     */
+    public static final int MAX_PAGE_SIZE = 200;
+
     /**
      * Sound cloud api url.
      */
@@ -101,6 +104,11 @@ public final class CheerleaderClient implements Closeable {
      */
     private CacheRam mCacheRam;
 
+    /**
+     * Requests currently in-flight, shared between concurrent subscribers.
+     */
+    private InFlightRequests mInFlightRequests;
+
     /**
      * Tools used to handle the offline layer.
      */
@@ -136,12 +144,15 @@ public final class CheerleaderClient implements Closeable {
         mApplicationContext = new WeakReference<>(applicationContext);
 
         mOffliner = new Offliner(getContext(), false);
+        // responses are parsed from the body stream, save them while they are read.
+        mOffliner.streaming(true);
 
         /**
          * Initialize the Retrofit adapter for network communication.
          */
         mRetrofit = new Retrofit.Builder()
                 .baseUrl(SOUND_CLOUD_API)
+                .addConverterFactory(SoundCloudConverterFactory.create())
                 .addConverterFactory(StringConverterFactory.create())
                 .addConverterFactory(GsonConverterFactory.create())
                 .addCallAdapterFactory(RxJavaCallAdapterFactory.create())
@@ -156,6 +167,7 @@ public final class CheerleaderClient implements Closeable {
         mRetrofitService = mRetrofit.create(RetrofitService.class);
 
         mCacheRam = new CacheRam();
+        mInFlightRequests = new InFlightRequests();
     }
 
     /**
@@ -208,72 +220,158 @@ public final class CheerleaderClient implements Closeable {
 
     /**
      * Retrieve the public tracks of the supported artist.
+     * <p/>
+     * Concurrent subscribers share the same request while it is in-flight.
      *
      * @return {@link rx.Observable} on an ArrayList of the artist's tracks.
      */
     public Observable<ArrayList<SoundCloudTrack>> getArtistTracks() {
         checkState();
-        if (mCacheRam.tracks.size() != 0) {
-            return Observable.create(new Observable.OnSubscribe<ArrayList<SoundCloudTrack>>() {
-                @Override
-                public void call(Subscriber<? super ArrayList<SoundCloudTrack>> subscriber) {
-                    subscriber.onNext(mCacheRam.tracks);
-                    subscriber.onCompleted();
-                }
-            });
+        ArrayList<SoundCloudTrack> tracks = mCacheRam.getTracks(mArtistName);
+        if (tracks != null) {
+            return Observable.just(tracks);
         } else {
-            return mRetrofitService.getUserTracks(mArtistName)
-                    .map(RxParser.PARSE_USER_TRACKS)
-                    .map(cacheTracks());
+            return mInFlightRequests.coalesce("tracks/" + mArtistName,
+                    mRetrofitService.getUserTracks(mArtistName)
+                            .map(cacheTracks(mArtistName)));
         }
     }
 
     /**
      * Retrieve SoundCloud artist profile.
+     * <p/>
+     * Concurrent subscribers share the same request while it is in-flight.
      *
      * @return {@link rx.Observable} on {@link SoundCloudUser}
      */
     public Observable<SoundCloudUser> getArtistProfile() {
         checkState();
-        if (mCacheRam.artistProfile != null) {
-            return Observable.create(new Observable.OnSubscribe<SoundCloudUser>() {
-                @Override
-                public void call(Subscriber<? super SoundCloudUser> subscriber) {
-                    subscriber.onNext(mCacheRam.artistProfile);
-                    subscriber.onCompleted();
-                }
-            });
+        SoundCloudUser artistProfile = mCacheRam.getArtistProfile(mArtistName);
+        if (artistProfile != null) {
+            return Observable.just(artistProfile);
         } else {
-            return mRetrofitService.getUser(mArtistName)
-                    .map(RxParser.PARSE_USER)
-                    .map(cacheArtistProfile());
+            return mInFlightRequests.coalesce("profile/" + mArtistName,
+                    mRetrofitService.getUser(mArtistName)
+                            .map(cacheArtistProfile(mArtistName)));
         }
     }
 
     /**
      * Retrieve comments related to a track of the supported artist.
+     * <p/>
+     * Concurrent subscribers share the same request while it is in-flight.
      *
      * @param track track of which comment are related.
      * @return {@link rx.Observable} on {@link java.util.ArrayList}
      * of {@link SoundCloudComment}
      */
-    public Observable<ArrayList<SoundCloudComment>> getTrackComments(final SoundCloudTrack track) {
+    public Observable<ArrayList<SoundCloudComment>> getTrackComments(SoundCloudTrack track) {
         checkState();
-        if (mCacheRam.tracksComments.get(track.getId()) != null) {
-            return Observable.create(new Observable.OnSubscribe<ArrayList<SoundCloudComment>>() {
-                @Override
-                public void call(Subscriber<? super ArrayList<SoundCloudComment>> subscriber) {
-                    subscriber.onNext(mCacheRam.tracksComments.get(track.getId()));
-                    subscriber.onCompleted();
-                }
-            });
+        ArrayList<SoundCloudComment> comments = mCacheRam.getTrackComments(track.getId());
+        if (comments != null) {
+            return Observable.just(comments);
         } else {
-            return mRetrofitService.getTrackComments(track.getId())
-                    .map(RxParser.PARSE_COMMENTS)
-                    .map(cacheTrackComments());
+            return mInFlightRequests.coalesce("comments/" + track.getId(),
+                    mRetrofitService.getTrackComments(track.getId())
+                            .map(cacheTrackComments(track.getId())));
         }
     }
 
+    /**
+     * Retrieve the public tracks of the supported artist page by page.
+     * <p/>
+     * Every page is emitted as soon as it has been received. The next page is requested
+     * automatically once the previous one has been emitted, until the last page.
+     * <p/>
+     * Pages aren't cached in RAM, see also {@link CheerleaderClient#getArtistTracks()}
+     *
+     * @param pageSize number of tracks per page, from 1 to {@link CheerleaderClient#MAX_PAGE_SIZE}
+     * @return {@link rx.Observable} on pages of the artist's tracks.
+     */
+    public Observable<ArrayList<SoundCloudTrack>> getArtistTracks(int pageSize) {
+        return getArtistTracks(pageSize, Observable.just(Boolean.TRUE).repeat());
+    }
+
+    /**
+     * Retrieve the public tracks of the supported artist page by page.
+     * <p/>
+     * The first page is requested on subscription and emitted as soon as it has been received.
+     * Each item emitted by loadMore after a page has been emitted requests the next one. Items
+     * emitted while a page is loading are ignored.
+     * <p/>
+     * The observable completes once the last page has been emitted or when loadMore completes.
+     * <p/>
+     * Pages aren't cached in RAM, see also {@link CheerleaderClient#getArtistTracks()}
+     *
+     * @param pageSize number of tracks per page, from 1 to {@link CheerleaderClient#MAX_PAGE_SIZE}
+     * @param loadMore observable used to request the next page.
+     * @return {@link rx.Observable} on pages of the artist's tracks.
+     */
+    public Observable<ArrayList<SoundCloudTrack>> getArtistTracks(int pageSize, Observable<?> loadMore) {
+        checkState();
+        checkPageSize(pageSize);
+        return paginate(mRetrofitService.getUserTracksPage(mArtistName, pageSize), loadMore,
+                new Func1<String, Observable<SoundCloudPage<SoundCloudTrack>>>() {
+                    @Override
+                    public Observable<SoundCloudPage<SoundCloudTrack>> call(String nextHref) {
+                        return mRetrofitService.getTracksPage(nextHref);
+                    }
+                });
+    }
+
+    /**
+     * Retrieve comments related to a track of the supported artist page by page.
+     * <p/>
+     * Every page is emitted as soon as it has been received. The next page is requested
+     * automatically once the previous one has been emitted, until the last page.
+     * <p/>
+     * Pages aren't cached in RAM, see also {@link CheerleaderClient#getTrackComments(SoundCloudTrack)}
+     *
+     * @param track    track of which comment are related.
+     * @param pageSize number of comments per page, from 1 to {@link CheerleaderClient#MAX_PAGE_SIZE}
+     * @return {@link rx.Observable} on pages of {@link SoundCloudComment}
+     */
+    public Observable<ArrayList<SoundCloudComment>> getTrackComments(SoundCloudTrack track, int pageSize) {
+        return getTrackComments(track, pageSize, Observable.just(Boolean.TRUE).repeat());
+    }
+
+    /**
+     * Retrieve comments related to a track of the supported artist page by page.
+     * <p/>
+     * The first page is requested on subscription and emitted as soon as it has been received.
+     * Each item emitted by loadMore after a page has been emitted requests the next one. Items
+     * emitted while a page is loading are ignored.
+     * <p/>
+     * The observable completes once the last page has been emitted or when loadMore completes.
+     *
+     * @param track    track of which comment are related.
+     * @param pageSize number of comments per page, from 1 to {@link CheerleaderClient#MAX_PAGE_SIZE}
+     * @param loadMore observable used to request the next page.
+     * @return {@link rx.Observable} on pages of {@link SoundCloudComment}
+     */
+    public Observable<ArrayList<SoundCloudComment>> getTrackComments(SoundCloudTrack track, int pageSize,
+                                                                    Observable<?> loadMore) {
+        checkState();
+        checkPageSize(pageSize);
+        return paginate(mRetrofitService.getTrackCommentsPage(track.getId(), pageSize), loadMore,
+                new Func1<String, Observable<SoundCloudPage<SoundCloudComment>>>() {
+                    @Override
+                    public Observable<SoundCloudPage<SoundCloudComment>> call(String nextHref) {
+                        return mRetrofitService.getCommentsPage(nextHref);
+                    }
+                });
+    }
+
+    /**
+     * Remove every artist profile, tracks and comments cached in RAM.
+     * <p/>
+     * Following calls will request SoundCloud API again.
+     */
+    public void invalidateCache() {
+        checkState();
+        mCacheRam.invalidate();
+    }
+
     /**
      * Define the log policy.
      * <p/>
@@ -302,6 +400,17 @@ public final class CheerleaderClient implements Closeable {
 
     }
 
+    /**
+     * Define the RAM cache policy.
+     *
+     * @param maxSize    maximum size of the cache in bytes.
+     * @param timeToLive time to live of a cached entry in milliseconds.
+     */
+    private void setCache(int maxSize, long timeToLive) {
+        checkState();
+        mCacheRam.configure(maxSize, timeToLive);
+    }
+
     /**
      * Retrieve the context used at the creation.
      *
@@ -323,17 +432,58 @@ public final class CheerleaderClient implements Closeable {
         }
     }
 
+    /**
+     * Used to check the requested page size.
+     *
+     * @param pageSize requested page size.
+     */
+    private static void checkPageSize(int pageSize) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Emit the items of a page then wait for loadMore before requesting the next one.
+     *
+     * @param page     request of the page to emit.
+     * @param loadMore observable used to request the next page.
+     * @param nextPage function used to request a page from its url.
+     * @param <T>      type of the page items.
+     * @return {@link rx.Observable} on the items of the page and the following ones.
+     */
+    private <T> Observable<ArrayList<T>> paginate(Observable<SoundCloudPage<T>> page,
+                                                  final Observable<?> loadMore,
+                                                  final Func1<String, Observable<SoundCloudPage<T>>> nextPage) {
+        return page.concatMap(new Func1<SoundCloudPage<T>, Observable<ArrayList<T>>>() {
+            @Override
+            public Observable<ArrayList<T>> call(final SoundCloudPage<T> soundCloudPage) {
+                Observable<ArrayList<T>> items = Observable.just(soundCloudPage.getCollection());
+                if (!soundCloudPage.hasNext()) {
+                    return items;
+                }
+                return items.concatWith(loadMore.take(1).concatMap(new Func1<Object, Observable<ArrayList<T>>>() {
+                    @Override
+                    public Observable<ArrayList<T>> call(Object o) {
+                        return paginate(nextPage.call(soundCloudPage.getNextHref()), loadMore, nextPage);
+                    }
+                }));
+            }
+        });
+    }
+
     /**
      * "Cache" the artist profile retrieved from network in RAM
      * to avoid requesting SoundCloud API for next call.
      *
+     * @param artistName name of the artist.
      * @return {@link rx.functions.Func1} used to save the retrieved artist
      */
-    private Func1<SoundCloudUser, SoundCloudUser> cacheArtistProfile() {
+    private Func1<SoundCloudUser, SoundCloudUser> cacheArtistProfile(final String artistName) {
         return new Func1<SoundCloudUser, SoundCloudUser>() {
             @Override
             public SoundCloudUser call(SoundCloudUser soundCloudUser) {
-                mCacheRam.artistProfile = soundCloudUser;
+                mCacheRam.putArtistProfile(artistName, soundCloudUser);
                 return soundCloudUser;
             }
         };
@@ -343,15 +493,15 @@ public final class CheerleaderClient implements Closeable {
      * "Cache" the comments linked to a track retrieved from network in RAM
      * to avoid requesting SoundCloud API for next call.
      *
+     * @param trackId id of the track.
      * @return {@link rx.functions.Func1} used to save the retrieved comments list
      */
-    private Func1<ArrayList<SoundCloudComment>, ArrayList<SoundCloudComment>> cacheTrackComments() {
+    private Func1<ArrayList<SoundCloudComment>, ArrayList<SoundCloudComment>> cacheTrackComments(
+            final int trackId) {
         return new Func1<ArrayList<SoundCloudComment>, ArrayList<SoundCloudComment>>() {
             @Override
             public ArrayList<SoundCloudComment> call(ArrayList<SoundCloudComment> trackComments) {
-                if (trackComments.size() > 0) {
-                    mCacheRam.tracksComments.put(trackComments.get(0).getTrackId(), trackComments);
-                }
+                mCacheRam.putTrackComments(trackId, trackComments);
                 return trackComments;
             }
         };
@@ -361,14 +511,15 @@ public final class CheerleaderClient implements Closeable {
      * "Cache" the tracks list of the supported artist retrieved from network in RAM
      * to avoid requesting SoundCloud API for next call.
      *
+     * @param artistName name of the artist.
      * @return {@link rx.functions.Func1} used to save the retrieved tracks list
      */
-    private Func1<ArrayList<SoundCloudTrack>, ArrayList<SoundCloudTrack>> cacheTracks() {
+    private Func1<ArrayList<SoundCloudTrack>, ArrayList<SoundCloudTrack>> cacheTracks(final String artistName) {
         return new Func1<ArrayList<SoundCloudTrack>, ArrayList<SoundCloudTrack>>() {
             @Override
             public ArrayList<SoundCloudTrack> call(ArrayList<SoundCloudTrack> soundCloudTracks) {
                 if (soundCloudTracks.size() > 0) {
-                    mCacheRam.tracks = soundCloudTracks;
+                    mCacheRam.putTracks(artistName, soundCloudTracks);
                 }
                 return soundCloudTracks;
             }
@@ -385,12 +536,20 @@ public final class CheerleaderClient implements Closeable {
         private String apiKey;
         private String artistName;
         private int logLevel;
+        private int cacheMaxSize;
+        private long cacheTimeToLive;
+        private boolean crossProcessOffline;
+        private boolean compressOffline;
+        private long offlineMaxSize;
+        private long offlineMaxAge;
 
         /**
          * Default constructor.
          */
         public Builder() {
             logLevel = LOG_NONE;
+            cacheMaxSize = -1;
+            offlineMaxSize = -1;
         }
 
         /**
@@ -470,6 +629,79 @@ public final class CheerleaderClient implements Closeable {
             return this;
         }
 
+        /**
+         * Define the policy of the RAM cache used for artist profile, tracks and comments.
+         * <p/>
+         * Least recently used entries are evicted once the cache exceeds its maximum size.
+         * By default, the cache is limited to 1 MiB and entries expire after 30 minutes.
+         *
+         * @param maxSize    maximum size of the cache in bytes, 0 to disable the cache.
+         * @param timeToLive time to live of a cached entry in milliseconds.
+         * @return {@link CheerleaderClient.Builder}
+         */
+        public Builder cache(int maxSize, long timeToLive) {
+            if (maxSize < 0) {
+                throw new IllegalArgumentException("Cache size can't be negative.");
+            }
+            if (timeToLive < 0) {
+                throw new IllegalArgumentException("Cache time to live can't be negative.");
+            }
+            this.cacheMaxSize = maxSize;
+            this.cacheTimeToLive = timeToLive;
+            return this;
+        }
+
+        /**
+         * Define the eviction policy of the offline storage.
+         * <p/>
+         * Responses older than the maximum age are deleted first, then the oldest ones until the
+         * storage fits in its maximum size. By default, the storage is limited to 10 MiB and
+         * responses are kept 30 days.
+         *
+         * @param maxSize maximum size of the offline storage in bytes, 0 for no limit.
+         * @param maxAge  maximum age of a response in milliseconds, 0 for no limit.
+         * @return {@link CheerleaderClient.Builder}
+         */
+        public Builder offline(long maxSize, long maxAge) {
+            if (maxSize < 0) {
+                throw new IllegalArgumentException("Offline maximum size can't be negative.");
+            }
+            if (maxAge < 0) {
+                throw new IllegalArgumentException("Offline maximum age can't be negative.");
+            }
+            this.offlineMaxSize = maxSize;
+            this.offlineMaxAge = maxAge;
+            return this;
+        }
+
+        /**
+         * Store the offline responses as compressed blobs instead of plain text.
+         * <p/>
+         * Reduces the size of the offline storage and the disk I/O at the cost of compressing on
+         * saving and decompressing on offline access. Disabled by default.
+         *
+         * @param enable true to store the offline responses as compressed blobs.
+         * @return {@link CheerleaderClient.Builder}
+         */
+        public Builder compressOffline(boolean enable) {
+            this.compressOffline = enable;
+            return this;
+        }
+
+        /**
+         * Access the offline storage through a content provider instead of the database.
+         * <p/>
+         * Only needed when the offline storage is shared between processes, direct access to
+         * the database is faster. Disabled by default.
+         *
+         * @param enable true to access the offline storage through a content provider.
+         * @return {@link CheerleaderClient.Builder}
+         */
+        public Builder crossProcessOffline(boolean enable) {
+            this.crossProcessOffline = enable;
+            return this;
+        }
+
         /**
          * Build the client.
          *
@@ -501,22 +733,18 @@ public final class CheerleaderClient implements Closeable {
                 sInstance.setLog(logLevel);
             }
 
-            return sInstance;
-        }
-    }
+            sInstance.mOffliner.crossProcess(crossProcessOffline);
+            sInstance.mOffliner.compress(compressOffline);
 
-    /**
-     * Used to cache retrieve object in RAM in order to avoid spamming SoundCloud API
-     * to due multiple call.
-     */
-    private static final class CacheRam {
-        private SoundCloudUser artistProfile;
-        private SparseArray<ArrayList<SoundCloudComment>> tracksComments;
-        private ArrayList<SoundCloudTrack> tracks;
+            if (offlineMaxSize != -1) {
+                sInstance.mOffliner.evictionPolicy(offlineMaxSize, offlineMaxAge);
+            }
 
-        CacheRam() {
-            tracksComments = new SparseArray<>();
-            tracks = new ArrayList<>();
+            if (cacheMaxSize != -1) {
+                sInstance.setCache(cacheMaxSize, cacheTimeToLive);
+            }
+
+            return sInstance;
         }
     }
 
@@ -0,0 +1,103 @@
+package fr.tvbarthel.cheerleader.library.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Func0;
+
+/**
+ * Used to share a single in-flight request between every concurrent subscriber of the same key.
+ * <p/>
+ * The shared request is reference-counted : it is performed on the first subscription and
+ * cancelled once every subscriber has unsubscribed. A request which has terminated or has been
+ * cancelled is forgotten so that the next subscription performs a new one.
+ */
+final class InFlightRequests {
+
+    /**
+     * Shared requests currently in-flight mapped by their key.
+     */
+    private final ConcurrentHashMap<String, Observable<?>> mRequests;
+
+    /**
+     * Default constructor.
+     */
+    InFlightRequests() {
+        mRequests = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Share the given request with the subscribers of the same key.
+     * <p/>
+     * The in-flight lookup is performed at subscription time, the given request is only
+     * subscribed when no request is already in-flight for the key.
+     *
+     * @param key     key identifying the requested resource.
+     * @param request request to perform when none is in-flight for the key.
+     * @param <T>     type of the requested resource.
+     * @return {@link rx.Observable} sharing the in-flight request.
+     */
+    <T> Observable<T> coalesce(final String key, final Observable<T> request) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            public Observable<T> call() {
+                return getOrPut(key, request);
+            }
+        });
+    }
+
+    /**
+     * Retrieve the in-flight request for the given key or register the given one.
+     *
+     * @param key     key identifying the requested resource.
+     * @param request request to register when none is in-flight for the key.
+     * @param <T>     type of the requested resource.
+     * @return shared in-flight request.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Observable<T> getOrPut(String key, Observable<T> request) {
+        Observable<T> inFlight = (Observable<T>) mRequests.get(key);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        Forget forget = new Forget(key);
+        Observable<T> shared = request
+                .doOnTerminate(forget)
+                .doOnUnsubscribe(forget)
+                .share();
+        forget.mRequest = shared;
+        inFlight = (Observable<T>) mRequests.putIfAbsent(key, shared);
+        return inFlight != null ? inFlight : shared;
+    }
+
+    /**
+     * Action used to forget a shared request once terminated or cancelled.
+     */
+    private final class Forget implements Action0 {
+
+        /**
+         * Key of the shared request.
+         */
+        private final String mKey;
+
+        /**
+         * Shared request to forget, only removed if still mapped to the key.
+         */
+        private Observable<?> mRequest;
+
+        /**
+         * Action used to forget a shared request.
+         *
+         * @param key key of the shared request.
+         */
+        private Forget(String key) {
+            mKey = key;
+        }
+
+        @Override
+        public void call() {
+            mRequests.remove(mKey, mRequest);
+        }
+    }
+}
@@ -0,0 +1,655 @@
+package fr.tvbarthel.cheerleader.library.client;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Single pass parser for SoundCloud api responses.
+ * <p/>
+ * Objects are built while the tokens are read from the response body, no intermediate
+ * json tree is allocated.
+ * <p/>
+ * Not thread safe, one instance should be used per response.
+ */
+final class JsonStreamParser {
+
+    /**
+     * Log cat.
+     */
+    private static final String TAG = JsonStreamParser.class.getSimpleName();
+
+    /**
+     * Date format used by SoundCloud for tracks.
+     */
+    private static final String TRACK_DATE_FORMAT = "yyyy/MM/dd HH:mm:ss Z";
+
+    /**
+     * Date format used by SoundCloud for comments.
+     */
+    private static final String COMMENT_DATE_FORMAT = "yyyy/MM/dd HH:mm:ss";
+
+    /**
+     * FIELD
+     */
+    private static final String ID = "id";
+    private static final String USER_ID = "user_id";
+    private static final String USER = "user";
+    private static final String PERMALINK = "permalink";
+    private static final String PERMALINK_URL = "permalink_url";
+    private static final String ARTWORK_URL = "artwork_url";
+    private static final String WAVEFORM_URL = "waveform_url";
+    private static final String DOWNLOAD_URL = "download_url";
+    private static final String STREAM_URL = "stream_url";
+    private static final String VIDEO_URL = "video_url";
+    private static final String PURCHASE_URL = "purchase_url";
+    private static final String USERNAME = "username";
+    private static final String URI = "uri";
+    private static final String AVATAR_URL = "avatar_url";
+    private static final String COUNTRY = "country";
+    private static final String FULL_NAME = "full_name";
+    private static final String FIRST_NAME = "first_name";
+    private static final String LAST_NAME = "last_name";
+    private static final String CITY = "city";
+    private static final String DESCRIPTION = "description";
+    private static final String DISCOGS_NAME = "discogs_name";
+    private static final String MYSPACE_NAME = "myspace_name";
+    private static final String WEBSITE = "website";
+    private static final String WEBSITE_TITLE = "website_title";
+    private static final String ONLINE = "online";
+    private static final String TRACK_COUNT = "track_count";
+    private static final String TRACK_ID = "track_id";
+    private static final String TIMESTAMP = "timestamp";
+    private static final String BODY = "body";
+    private static final String PLAYLIST_COUNT = "playlist_count";
+    private static final String PUBLIC_FAVORITE_COUNT = "public_favorite_count";
+    private static final String FOLLOWERS_COUNT = "followers_count";
+    private static final String FOLLOWINGS_COUNT = "followings_count";
+    private static final String COMNENT_COUNT = "comment_count";
+    private static final String FAVORITINGS_COUNT = "favoritings_count";
+    private static final String DOWNLOAD_COUNT = "download_count";
+    private static final String PLAYBACK_COUNT = "playback_count";
+    private static final String ORIGINAL_CONTENT_SIZE = "original_content_size";
+    private static final String LABEL_ID = "label_id";
+    private static final String BMP = "bmp";
+    private static final String DURATION = "duration";
+    private static final String CREATED_AT = "created_at";
+    private static final String STREAMABLE = "streamable";
+    private static final String DOWNLOADABLE = "downloadable";
+    private static final String COMMENTABLE = "commentable";
+    private static final String GENRE = "genre";
+    private static final String TITLE = "title";
+    private static final String LABEL_NAME = "label_name";
+    private static final String TRACK_TYPE = "track_type";
+    private static final String LICENCE = "license";
+    private static final String ORIGINAL_FORMAT = "original_format";
+    private static final String PUBLIC = "public";
+    private static final String SHARING = "sharing";
+    private static final String COLLECTION = "collection";
+    private static final String NEXT_HREF = "next_href";
+
+    /**
+     * Format used to parse track creation date, lazily created and reused for a whole list.
+     */
+    private SimpleDateFormat mTrackDateFormat;
+
+    /**
+     * Format used to parse comment creation date, lazily created and reused for a whole list.
+     */
+    private SimpleDateFormat mCommentDateFormat;
+
+    /**
+     * Parse a {@link SoundCloudUser}.
+     *
+     * @param reader reader positioned on the user object.
+     * @return parsed user.
+     * @throws IOException if the json is malformed.
+     */
+    SoundCloudUser parseUser(JsonReader reader) throws IOException {
+        SoundCloudUser user = new SoundCloudUser();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case ID:
+                    user.setId(nextInt(reader));
+                    break;
+                case PERMALINK:
+                    user.setPermaLink(nextString(reader));
+                    break;
+                case PERMALINK_URL:
+                    user.setPermaLinkUrl(nextString(reader));
+                    break;
+                case USERNAME:
+                    user.setUserName(nextString(reader));
+                    break;
+                case URI:
+                    user.setUri(nextString(reader));
+                    break;
+                case AVATAR_URL:
+                    user.setAvatarUrl(nextString(reader));
+                    break;
+                case COUNTRY:
+                    user.setCountry(nextString(reader));
+                    break;
+                case FULL_NAME:
+                    user.setFullName(nextString(reader));
+                    break;
+                case FIRST_NAME:
+                    user.setFirstName(nextString(reader));
+                    break;
+                case LAST_NAME:
+                    user.setLastName(nextString(reader));
+                    break;
+                case CITY:
+                    user.setCity(nextString(reader));
+                    break;
+                case DESCRIPTION:
+                    user.setDescription(nextString(reader));
+                    break;
+                case DISCOGS_NAME:
+                    user.setDiscogsName(nextString(reader));
+                    break;
+                case MYSPACE_NAME:
+                    user.setMyspaceName(nextString(reader));
+                    break;
+                case WEBSITE:
+                    user.setWebsite(nextString(reader));
+                    break;
+                case WEBSITE_TITLE:
+                    user.setWebsiteTitle(nextString(reader));
+                    break;
+                case ONLINE:
+                    user.setOnline(nextBoolean(reader));
+                    break;
+                case TRACK_COUNT:
+                    user.setTrackCount(nextInt(reader));
+                    break;
+                case PLAYLIST_COUNT:
+                    user.setPlaylistCount(nextInt(reader));
+                    break;
+                case PUBLIC_FAVORITE_COUNT:
+                    user.setPublicFavoritedCount(nextInt(reader));
+                    break;
+                case FOLLOWERS_COUNT:
+                    user.setFollowersCount(nextInt(reader));
+                    break;
+                case FOLLOWINGS_COUNT:
+                    user.setFollowingsCount(nextInt(reader));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (TextUtils.isEmpty(user.getFullName())) {
+            user.setFullName(user.getUserName());
+        }
+        return user;
+    }
+
+    /**
+     * Parse a list of {@link SoundCloudTrack}.
+     *
+     * @param reader reader positioned on the track array.
+     * @return parsed tracks.
+     * @throws IOException if the json is malformed.
+     */
+    ArrayList<SoundCloudTrack> parseTracks(JsonReader reader) throws IOException {
+        ArrayList<SoundCloudTrack> tracks = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            tracks.add(parseTrack(reader));
+        }
+        reader.endArray();
+        return tracks;
+    }
+
+    /**
+     * Parse a page of {@link SoundCloudTrack} retrieved with linked partitioning.
+     *
+     * @param reader reader positioned on the page object.
+     * @return parsed page.
+     * @throws IOException if the json is malformed.
+     */
+    SoundCloudPage<SoundCloudTrack> parseTrackPage(JsonReader reader) throws IOException {
+        SoundCloudPage<SoundCloudTrack> page = new SoundCloudPage<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (COLLECTION.equals(name)) {
+                page.setCollection(parseTracks(reader));
+            } else if (NEXT_HREF.equals(name)) {
+                page.setNextHref(nextString(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return page;
+    }
+
+    /**
+     * Parse a {@link SoundCloudTrack}.
+     *
+     * @param reader reader positioned on the track object.
+     * @return parsed track.
+     * @throws IOException if the json is malformed.
+     */
+    SoundCloudTrack parseTrack(JsonReader reader) throws IOException {
+        SoundCloudTrack track = new SoundCloudTrack();
+        String title = null;
+        String userName = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (!parseTrackField(reader, name, track)) {
+                switch (name) {
+                    case TITLE:
+                        title = nextString(reader);
+                        break;
+                    case USER:
+                        userName = parseUserName(reader);
+                        break;
+                    case CREATED_AT:
+                        track.setCreationDate(
+                                parseDate(getTrackDateFormat(), nextString(reader)));
+                        break;
+                    case SHARING:
+                        String sharing = nextString(reader);
+                        track.setPublicSharing(sharing != null && sharing.endsWith(PUBLIC));
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+        }
+        reader.endObject();
+
+        // title and user may come in any order, artist is resolved once the object is read.
+        if (title == null) {
+            title = "";
+        }
+        int dashIndex = title.indexOf('-');
+        if (dashIndex == -1) {
+            track.setTitle(title);
+            track.setArtist(userName);
+        } else {
+            track.setTitle(title.substring(dashIndex + 1, title.length()).trim());
+            track.setArtist(title.substring(0, dashIndex).trim());
+        }
+        return track;
+    }
+
+    /**
+     * Parse a list of {@link SoundCloudComment}.
+     *
+     * @param reader reader positioned on the comment array.
+     * @return parsed comments.
+     * @throws IOException if the json is malformed.
+     */
+    ArrayList<SoundCloudComment> parseComments(JsonReader reader) throws IOException {
+        ArrayList<SoundCloudComment> comments = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            comments.add(parseComment(reader));
+        }
+        reader.endArray();
+        return comments;
+    }
+
+    /**
+     * Parse a page of {@link SoundCloudComment} retrieved with linked partitioning.
+     *
+     * @param reader reader positioned on the page object.
+     * @return parsed page.
+     * @throws IOException if the json is malformed.
+     */
+    SoundCloudPage<SoundCloudComment> parseCommentPage(JsonReader reader) throws IOException {
+        SoundCloudPage<SoundCloudComment> page = new SoundCloudPage<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (COLLECTION.equals(name)) {
+                page.setCollection(parseComments(reader));
+            } else if (NEXT_HREF.equals(name)) {
+                page.setNextHref(nextString(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return page;
+    }
+
+    /**
+     * Parse a {@link SoundCloudComment}.
+     *
+     * @param reader reader positioned on the comment object.
+     * @return parsed comment.
+     * @throws IOException if the json is malformed.
+     */
+    SoundCloudComment parseComment(JsonReader reader) throws IOException {
+        SoundCloudComment comment = new SoundCloudComment();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case ID:
+                    comment.setId(nextInt(reader));
+                    break;
+                case CREATED_AT:
+                    comment.setCreationDate(parseDate(getCommentDateFormat(), nextString(reader)));
+                    break;
+                case TRACK_ID:
+                    comment.setTrackId(nextInt(reader));
+                    break;
+                case TIMESTAMP:
+                    comment.setTrackTimeStamp(nextInt(reader));
+                    break;
+                case BODY:
+                    comment.setContent(nextString(reader));
+                    break;
+                case USER:
+                    parseCommentUser(reader, comment);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return comment;
+    }
+
+    /**
+     * Parse the simple fields of a track.
+     *
+     * @param reader reader positioned on the field value.
+     * @param name   field name.
+     * @param track  track to fill.
+     * @return true if the field has been consumed.
+     * @throws IOException if the json is malformed.
+     */
+    private boolean parseTrackField(JsonReader reader, String name, SoundCloudTrack track)
+            throws IOException {
+        switch (name) {
+            case ID:
+                track.setId(nextInt(reader));
+                return true;
+            case USER_ID:
+                track.setUserId(nextInt(reader));
+                return true;
+            case COMNENT_COUNT:
+                track.setCommentCount(nextInt(reader));
+                return true;
+            case FAVORITINGS_COUNT:
+                track.setFavoritingCount(nextInt(reader));
+                return true;
+            case PLAYBACK_COUNT:
+                track.setPlaybackCount(nextInt(reader));
+                return true;
+            case DOWNLOAD_COUNT:
+                track.setDownloadCount(nextInt(reader));
+                return true;
+            case ORIGINAL_CONTENT_SIZE:
+                track.setOriginalContentSize(nextInt(reader));
+                return true;
+            case LABEL_ID:
+                track.setLabelId(nextInt(reader));
+                return true;
+            case BMP:
+                track.setBmp(nextInt(reader));
+                return true;
+            case DURATION:
+                track.setDurationInMilli(nextLong(reader));
+                return true;
+            case STREAMABLE:
+                track.setStreamable(nextBoolean(reader));
+                return true;
+            case DOWNLOADABLE:
+                track.setDownloadable(nextBoolean(reader));
+                return true;
+            case COMMENTABLE:
+                track.setCommentable(nextBoolean(reader));
+                return true;
+            default:
+                return parseTrackStringField(reader, name, track);
+        }
+    }
+
+    /**
+     * Parse the string fields of a track.
+     *
+     * @param reader reader positioned on the field value.
+     * @param name   field name.
+     * @param track  track to fill.
+     * @return true if the field has been consumed.
+     * @throws IOException if the json is malformed.
+     */
+    private boolean parseTrackStringField(JsonReader reader, String name, SoundCloudTrack track)
+            throws IOException {
+        switch (name) {
+            case PERMALINK_URL:
+                track.setPermalingUrl(nextString(reader));
+                return true;
+            case PERMALINK:
+                track.setPermalink(nextString(reader));
+                return true;
+            case ARTWORK_URL:
+                track.setArtworkUrl(nextString(reader));
+                return true;
+            case WAVEFORM_URL:
+                track.setWaveFormUrl(nextString(reader));
+                return true;
+            case DOWNLOAD_URL:
+                track.setDownloadUrl(nextString(reader));
+                return true;
+            case STREAM_URL:
+                track.setStreamUrl(nextString(reader));
+                return true;
+            case VIDEO_URL:
+                track.setVideoUrl(nextString(reader));
+                return true;
+            case PURCHASE_URL:
+                track.setPurchaseUrl(nextString(reader));
+                return true;
+            case URI:
+                track.setUri(nextString(reader));
+                return true;
+            case GENRE:
+                track.setGenre(nextString(reader));
+                return true;
+            case DESCRIPTION:
+                track.setDescription(nextString(reader));
+                return true;
+            case LABEL_NAME:
+                track.setLabelName(nextString(reader));
+                return true;
+            case TRACK_TYPE:
+                track.setTrackType(nextString(reader));
+                return true;
+            case LICENCE:
+                track.setLicense(nextString(reader));
+                return true;
+            case ORIGINAL_FORMAT:
+                track.setOriginalFormat(nextString(reader));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Retrieve the user name of a nested user object, other fields are skipped.
+     *
+     * @param reader reader positioned on the user object.
+     * @return user name or null if not available.
+     * @throws IOException if the json is malformed.
+     */
+    private String parseUserName(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        String userName = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (USERNAME.equals(reader.nextName())) {
+                userName = nextString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return userName;
+    }
+
+    /**
+     * Parse the nested user object of a comment.
+     *
+     * @param reader  reader positioned on the user object.
+     * @param comment comment to fill.
+     * @throws IOException if the json is malformed.
+     */
+    private void parseCommentUser(JsonReader reader, SoundCloudComment comment) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case ID:
+                    comment.setUserId(nextInt(reader));
+                    break;
+                case USERNAME:
+                    comment.setUserName(nextString(reader));
+                    break;
+                case AVATAR_URL:
+                    comment.setUserAvatarUrl(nextString(reader));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read a string value, null values are returned as null.
+     *
+     * @param reader reader positioned on the value.
+     * @return string value or null.
+     * @throws IOException if the json is malformed.
+     */
+    private static String nextString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        } else if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return reader.nextString();
+        } else if (token == JsonToken.BOOLEAN) {
+            return String.valueOf(reader.nextBoolean());
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    /**
+     * Read an int value, null or non numeric values are read as 0.
+     *
+     * @param reader reader positioned on the value.
+     * @return int value.
+     * @throws IOException if the json is malformed.
+     */
+    private static int nextInt(JsonReader reader) throws IOException {
+        return (int) nextLong(reader);
+    }
+
+    /**
+     * Read a long value, null or non numeric values are read as 0.
+     *
+     * @param reader reader positioned on the value.
+     * @return long value.
+     * @throws IOException if the json is malformed.
+     */
+    private static long nextLong(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+            try {
+                return (long) reader.nextDouble();
+            } catch (NumberFormatException e) {
+                // non numeric string, skip the buffered value.
+                if (reader.peek() == JsonToken.STRING) {
+                    reader.skipValue();
+                }
+                return 0;
+            }
+        }
+        reader.skipValue();
+        return 0;
+    }
+
+    /**
+     * Read a boolean value, null values are read as false.
+     *
+     * @param reader reader positioned on the value.
+     * @return boolean value.
+     * @throws IOException if the json is malformed.
+     */
+    private static boolean nextBoolean(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BOOLEAN) {
+            return reader.nextBoolean();
+        } else if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(reader.nextString());
+        }
+        reader.skipValue();
+        return false;
+    }
+
+    /**
+     * Parse a date.
+     *
+     * @param format format to use.
+     * @param date   date as string, can be null.
+     * @return parsed date or null if it can't be parsed.
+     */
+    private static Date parseDate(SimpleDateFormat format, String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return format.parse(date);
+        } catch (ParseException e) {
+            Log.e(TAG, "Error while parsing creation date : " + date);
+            return null;
+        }
+    }
+
+    private SimpleDateFormat getTrackDateFormat() {
+        if (mTrackDateFormat == null) {
+            mTrackDateFormat = new SimpleDateFormat(TRACK_DATE_FORMAT);
+        }
+        return mTrackDateFormat;
+    }
+
+    private SimpleDateFormat getCommentDateFormat() {
+        if (mCommentDateFormat == null) {
+            mCommentDateFormat = new SimpleDateFormat(COMMENT_DATE_FORMAT);
+        }
+        return mCommentDateFormat;
+    }
+}
@@ -36,6 +36,11 @@ class RequestSignatorInterceptor implements Interceptor {
     public Response intercept(Chain chain) throws IOException {
         Request originalRequest = chain.request();
 
+        // next page urls returned by the api are already signed.
+        if (originalRequest.url().queryParameter(QUERY_PARAM_CLIENT_ID) != null) {
+            return chain.proceed(originalRequest);
+        }
+
         HttpUrl httpUrl = originalRequest
                 .url()
                 .newBuilder()
@@ -1,8 +1,12 @@
 package fr.tvbarthel.cheerleader.library.client;
 
 
+import java.util.ArrayList;
+
 import retrofit2.http.GET;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Url;
 import rx.Observable;
 
 /**
@@ -17,7 +21,7 @@ interface RetrofitService {
      * @return {@link rx.Observable}
      */
     @GET("/users/{user}.json")
-    Observable<String> getUser(@Path("user") String user);
+    Observable<SoundCloudUser> getUser(@Path("user") String user);
 
     /**
      * Retrieve all public tracks of a user.
@@ -26,7 +30,7 @@ interface RetrofitService {
      * @return {@link rx.Observable}
      */
     @GET("/users/{user}/tracks.json")
-    Observable<String> getUserTracks(@Path("user") String user);
+    Observable<ArrayList<SoundCloudTrack>> getUserTracks(@Path("user") String user);
 
     /**
      * Retrieve a SoundCloud track.
@@ -35,7 +39,7 @@ interface RetrofitService {
      * @return {@link rx.Observable}
      */
     @GET("/tracks/{trackId}.json")
-    Observable<String> getTrack(@Path("trackId") int trackId);
+    Observable<SoundCloudTrack> getTrack(@Path("trackId") int trackId);
 
     /**
      * Retrieve the list of comments related to the
@@ -44,5 +48,45 @@ interface RetrofitService {
      * @return {@link rx.Observable}
      */
     @GET("/tracks/{trackId}/comments.json")
-    Observable<String> getTrackComments(@Path("trackId") int trackId);
+    Observable<ArrayList<SoundCloudComment>> getTrackComments(@Path("trackId") int trackId);
+
+    /**
+     * Retrieve the first page of the public tracks of a user.
+     *
+     * @param user  SoundCloud user id as string or user name.
+     * @param limit number of tracks per page.
+     * @return {@link rx.Observable}
+     */
+    @GET("/users/{user}/tracks.json?linked_partitioning=1")
+    Observable<SoundCloudPage<SoundCloudTrack>> getUserTracksPage(@Path("user") String user,
+                                                                  @Query("limit") int limit);
+
+    /**
+     * Retrieve the first page of the comments related to a track.
+     *
+     * @param trackId SoundCloud track id.
+     * @param limit   number of comments per page.
+     * @return {@link rx.Observable}
+     */
+    @GET("/tracks/{trackId}/comments.json?linked_partitioning=1")
+    Observable<SoundCloudPage<SoundCloudComment>> getTrackCommentsPage(@Path("trackId") int trackId,
+                                                                       @Query("limit") int limit);
+
+    /**
+     * Retrieve a following page of tracks.
+     *
+     * @param nextHref next page url as returned by the previous page.
+     * @return {@link rx.Observable}
+     */
+    @GET
+    Observable<SoundCloudPage<SoundCloudTrack>> getTracksPage(@Url String nextHref);
+
+    /**
+     * Retrieve a following page of comments.
+     *
+     * @param nextHref next page url as returned by the previous page.
+     * @return {@link rx.Observable}
+     */
+    @GET
+    Observable<SoundCloudPage<SoundCloudComment>> getCommentsPage(@Url String nextHref);
 }
@@ -0,0 +1,160 @@
+package fr.tvbarthel.cheerleader.library.client;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Converter factory used to parse SoundCloud models directly from the response body stream.
+ * <p/>
+ * Handled types are {@link SoundCloudUser}, {@link SoundCloudTrack} as well as lists and pages
+ * of {@link SoundCloudTrack} and {@link SoundCloudComment}. Other types are left to the next
+ * registered factory.
+ */
+final class SoundCloudConverterFactory extends Converter.Factory {
+
+    /**
+     * Private constructor.
+     */
+    private SoundCloudConverterFactory() {
+
+    }
+
+    /**
+     * Create an instance of the converter factory used to parse SoundCloud models.
+     *
+     * @return new instance of the converter factory.
+     */
+    public static SoundCloudConverterFactory create() {
+        return new SoundCloudConverterFactory();
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(
+            Type type, Annotation[] annotations, Retrofit retrofit) {
+        if (SoundCloudUser.class.equals(type)) {
+            return new StreamConverter<SoundCloudUser>() {
+                @Override
+                SoundCloudUser read(JsonStreamParser parser, JsonReader reader) throws IOException {
+                    return parser.parseUser(reader);
+                }
+            };
+        } else if (SoundCloudTrack.class.equals(type)) {
+            return new StreamConverter<SoundCloudTrack>() {
+                @Override
+                SoundCloudTrack read(JsonStreamParser parser, JsonReader reader) throws IOException {
+                    return parser.parseTrack(reader);
+                }
+            };
+        } else if (isListOf(type, SoundCloudTrack.class)) {
+            return new StreamConverter<ArrayList<SoundCloudTrack>>() {
+                @Override
+                ArrayList<SoundCloudTrack> read(JsonStreamParser parser, JsonReader reader)
+                        throws IOException {
+                    return parser.parseTracks(reader);
+                }
+            };
+        } else if (isListOf(type, SoundCloudComment.class)) {
+            return new StreamConverter<ArrayList<SoundCloudComment>>() {
+                @Override
+                ArrayList<SoundCloudComment> read(JsonStreamParser parser, JsonReader reader)
+                        throws IOException {
+                    return parser.parseComments(reader);
+                }
+            };
+        } else if (isPageOf(type, SoundCloudTrack.class)) {
+            return new StreamConverter<SoundCloudPage<SoundCloudTrack>>() {
+                @Override
+                SoundCloudPage<SoundCloudTrack> read(JsonStreamParser parser, JsonReader reader)
+                        throws IOException {
+                    return parser.parseTrackPage(reader);
+                }
+            };
+        } else if (isPageOf(type, SoundCloudComment.class)) {
+            return new StreamConverter<SoundCloudPage<SoundCloudComment>>() {
+                @Override
+                SoundCloudPage<SoundCloudComment> read(JsonStreamParser parser, JsonReader reader)
+                        throws IOException {
+                    return parser.parseCommentPage(reader);
+                }
+            };
+        }
+        return null;
+    }
+
+    /**
+     * Used to know if a type is a list of the given item class.
+     *
+     * @param type      type to check.
+     * @param itemClass class of the list items.
+     * @return true if the type is a {@link List} or an {@link ArrayList} of the given class.
+     */
+    private static boolean isListOf(Type type, Class<?> itemClass) {
+        if (!(type instanceof ParameterizedType)) {
+            return false;
+        }
+        ParameterizedType parameterizedType = (ParameterizedType) type;
+        Type rawType = parameterizedType.getRawType();
+        return (ArrayList.class.equals(rawType) || List.class.equals(rawType))
+                && itemClass.equals(parameterizedType.getActualTypeArguments()[0]);
+    }
+
+    /**
+     * Used to know if a type is a {@link SoundCloudPage} of the given item class.
+     *
+     * @param type      type to check.
+     * @param itemClass class of the page items.
+     * @return true if the type is a {@link SoundCloudPage} of the given class.
+     */
+    private static boolean isPageOf(Type type, Class<?> itemClass) {
+        if (!(type instanceof ParameterizedType)) {
+            return false;
+        }
+        ParameterizedType parameterizedType = (ParameterizedType) type;
+        return SoundCloudPage.class.equals(parameterizedType.getRawType())
+                && itemClass.equals(parameterizedType.getActualTypeArguments()[0]);
+    }
+
+    /**
+     * Converter reading a model straight from the body char stream.
+     *
+     * @param <T> converted type.
+     */
+    private abstract static class StreamConverter<T> implements Converter<ResponseBody, T> {
+
+        @Override
+        public T convert(ResponseBody value) throws IOException {
+            JsonReader reader = new JsonReader(value.charStream());
+            try {
+                T result = read(new JsonStreamParser(), reader);
+                // consume the end of the body to ensure the whole document has been received.
+                if (reader.peek() != JsonToken.END_DOCUMENT) {
+                    throw new IOException("Unexpected content after the json document.");
+                }
+                return result;
+            } finally {
+                value.close();
+            }
+        }
+
+        /**
+         * Read the model.
+         *
+         * @param parser parser dedicated to the current response.
+         * @param reader reader on the response body.
+         * @return read model.
+         * @throws IOException if the json is malformed.
+         */
+        abstract T read(JsonStreamParser parser, JsonReader reader) throws IOException;
+    }
+}
@@ -0,0 +1,68 @@
+package fr.tvbarthel.cheerleader.library.client;
+
+import java.util.ArrayList;
+
+/**
+ * Encapsulate a page of a SoundCloud collection retrieved using linked partitioning.
+ * <p/>
+ * https://developers.soundcloud.com/docs/api/guide#pagination
+ *
+ * @param <T> type of the items of the collection.
+ */
+final class SoundCloudPage<T> {
+
+    private ArrayList<T> mCollection;
+    private String mNextHref;
+
+    /**
+     * Default constructor.
+     */
+    SoundCloudPage() {
+        mCollection = new ArrayList<>();
+    }
+
+    /**
+     * Items of the page.
+     *
+     * @return items of the page.
+     */
+    ArrayList<T> getCollection() {
+        return mCollection;
+    }
+
+    /**
+     * Url of the next page.
+     *
+     * @return url of the next page or null if the current page is the last one.
+     */
+    String getNextHref() {
+        return mNextHref;
+    }
+
+    /**
+     * Used to know if a page follows the current one.
+     *
+     * @return true if a next page can be requested.
+     */
+    boolean hasNext() {
+        return mNextHref != null && !mCollection.isEmpty();
+    }
+
+    /**
+     * Items of the page.
+     *
+     * @param collection items of the page.
+     */
+    void setCollection(ArrayList<T> collection) {
+        this.mCollection = collection;
+    }
+
+    /**
+     * Url of the next page.
+     *
+     * @param nextHref url of the next page, null for the last one.
+     */
+    void setNextHref(String nextHref) {
+        this.mNextHref = nextHref;
+    }
+}
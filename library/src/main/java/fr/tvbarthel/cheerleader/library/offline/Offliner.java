@@ -8,7 +8,6 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.lang.ref.WeakReference;
 import java.nio.charset.Charset;
 
 import okhttp3.Interceptor;
@@ -31,7 +30,7 @@ public final class Offliner {
     private static final String TAG = Offliner.class.getSimpleName();
 
     /**
-     * Query handler used to encapsulate offline access and storage through {@link android.content.ContentResolver}
+     * Query handler used to encapsulate offline access and storage.
      */
     private OfflinerQueryHandler mCacheQueryHandler;
 
@@ -41,9 +40,9 @@ public final class Offliner {
     private boolean mDebug;
 
     /**
-     * Week reference on context used to access to the content resolver.
+     * Used to know if response bodies are saved while being read by the caller.
      */
-    private WeakReference<Context> mContext;
+    private boolean mStreaming;
 
     /**
      * OkHttp interceptor used to intercept response in order to save or retrieve the content
@@ -61,7 +60,6 @@ public final class Offliner {
         super();
         mDebug = debug;
         mCacheQueryHandler = new OfflinerQueryHandler(context.getApplicationContext());
-        mContext = new WeakReference<>(context.getApplicationContext());
         mCacheQueryHandler.debug(debug);
         mInternalInterceptor = new Interceptor() {
             @Override
@@ -81,7 +79,7 @@ public final class Offliner {
                         response = cachedResponse;
                     }
                 } else {
-                    // async save for further use
+                    // batched async save for further use
                     response = save(response);
                 }
                 return response;
@@ -108,6 +106,87 @@ public final class Offliner {
         mCacheQueryHandler.debug(enable);
     }
 
+    /**
+     * Enable or disable the streaming save.
+     * <p/>
+     * When enabled, response bodies are returned to the caller as soon as received and copied
+     * into the offline storage while being read. The copy is only saved once the caller has read
+     * the whole body and discarded if the body is closed before its end or if the network fails.
+     * <p/>
+     * When disabled, response bodies are fully read and saved before being returned.
+     *
+     * @param enable true to enable the streaming save.
+     */
+    public void streaming(boolean enable) {
+        mStreaming = enable;
+    }
+
+    /**
+     * Access the offline storage through {@link OfflinerProvider} instead of the database.
+     * <p/>
+     * Only needed when the offline storage is shared between processes, direct access to the
+     * database is faster. Should be defined before any request.
+     *
+     * @param enable true to access the storage through {@link OfflinerProvider}
+     */
+    public void crossProcess(boolean enable) {
+        mCacheQueryHandler.crossProcess(enable);
+    }
+
+    /**
+     * Store the responses as gzip compressed blobs instead of plain text.
+     * <p/>
+     * Reduces the size of the offline storage and the disk I/O at the cost of compressing on
+     * saving and decompressing on offline access. Responses already saved are still readable.
+     *
+     * @param enable true to store the responses as compressed blobs.
+     */
+    public void compress(boolean enable) {
+        mCacheQueryHandler.compress(enable);
+    }
+
+    /**
+     * Define the eviction policy of the offline storage.
+     * <p/>
+     * Responses older than the maximum age are deleted first, then the oldest ones until the
+     * storage fits in its maximum size. Eviction runs in the background, periodically.
+     * <p/>
+     * By default, the storage is limited to 10 MiB and responses are kept 30 days.
+     *
+     * @param maxSize maximum size of the storage in bytes, 0 for no limit.
+     * @param maxAge  maximum age of a response in milliseconds, 0 for no limit.
+     */
+    public void evictionPolicy(long maxSize, long maxAge) {
+        mCacheQueryHandler.evictionPolicy(maxSize, maxAge);
+    }
+
+    /**
+     * Save the pending responses without waiting for the end of the coalescing delay.
+     * <p/>
+     * Responses are coalesced during a short delay and saved in a single transaction.
+     */
+    public void flush() {
+        mCacheQueryHandler.flush();
+    }
+
+    /**
+     * Retrieve the number of offline lookups served by the in-memory tier.
+     *
+     * @return hit count.
+     */
+    public int getMemoryHitCount() {
+        return mCacheQueryHandler.getMemoryHitCount();
+    }
+
+    /**
+     * Retrieve the number of offline lookups which had to query the database.
+     *
+     * @return miss count.
+     */
+    public int getMemoryMissCount() {
+        return mCacheQueryHandler.getMemoryMissCount();
+    }
+
     /**
      * Retrieve a {@link Response} from the offline layer.
      *
@@ -156,7 +235,7 @@ public final class Offliner {
     private String retrieveFromCache(String url) {
         String savedJson;
 
-        savedJson = mCacheQueryHandler.get(getContext(), url);
+        savedJson = mCacheQueryHandler.get(url);
         log("---------- body found in offline saver : " + savedJson);
         log("----- NO NETWORK : retrieving ends");
         return savedJson;
@@ -173,19 +252,6 @@ public final class Offliner {
         }
     }
 
-    /**
-     * Retrieve the context if not yet garbage collected.
-     *
-     * @return context.
-     */
-    private Context getContext() {
-        Context context = mContext.get();
-        if (context == null) {
-            throw new IllegalStateException("Context used by the instance has been destroyed.");
-        }
-        return context;
-    }
-
     /**
      * Allow to save the Response body for offline usage.
      *
@@ -195,6 +261,13 @@ public final class Offliner {
         String jsonBody;
         String key = response.request().url().toString();
 
+        if (mStreaming) {
+            log("----- SAVE FOR OFFLINE : streaming for request : " + key);
+            return response.newBuilder()
+                    .body(new OfflinerTeeBody(response.body(), key, mCacheQueryHandler))
+                    .build();
+        }
+
         log("----- SAVE FOR OFFLINE : saving starts");
         log("---------- for request : " + key);
         log("---------- trying to parse response body");
@@ -224,7 +297,7 @@ public final class Offliner {
 
         log("---------- trying to save response body for offline");
 
-        mCacheQueryHandler.put(key, jsonBody);
+        mCacheQueryHandler.enqueue(key, jsonBody);
 
         log("---------- url : " + key);
         log("---------- body : " + jsonBody);
@@ -0,0 +1,138 @@
+package fr.tvbarthel.cheerleader.library.offline;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Used to store results as gzip compressed blobs.
+ * <p/>
+ * Compressed and plain text results can be mixed in the same storage, the stored type is
+ * checked when a result is read.
+ */
+final class OfflinerCompression {
+
+    /**
+     * Log cat.
+     */
+    private static final String TAG = OfflinerCompression.class.getSimpleName();
+
+    /**
+     * Charset of the results.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * First byte of the gzip header.
+     */
+    private static final byte GZIP_MAGIC_FIRST = (byte) 0x1f;
+
+    /**
+     * Second byte of the gzip header.
+     */
+    private static final byte GZIP_MAGIC_SECOND = (byte) 0x8b;
+
+    /**
+     * Size of the buffer used to decompress.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Non instantiable class.
+     */
+    private OfflinerCompression() {
+
+    }
+
+    /**
+     * Replace the results of the given values by compressed blobs.
+     *
+     * @param results values built with the {@link OfflinerDBHelper} columns.
+     * @return new values holding compressed results.
+     */
+    static List<ContentValues> compress(List<ContentValues> results) {
+        ArrayList<ContentValues> compressed = new ArrayList<>(results.size());
+        for (ContentValues values : results) {
+            String result = values.getAsString(OfflinerDBHelper.REQUEST_RESULT);
+            if (result == null) {
+                compressed.add(values);
+            } else {
+                ContentValues compressedValues = new ContentValues(values);
+                compressedValues.put(OfflinerDBHelper.REQUEST_RESULT, compress(result));
+                compressed.add(compressedValues);
+            }
+        }
+        return compressed;
+    }
+
+    /**
+     * Read a result stored either as plain text or as a compressed blob.
+     *
+     * @param cursor cursor positioned on the result.
+     * @param column index of the result column.
+     * @return result or null if the result can't be read.
+     */
+    static String read(Cursor cursor, int column) {
+        if (cursor.getType(column) == Cursor.FIELD_TYPE_BLOB) {
+            return decompress(cursor.getBlob(column));
+        }
+        return cursor.getString(column);
+    }
+
+    /**
+     * Compress a result.
+     *
+     * @param result result.
+     * @return gzip compressed result.
+     */
+    private static byte[] compress(String result) {
+        byte[] bytes = result.getBytes(UTF_8);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 32);
+        try {
+            OutputStream outputStream = new GZIPOutputStream(compressed);
+            outputStream.write(bytes);
+            outputStream.close();
+        } catch (IOException e) {
+            // can't occur while writing in memory.
+            throw new IllegalStateException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Decompress a result.
+     *
+     * @param blob stored blob.
+     * @return decompressed result or null if the blob isn't a valid gzip stream.
+     */
+    private static String decompress(byte[] blob) {
+        if (blob.length < 2 || blob[0] != GZIP_MAGIC_FIRST || blob[1] != GZIP_MAGIC_SECOND) {
+            return new String(blob, UTF_8);
+        }
+        try {
+            InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(blob), BUFFER_SIZE);
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream(blob.length * 4);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                decompressed.write(buffer, 0, read);
+            }
+            inputStream.close();
+            return new String(decompressed.toByteArray(), UTF_8);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to decompress offline result : " + e.getMessage());
+            return null;
+        }
+    }
+}
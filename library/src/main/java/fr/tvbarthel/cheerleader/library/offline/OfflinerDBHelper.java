@@ -1,8 +1,10 @@
 package fr.tvbarthel.cheerleader.library.offline;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import fr.tvbarthel.cheerleader.library.BuildConfig;
@@ -49,10 +51,30 @@ class OfflinerDBHelper extends SQLiteOpenHelper {
             + REQUEST_URL + " VARCHAR(255) PRIMARY KEY, "
             + REQUEST_RESULT + " TEXT);";
 
+    /**
+     * SQL query to create the index used to evict the oldest results first.
+     */
+    public static final String CREATE_INDEX_TIMESTAMP = "CREATE INDEX IF NOT EXISTS "
+            + TABLE_CACHE + "_" + REQUEST_TIMESTAMP + " ON " + TABLE_CACHE + "(" + REQUEST_TIMESTAMP + ");";
+
     private static final String DATABASENAME = "cheerleader_offline.db";
-    private static final int DATABASEVERSION = 1;
+    private static final int DATABASEVERSION = 2;
     private static final String DROP_TABLE = "DROP TABLE IF EXISTS ";
 
+    /**
+     * Number of results deleted at once while the database exceeds its maximum size.
+     */
+    private static final int EVICTION_STEP = 20;
+
+    /**
+     * Incremental value of the auto_vacuum pragma.
+     */
+    private static final long AUTO_VACUUM_INCREMENTAL = 2;
+
+    private static final String DELETE_OLDEST = "DELETE FROM " + TABLE_CACHE
+            + " WHERE " + REQUEST_URL + " IN (SELECT " + REQUEST_URL + " FROM " + TABLE_CACHE
+            + " ORDER BY " + REQUEST_TIMESTAMP + " LIMIT " + EVICTION_STEP + ")";
+
     private static final String TAG = OfflinerDBHelper.class.getSimpleName();
 
     /**
@@ -65,13 +87,70 @@ class OfflinerDBHelper extends SQLiteOpenHelper {
     }
 
 
+    /**
+     * Delete the results older than the given age then the oldest ones until the database
+     * fits in the given size. Released pages are given back to the file system.
+     * <p/>
+     * Must not be called on the main thread.
+     *
+     * @param db      database.
+     * @param maxSize maximum size of the database in bytes, 0 for no limit.
+     * @param maxAge  maximum age of a result in milliseconds, 0 for no limit.
+     * @return number of deleted results.
+     */
+    public static int evict(SQLiteDatabase db, long maxSize, long maxAge) {
+        int deleted = 0;
+        if (maxAge > 0) {
+            deleted += db.delete(TABLE_CACHE, REQUEST_TIMESTAMP + " < ?",
+                    new String[]{String.valueOf(System.currentTimeMillis() - maxAge)});
+        }
+        if (maxSize > 0) {
+            long pageSize = pragma(db, "page_size");
+            SQLiteStatement deleteOldest = db.compileStatement(DELETE_OLDEST);
+            try {
+                while ((pragma(db, "page_count") - pragma(db, "freelist_count")) * pageSize > maxSize) {
+                    int count = deleteOldest.executeUpdateDelete();
+                    if (count == 0) {
+                        break;
+                    }
+                    deleted += count;
+                }
+            } finally {
+                deleteOldest.close();
+            }
+        }
+        if (deleted > 0) {
+            // counting the rows steps the pragma until every free page is released.
+            Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum", null);
+            cursor.getCount();
+            cursor.close();
+        }
+        return deleted;
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(CREATE_TABLE_CACHE);
+        db.execSQL(CREATE_INDEX_TIMESTAMP);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly() && pragma(db, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            // auto_vacuum mode can only be changed by rebuilding the database, once.
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        }
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2 && newVersion == 2) {
+            // version 2 only indexes the timestamps, the cached results are kept.
+            db.execSQL(CREATE_INDEX_TIMESTAMP);
+            return;
+        }
         try {
             db.execSQL(DROP_TABLE + TABLE_CACHE);
         } catch (Exception e) {
@@ -81,4 +160,20 @@ class OfflinerDBHelper extends SQLiteOpenHelper {
         }
         onCreate(db);
     }
-}
\ No newline at end of file
+
+    /**
+     * Read an integer pragma.
+     *
+     * @param db     database.
+     * @param pragma pragma name.
+     * @return pragma value.
+     */
+    private static long pragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package fr.tvbarthel.cheerleader.library.offline;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import java.util.List;
+
+/**
+ * In-process storage talking to the database directly.
+ * <p/>
+ * The database uses write-ahead logging so that lookups aren't blocked by saving. Saving uses a
+ * statement compiled once, lookups rely on the statement cache of the connection. Both use bound
+ * arguments.
+ */
+final class OfflinerDatabaseStorage implements OfflinerStorage {
+
+    /**
+     * SQL query used to retrieve a result by url.
+     */
+    private static final String SQL_GET = "SELECT " + OfflinerDBHelper.REQUEST_RESULT
+            + " FROM " + OfflinerDBHelper.TABLE_CACHE
+            + " WHERE " + OfflinerDBHelper.REQUEST_URL + " = ?";
+
+    /**
+     * SQL query used to insert or replace a result.
+     */
+    private static final String SQL_PUT = "INSERT OR REPLACE INTO " + OfflinerDBHelper.TABLE_CACHE + " ("
+            + OfflinerDBHelper.REQUEST_TIMESTAMP + ", "
+            + OfflinerDBHelper.REQUEST_URL + ", "
+            + OfflinerDBHelper.REQUEST_RESULT + ") VALUES (?, ?, ?)";
+
+    /**
+     * Helper used to open the database.
+     */
+    private final OfflinerDBHelper mDbHelper;
+
+    /**
+     * Opened database, lazily initialized.
+     */
+    private SQLiteDatabase mDatabase;
+
+    /**
+     * Compiled statement used to save a result.
+     */
+    private SQLiteStatement mPutStatement;
+
+    /**
+     * In-process storage talking to the database directly.
+     *
+     * @param context context used to open the database.
+     */
+    OfflinerDatabaseStorage(Context context) {
+        mDbHelper = new OfflinerDBHelper(context);
+    }
+
+    @Override
+    public String get(String url) {
+        // results can be stored as text or as compressed blobs, which a statement can't read.
+        Cursor cursor = open().rawQuery(SQL_GET, new String[]{url});
+        try {
+            return cursor.moveToFirst() ? OfflinerCompression.read(cursor, 0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void save(List<ContentValues> results) {
+        SQLiteDatabase database = open();
+        SQLiteStatement statement = putStatement();
+        synchronized (statement) {
+            database.beginTransaction();
+            try {
+                for (ContentValues values : results) {
+                    Object result = values.get(OfflinerDBHelper.REQUEST_RESULT);
+                    statement.bindLong(1, values.getAsLong(OfflinerDBHelper.REQUEST_TIMESTAMP));
+                    statement.bindString(2, values.getAsString(OfflinerDBHelper.REQUEST_URL));
+                    if (result instanceof byte[]) {
+                        statement.bindBlob(3, (byte[]) result);
+                    } else if (result == null) {
+                        statement.bindNull(3);
+                    } else {
+                        statement.bindString(3, result.toString());
+                    }
+                    statement.executeInsert();
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                statement.clearBindings();
+                database.endTransaction();
+            }
+        }
+    }
+
+    @Override
+    public int evict(long maxSize, long maxAge) {
+        return OfflinerDBHelper.evict(open(), maxSize, maxAge);
+    }
+
+    /**
+     * Retrieve the compiled statement used to save a result.
+     *
+     * @return compiled statement.
+     */
+    private synchronized SQLiteStatement putStatement() {
+        open();
+        return mPutStatement;
+    }
+
+    /**
+     * Open the database with write-ahead logging and compile the statement if needed.
+     *
+     * @return opened database.
+     */
+    private synchronized SQLiteDatabase open() {
+        if (mDatabase == null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                mDbHelper.setWriteAheadLoggingEnabled(true);
+                mDatabase = mDbHelper.getWritableDatabase();
+            } else {
+                mDatabase = mDbHelper.getWritableDatabase();
+                mDatabase.enableWriteAheadLogging();
+            }
+            mPutStatement = mDatabase.compileStatement(SQL_PUT);
+        }
+        return mDatabase;
+    }
+}
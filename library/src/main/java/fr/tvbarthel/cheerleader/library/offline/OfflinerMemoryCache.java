@@ -0,0 +1,31 @@
+package fr.tvbarthel.cheerleader.library.offline;
+
+import android.util.LruCache;
+
+/**
+ * In-memory tier of the offline storage, bounded by the number of cached characters.
+ * <p/>
+ * Least recently used results are evicted first. Hit and miss counts are tracked by
+ * {@link LruCache#hitCount()} and {@link LruCache#missCount()}.
+ */
+final class OfflinerMemoryCache extends LruCache<String, String> {
+
+    /**
+     * Default maximum number of cached characters, about 1 MiB.
+     */
+    static final int DEFAULT_MAX_SIZE = 512 * 1024;
+
+    /**
+     * In-memory tier of the offline storage.
+     *
+     * @param maxSize maximum number of cached characters.
+     */
+    OfflinerMemoryCache(int maxSize) {
+        super(maxSize);
+    }
+
+    @Override
+    protected int sizeOf(String url, String result) {
+        return url.length() + result.length();
+    }
+}
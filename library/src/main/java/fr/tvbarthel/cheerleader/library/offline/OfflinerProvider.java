@@ -1,15 +1,20 @@
 package fr.tvbarthel.cheerleader.library.offline;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
 import android.util.Log;
 
+import java.util.ArrayList;
 
 /**
  * Provider used to encapsulate communication with the database.
@@ -26,6 +31,26 @@ public class OfflinerProvider extends ContentProvider {
      */
     public static final String SLASH = "/";
 
+    /**
+     * Method used to evict results, see {@link OfflinerDBHelper#evict(SQLiteDatabase, long, long)}
+     */
+    static final String METHOD_EVICT = "evict";
+
+    /**
+     * Extra holding the maximum size of the database in bytes.
+     */
+    static final String EXTRA_MAX_SIZE = "max_size";
+
+    /**
+     * Extra holding the maximum age of a result in milliseconds.
+     */
+    static final String EXTRA_MAX_AGE = "max_age";
+
+    /**
+     * Extra holding the number of deleted results.
+     */
+    static final String EXTRA_DELETED = "deleted";
+
     private static final String UNKNOWN_URI = "Unknown URI ";
     private static final String AUTHORITY = ".Cheerleader.OfflineProvider";
     private static final int CACHE = 1;
@@ -118,6 +143,36 @@ public class OfflinerProvider extends ContentProvider {
         return null;
     }
 
+    /**
+     * Apply the operations in a single transaction.
+     * <p/>
+     * {@inheritDoc}
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            return results;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (!METHOD_EVICT.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        Bundle result = new Bundle();
+        result.putInt(EXTRA_DELETED, OfflinerDBHelper.evict(mDbHelper.getWritableDatabase(),
+                extras.getLong(EXTRA_MAX_SIZE), extras.getLong(EXTRA_MAX_AGE)));
+        return result;
+    }
+
     @Override
     public boolean onCreate() {
         mDbHelper = new OfflinerDBHelper(getContext());
@@ -0,0 +1,103 @@
+package fr.tvbarthel.cheerleader.library.offline;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Storage accessed through {@link OfflinerProvider} for apps sharing the offline storage
+ * between processes.
+ */
+final class OfflinerProviderStorage implements OfflinerStorage {
+
+    /**
+     * Log cat.
+     */
+    private static final String TAG = OfflinerProviderStorage.class.getSimpleName();
+
+    /**
+     * Projection used to retrieve a result.
+     */
+    private static final String[] PROJECTION_RESULT = new String[]{OfflinerDBHelper.REQUEST_RESULT};
+
+    /**
+     * Selection used to retrieve a result by url.
+     */
+    private static final String SELECTION_URL = OfflinerDBHelper.REQUEST_URL + " = ?";
+
+    /**
+     * Content resolver used to reach the provider.
+     */
+    private final ContentResolver mContentResolver;
+
+    /**
+     * Authority of the provider.
+     */
+    private final String mAuthority;
+
+    /**
+     * Uri of the cache table.
+     */
+    private final Uri mUri;
+
+    /**
+     * Storage accessed through {@link OfflinerProvider}
+     *
+     * @param context context used to retrieve the content resolver.
+     */
+    OfflinerProviderStorage(Context context) {
+        mContentResolver = context.getContentResolver();
+        mAuthority = OfflinerProvider.getAuthority(context.getPackageName());
+        mUri = Uri.parse(OfflinerProvider.CONTENT + mAuthority
+                + OfflinerProvider.SLASH + OfflinerDBHelper.TABLE_CACHE);
+    }
+
+    @Override
+    public String get(String url) {
+        final Cursor cursor = mContentResolver.query(mUri, PROJECTION_RESULT, SELECTION_URL,
+                new String[]{url}, null);
+        String result = null;
+
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                result = OfflinerCompression.read(cursor, 0);
+            }
+            cursor.close();
+        }
+
+        return result;
+    }
+
+    @Override
+    public void save(List<ContentValues> results) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(results.size());
+        for (ContentValues values : results) {
+            operations.add(ContentProviderOperation.newInsert(mUri).withValues(values).build());
+        }
+
+        try {
+            mContentResolver.applyBatch(mAuthority, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(TAG, "Failed to save batch for offline : " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int evict(long maxSize, long maxAge) {
+        Bundle extras = new Bundle();
+        extras.putLong(OfflinerProvider.EXTRA_MAX_SIZE, maxSize);
+        extras.putLong(OfflinerProvider.EXTRA_MAX_AGE, maxAge);
+        Bundle result = mContentResolver.call(mUri, OfflinerProvider.METHOD_EVICT, null, extras);
+        return result == null ? 0 : result.getInt(OfflinerProvider.EXTRA_DELETED);
+    }
+}
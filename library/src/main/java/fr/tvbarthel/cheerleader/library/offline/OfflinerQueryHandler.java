@@ -1,25 +1,38 @@
 package fr.tvbarthel.cheerleader.library.offline;
 
-import android.content.AsyncQueryHandler;
 import android.content.ContentValues;
 import android.content.Context;
-import android.database.Cursor;
-import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Encapsulate offline access and storage through {@link android.content.ContentResolver}.
+ * Encapsulate offline access and storage through an {@link OfflinerStorage}.
  * <p/>
- * Use {@link android.content.AsyncQueryHandler} to make asynchronous saving :
- * {@link fr.tvbarthel.cheerleader.library.offline.OfflinerQueryHandler#put(String, String)}
+ * By default the database is accessed directly, {@link OfflinerProvider} can be used instead
+ * when the offline storage is shared between processes.
  * <p/>
- * Retrieving is synchronous :
- * {@link fr.tvbarthel.cheerleader.library.offline.OfflinerQueryHandler#put(String, String)}
+ * Saving is asynchronous and batched, results are applied in a single transaction on a worker
+ * thread :
+ * {@link fr.tvbarthel.cheerleader.library.offline.OfflinerQueryHandler#enqueue(String, String)}
+ * <p/>
+ * Saved results are evicted in the background once too old or when the storage exceeds its
+ * maximum size :
+ * {@link fr.tvbarthel.cheerleader.library.offline.OfflinerQueryHandler#evictionPolicy(long, long)}
+ * <p/>
+ * Retrieving is synchronous and served from memory when possible :
+ * {@link fr.tvbarthel.cheerleader.library.offline.OfflinerQueryHandler#get(String)}
  */
-final class OfflinerQueryHandler extends AsyncQueryHandler {
+final class OfflinerQueryHandler {
 
     /**
      * Log cat.
@@ -27,30 +40,95 @@ final class OfflinerQueryHandler extends AsyncQueryHandler {
     private static final String TAG = OfflinerQueryHandler.class.getSimpleName();
 
     /**
-     * Token to identify queries used to know if the request as already been saved for offline usage.
+     * Delay in milliseconds during which enqueued results are coalesced before being saved.
+     */
+    private static final long BATCH_DELAY = 500;
+
+    /**
+     * Number of enqueued results from which the batch is saved without waiting.
+     */
+    private static final int BATCH_MAX_SIZE = 50;
+
+    /**
+     * Name of the thread used to apply batches.
+     */
+    private static final String BATCH_THREAD_NAME = "OfflinerBatchThread";
+
+    /**
+     * Default maximum size of the storage in bytes.
+     */
+    static final long DEFAULT_MAX_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * Default maximum age of a saved result in milliseconds.
+     */
+    static final long DEFAULT_MAX_AGE = TimeUnit.DAYS.toMillis(30);
+
+    /**
+     * Minimum delay in milliseconds between two evictions.
+     */
+    private static final long EVICTION_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Application context used to initialize the storages.
      */
-    private static final int TOKEN_CHECK_SAVED_STATUS = 0;
+    private final Context mContext;
 
     /**
-     * Token to identify queries used to update json body of a request which as already been saved.
+     * Storage currently used, lazily initialized.
      */
-    private static final int TOKEN_UPDATE_ALREADY_SAVED_REQUEST = 1;
+    private OfflinerStorage mStorage;
 
     /**
-     * Token to identify queries used to save the json body of a new request for offline access.
+     * Used to know if the storage is accessed through {@link OfflinerProvider}
      */
-    private static final int TOKEN_SAVE_NEW_REQUEST = 2;
+    private boolean mCrossProcess;
 
     /**
-     * package name of the application currently using cheerleader.
+     * Results waiting to be saved mapped by url, a newer result replaces a pending one.
      */
-    private final String mPackageName;
+    private final LinkedHashMap<String, ContentValues> mPendingResults;
+
+    /**
+     * In-memory tier in front of the database, written through on every save.
+     */
+    private final OfflinerMemoryCache mMemoryCache;
+
+    /**
+     * Runnable used to save the pending results.
+     */
+    private final Runnable mFlushRunnable;
+
+    /**
+     * Handler used to apply batches on a worker thread, lazily initialized.
+     */
+    private Handler mBatchHandler;
 
     /**
      * Used to know if log are enable or not.
      */
     private boolean mDebug;
 
+    /**
+     * Used to know if results are saved as compressed blobs.
+     */
+    private volatile boolean mCompress;
+
+    /**
+     * Maximum size of the storage in bytes, 0 for no limit.
+     */
+    private volatile long mMaxSize;
+
+    /**
+     * Maximum age of a saved result in milliseconds, 0 for no limit.
+     */
+    private volatile long mMaxAge;
+
+    /**
+     * Elapsed realtime of the last eviction, only accessed from the batch thread.
+     */
+    private long mLastEviction;
+
 
     /**
      * Handle accessing and retrieving for offline storage.
@@ -58,9 +136,20 @@ final class OfflinerQueryHandler extends AsyncQueryHandler {
      * @param context holding context used to initialize internal component.
      */
     public OfflinerQueryHandler(Context context) {
-        super(context.getContentResolver());
         this.mDebug = false;
-        this.mPackageName = context.getPackageName();
+        this.mContext = context.getApplicationContext();
+        this.mCrossProcess = false;
+        this.mMaxSize = DEFAULT_MAX_SIZE;
+        this.mMaxAge = DEFAULT_MAX_AGE;
+        this.mLastEviction = -EVICTION_INTERVAL;
+        this.mPendingResults = new LinkedHashMap<>();
+        this.mMemoryCache = new OfflinerMemoryCache(OfflinerMemoryCache.DEFAULT_MAX_SIZE);
+        this.mFlushRunnable = new Runnable() {
+            @Override
+            public void run() {
+                applyPendingResults();
+            }
+        };
     }
 
     /**
@@ -72,131 +161,288 @@ final class OfflinerQueryHandler extends AsyncQueryHandler {
         mDebug = enable;
     }
 
+    /**
+     * Access the storage through {@link OfflinerProvider} or directly.
+     * <p/>
+     * Should be defined before any access to the storage.
+     *
+     * @param enable true to access the storage through {@link OfflinerProvider}
+     */
+    public synchronized void crossProcess(boolean enable) {
+        if (mCrossProcess != enable) {
+            mCrossProcess = enable;
+            mStorage = null;
+        }
+    }
 
-    @Override
-    protected void onQueryComplete(int token, Object cookie, Cursor cursor) {
-        super.onQueryComplete(token, cookie, cursor);
+    /**
+     * Save the results as compressed blobs or as plain text.
+     * <p/>
+     * Results already saved are still read whatever the way they have been saved.
+     *
+     * @param enable true to save the results as compressed blobs.
+     */
+    public void compress(boolean enable) {
+        mCompress = enable;
+    }
 
-        if (token == TOKEN_CHECK_SAVED_STATUS) {
-            ContentValues values = ((ContentValues) cookie);
+    /**
+     * Define the eviction policy of the saved results and evict them in the background.
+     * <p/>
+     * Results older than the maximum age are deleted first, then the oldest ones until the
+     * storage fits in its maximum size. Eviction then runs periodically after saving.
+     *
+     * @param maxSize maximum size of the storage in bytes, 0 for no limit.
+     * @param maxAge  maximum age of a saved result in milliseconds, 0 for no limit.
+     */
+    public void evictionPolicy(long maxSize, long maxAge) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Offline maximum size can't be negative.");
+        }
+        if (maxAge < 0) {
+            throw new IllegalArgumentException("Offline maximum age can't be negative.");
+        }
+        mMaxSize = maxSize;
+        mMaxAge = maxAge;
+        getBatchHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                evict();
+            }
+        });
+    }
 
-            if (cursor != null && cursor.getCount() != 0) {
+    /**
+     * Enqueue a result to save for offline access.
+     * <p/>
+     * Enqueued results are coalesced during a short delay then saved in a single transaction.
+     * A result enqueued for an url which is still pending replaces the previous one.
+     *
+     * @param url    key.
+     * @param result value.
+     */
+    public void enqueue(String url, String result) {
+        if (TextUtils.isEmpty(url)) {
+            return;
+        }
 
-                String url = values.getAsString(OfflinerDBHelper.REQUEST_URL);
+        putInMemory(url, result);
 
-                // request already saved for offline, update associated json.
-                this.startUpdate(
-                        TOKEN_UPDATE_ALREADY_SAVED_REQUEST,
-                        null,
-                        getUri(OfflinerDBHelper.TABLE_CACHE),
-                        values,
-                        OfflinerDBHelper.REQUEST_URL + " = '" + url + "'", null);
+        boolean flushNow;
+        boolean schedule;
+        synchronized (mPendingResults) {
+            schedule = mPendingResults.isEmpty();
+            mPendingResults.put(url, buildValues(url, result));
+            flushNow = mPendingResults.size() >= BATCH_MAX_SIZE;
+        }
 
-                if (mDebug) {
-                    Log.d(TAG, "---> ASYNC UPDATE FOR OFFLINE ");
-                }
-            } else {
+        if (flushNow) {
+            Handler handler = getBatchHandler();
+            handler.removeCallbacks(mFlushRunnable);
+            handler.post(mFlushRunnable);
+        } else if (schedule) {
+            getBatchHandler().postDelayed(mFlushRunnable, BATCH_DELAY);
+        }
 
-                // request never saved, add associated json body for offline usage.
-                this.startInsert(
-                        TOKEN_SAVE_NEW_REQUEST,
-                        null,
-                        getUri(OfflinerDBHelper.TABLE_CACHE),
-                        values
-                );
+        if (mDebug) {
+            Log.d(TAG, "---> ENQUEUE FOR OFFLINE ");
+            Log.d(TAG, "Key : " + url);
+            Log.d(TAG, "Value : " + result);
+        }
+    }
 
-                if (mDebug) {
-                    Log.d(TAG, "---> ASYNC INSERT FOR OFFLINE ");
-                }
+    /**
+     * Save the enqueued results without waiting for the end of the coalescing delay.
+     */
+    public void flush() {
+        Handler handler = getBatchHandler();
+        handler.removeCallbacks(mFlushRunnable);
+        handler.post(mFlushRunnable);
+    }
+
+    /**
+     * Retrieve a value saved for offline access.
+     *
+     * @param url key.
+     * @return retrieved value or null if no entry match the given key.
+     */
+    public String get(String url) {
+        String cached = mMemoryCache.get(url);
+        if (cached != null) {
+            if (mDebug) {
+                Log.d(TAG, "Memory hit : " + mMemoryCache.hitCount() + " miss : " + mMemoryCache.missCount());
             }
+            return cached;
         }
 
-        if (mDebug) {
-            Log.d(TAG, "Key : " + ((ContentValues) cookie).getAsString(OfflinerDBHelper.REQUEST_URL));
-            Log.d(TAG, "Value : " + ((ContentValues) cookie).getAsString(OfflinerDBHelper.REQUEST_RESULT));
+        synchronized (mPendingResults) {
+            ContentValues pending = mPendingResults.get(url);
+            if (pending != null) {
+                return pending.getAsString(OfflinerDBHelper.REQUEST_RESULT);
+            }
         }
 
-        if (cursor != null) {
-            cursor.close();
-        }
+        String result = getStorage().get(url);
+        putInMemory(url, result);
+        return result;
     }
 
-    @Override
-    protected void onInsertComplete(int token, Object cookie, Uri uri) {
-        super.onInsertComplete(token, cookie, uri);
-        if (mDebug && token == TOKEN_SAVE_NEW_REQUEST) {
-            Log.d(TAG, "<--- ASYNC INSERT FOR OFFLINE");
-        }
+    /**
+     * Retrieve the number of results retrieved from the in-memory tier.
+     *
+     * @return hit count.
+     */
+    public int getMemoryHitCount() {
+        return mMemoryCache.hitCount();
     }
 
-    @Override
-    protected void onUpdateComplete(int token, Object cookie, int result) {
-        super.onUpdateComplete(token, cookie, result);
-        if (mDebug && token == TOKEN_UPDATE_ALREADY_SAVED_REQUEST) {
-            Log.d(TAG, "<--- ASYNC UPDATE FOR OFFLINE");
-        }
+    /**
+     * Retrieve the number of results which weren't found in the in-memory tier.
+     *
+     * @return miss count.
+     */
+    public int getMemoryMissCount() {
+        return mMemoryCache.missCount();
     }
 
     /**
-     * Save a result for offline access.
+     * Write a result through the in-memory tier.
      *
      * @param url    key.
-     * @param result value.
+     * @param result value, ignored if null.
      */
-    public void put(String url, String result) {
-        if (TextUtils.isEmpty(url)) {
-            return;
+    private void putInMemory(String url, String result) {
+        if (result != null) {
+            mMemoryCache.put(url, result);
         }
+    }
 
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(OfflinerDBHelper.REQUEST_RESULT, result);
-        contentValues.put(OfflinerDBHelper.REQUEST_URL, url);
-        contentValues.put(OfflinerDBHelper.REQUEST_TIMESTAMP, Calendar.getInstance().getTime().getTime());
+    /**
+     * Save the pending results in a single batch.
+     * <p/>
+     * Must be called from the batch thread.
+     */
+    private void applyPendingResults() {
+        ArrayList<ContentValues> batch;
+        synchronized (mPendingResults) {
+            if (mPendingResults.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(mPendingResults.values());
+        }
+
+        if (mDebug) {
+            Log.d(TAG, "---> BATCH UPSERT FOR OFFLINE : " + batch.size());
+        }
+
+        getStorage().save(toStored(batch));
+
+        // pending results are only removed once applied to remain readable through get.
+        boolean reschedule;
+        synchronized (mPendingResults) {
+            for (ContentValues values : batch) {
+                String url = values.getAsString(OfflinerDBHelper.REQUEST_URL);
+                if (mPendingResults.get(url) == values) {
+                    mPendingResults.remove(url);
+                }
+            }
+            reschedule = !mPendingResults.isEmpty();
+        }
 
-        this.startQuery(
-                TOKEN_CHECK_SAVED_STATUS,
-                contentValues,
-                getUri(OfflinerDBHelper.TABLE_CACHE),
-                OfflinerDBHelper.PARAMS_CACHE,
-                OfflinerDBHelper.REQUEST_URL + " = '" + url + "'",
-                null,
-                null
-        );
+        if (reschedule) {
+            getBatchHandler().postDelayed(mFlushRunnable, BATCH_DELAY);
+        }
+
+        if (mDebug) {
+            Log.d(TAG, "<--- BATCH UPSERT FOR OFFLINE");
+        }
+
+        evictIfNeeded();
     }
 
     /**
-     * Retrieve a value saved for offline access.
+     * Convert the results to the way they are stored.
+     * <p/>
+     * Must be called from the batch thread since compression can be expensive.
      *
-     * @param context context used to retrieve the content resolver.
-     * @param url     key.
-     * @return retrieved value or null if no entry match the given key.
+     * @param results values built with the {@link OfflinerDBHelper} columns.
+     * @return values to store.
      */
-    public String get(Context context, String url) {
-        final Cursor cursor = context.getContentResolver().query(getUri(OfflinerDBHelper.TABLE_CACHE),
-                OfflinerDBHelper.PARAMS_CACHE, OfflinerDBHelper.REQUEST_URL
-                        + " = '" + url + "'", null, null);
-        String result = null;
+    private List<ContentValues> toStored(List<ContentValues> results) {
+        return mCompress ? OfflinerCompression.compress(results) : results;
+    }
+
+    /**
+     * Evict saved results if the last eviction is old enough.
+     * <p/>
+     * Must be called from the batch thread.
+     */
+    private void evictIfNeeded() {
+        if (SystemClock.elapsedRealtime() - mLastEviction >= EVICTION_INTERVAL) {
+            evict();
+        }
+    }
+
+    /**
+     * Evict saved results according to the eviction policy.
+     * <p/>
+     * Must be called from the batch thread.
+     */
+    private void evict() {
+        mLastEviction = SystemClock.elapsedRealtime();
+        long maxSize = mMaxSize;
+        long maxAge = mMaxAge;
+        if (maxSize == 0 && maxAge == 0) {
+            return;
+        }
+        int deleted = getStorage().evict(maxSize, maxAge);
+        if (mDebug) {
+            Log.d(TAG, "EVICTION FOR OFFLINE : " + deleted + " results deleted");
+        }
+    }
 
-        if (cursor != null) {
-            if (cursor.getCount() != 0) {
-                cursor.moveToFirst();
-                result = cursor.getString(cursor.getColumnIndex(OfflinerDBHelper.REQUEST_RESULT));
+    /**
+     * Retrieve the storage currently used, initialize it if needed.
+     *
+     * @return storage.
+     */
+    private synchronized OfflinerStorage getStorage() {
+        if (mStorage == null) {
+            if (mCrossProcess) {
+                mStorage = new OfflinerProviderStorage(mContext);
+            } else {
+                mStorage = new OfflinerDatabaseStorage(mContext);
             }
-            cursor.close();
         }
+        return mStorage;
+    }
 
-        return result;
+    /**
+     * Retrieve the handler used to apply batches, start the batch thread if needed.
+     *
+     * @return handler running on the batch thread.
+     */
+    private synchronized Handler getBatchHandler() {
+        if (mBatchHandler == null) {
+            HandlerThread thread = new HandlerThread(BATCH_THREAD_NAME, Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            mBatchHandler = new Handler(thread.getLooper());
+        }
+        return mBatchHandler;
     }
 
     /**
-     * Retrieve the URI with Cache database provider authority.
+     * Build the values saved for a result.
      *
-     * @param string ends of the URI.
-     * @return full build URI.
+     * @param url    key.
+     * @param result value.
+     * @return values to insert.
      */
-    private Uri getUri(String string) {
-        return Uri.parse(OfflinerProvider.CONTENT + OfflinerProvider.getAuthority(mPackageName)
-                + OfflinerProvider.SLASH + string);
+    private static ContentValues buildValues(String url, String result) {
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(OfflinerDBHelper.REQUEST_RESULT, result);
+        contentValues.put(OfflinerDBHelper.REQUEST_URL, url);
+        contentValues.put(OfflinerDBHelper.REQUEST_TIMESTAMP, Calendar.getInstance().getTime().getTime());
+        return contentValues;
     }
 }
-
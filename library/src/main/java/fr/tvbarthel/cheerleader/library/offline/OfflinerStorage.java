@@ -0,0 +1,38 @@
+package fr.tvbarthel.cheerleader.library.offline;
+
+import android.content.ContentValues;
+
+import java.util.List;
+
+/**
+ * Storage backend in which results are saved for offline access.
+ * <p/>
+ * Calls are synchronous and must not be performed on the main thread.
+ */
+interface OfflinerStorage {
+
+    /**
+     * Retrieve a value saved for offline access.
+     *
+     * @param url key.
+     * @return retrieved value or null if no entry match the given key.
+     */
+    String get(String url);
+
+    /**
+     * Save results in a single transaction, replacing the ones previously saved for the same urls.
+     *
+     * @param results values built with the {@link OfflinerDBHelper} columns.
+     */
+    void save(List<ContentValues> results);
+
+    /**
+     * Delete the results older than the given age then the oldest ones until the storage fits
+     * in the given size.
+     *
+     * @param maxSize maximum size of the storage in bytes, 0 for no limit.
+     * @param maxAge  maximum age of a result in milliseconds, 0 for no limit.
+     * @return number of deleted results.
+     */
+    int evict(long maxSize, long maxAge);
+}
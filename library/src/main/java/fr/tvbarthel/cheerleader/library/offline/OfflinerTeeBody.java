@@ -0,0 +1,132 @@
+package fr.tvbarthel.cheerleader.library.offline;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Response body which copies the network body into the offline storage while it is read.
+ * <p/>
+ * The copy is saved once the body has been fully read and discarded if the body is closed
+ * before its end or if the network fails.
+ */
+final class OfflinerTeeBody extends ResponseBody {
+
+    /**
+     * Charset used when the response doesn't declare one.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Network body.
+     */
+    private final ResponseBody mDelegate;
+
+    /**
+     * Url used as offline key.
+     */
+    private final String mUrl;
+
+    /**
+     * Query handler used to save the copy.
+     */
+    private final OfflinerQueryHandler mQueryHandler;
+
+    /**
+     * Copy of the bytes read so far.
+     */
+    private final Buffer mCopy;
+
+    /**
+     * Source returned to the caller.
+     */
+    private final BufferedSource mSource;
+
+    /**
+     * Used to know if the copy has already been saved or discarded.
+     */
+    private boolean mDone;
+
+    /**
+     * Body copying the network body into the offline storage while it is read.
+     *
+     * @param delegate     network body.
+     * @param url          url used as offline key.
+     * @param queryHandler query handler used to save the copy.
+     */
+    OfflinerTeeBody(ResponseBody delegate, String url, OfflinerQueryHandler queryHandler) {
+        mDelegate = delegate;
+        mUrl = url;
+        mQueryHandler = queryHandler;
+        mCopy = new Buffer();
+        mSource = Okio.buffer(new ForwardingSource(delegate.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read;
+                try {
+                    read = super.read(sink, byteCount);
+                } catch (IOException e) {
+                    discard();
+                    throw e;
+                }
+                if (read == -1) {
+                    commit();
+                } else if (!mDone) {
+                    sink.copyTo(mCopy, sink.size() - read, read);
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                discard();
+                super.close();
+            }
+        });
+    }
+
+    @Override
+    public MediaType contentType() {
+        return mDelegate.contentType();
+    }
+
+    @Override
+    public long contentLength() {
+        return mDelegate.contentLength();
+    }
+
+    @Override
+    public BufferedSource source() {
+        return mSource;
+    }
+
+    /**
+     * Save the copy for offline access, the body has been fully read.
+     */
+    private void commit() {
+        if (mDone) {
+            return;
+        }
+        mDone = true;
+        MediaType contentType = mDelegate.contentType();
+        Charset charset = contentType != null ? contentType.charset(UTF_8) : UTF_8;
+        mQueryHandler.enqueue(mUrl, mCopy.readString(charset));
+    }
+
+    /**
+     * Discard the copy, the body won't be fully read.
+     */
+    private void discard() {
+        if (mDone) {
+            return;
+        }
+        mDone = true;
+        mCopy.clear();
+    }
+}
@@ -0,0 +1,462 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Artwork pipeline shared by the player components.
+ * <p/>
+ * Each artwork is downloaded and decoded once, whatever the number of components requesting it :
+ * concurrent requests of the same url are merged and the decoded artwork is kept until the next
+ * one is requested. The artwork is decoded with the largest sub sampling fitting every requested
+ * size, then center cropped into a square bitmap of the size requested by each component.
+ * <p/>
+ * Bitmaps given back through {@link #release(Bitmap)} are pooled and reused for the following
+ * artworks, as is the memory of the previously decoded artwork, which avoids an allocation spike
+ * on each track change.
+ */
+final class ArtworkLoader {
+
+    /**
+     * Log cat.
+     */
+    private static final String TAG = ArtworkLoader.class.getSimpleName();
+
+    /**
+     * Maximum number of pooled bitmaps.
+     */
+    private static final int MAX_POOL_SIZE = 4;
+
+    /**
+     * Singleton pattern.
+     */
+    private static ArtworkLoader sInstance;
+
+    /**
+     * Client used to download the artworks.
+     */
+    private final OkHttpClient mOkHttpClient;
+
+    /**
+     * Single thread executor downloading and decoding the artworks.
+     */
+    private final ExecutorService mExecutor;
+
+    /**
+     * Handler used to deliver the artworks on the main thread.
+     */
+    private final Handler mMainThreadHandler;
+
+    /**
+     * Pending request of each callback, a callback only waits for its last request.
+     */
+    private final HashMap<Callback, ArtworkRequest> mRequests;
+
+    /**
+     * Requests grouped by artwork url, for the artworks being loaded.
+     */
+    private final HashMap<String, ArrayList<ArtworkRequest>> mJobs;
+
+    /**
+     * Released bitmaps available for reuse.
+     */
+    private final ArrayList<Bitmap> mPool;
+
+    /**
+     * Paint used to scale the decoded artworks.
+     */
+    private final Paint mPaint;
+
+    /**
+     * Url of the last decoded artwork, only accessed by the executor.
+     */
+    private String mDecodedUrl;
+
+    /**
+     * Last decoded artwork, only accessed by the executor.
+     */
+    private Bitmap mDecoded;
+
+    /**
+     * Singleton.
+     */
+    private ArtworkLoader() {
+        mOkHttpClient = new OkHttpClient();
+        mExecutor = Executors.newSingleThreadExecutor();
+        mMainThreadHandler = new Handler(Looper.getMainLooper());
+        mRequests = new HashMap<>();
+        mJobs = new HashMap<>();
+        mPool = new ArrayList<>(MAX_POOL_SIZE);
+        mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    }
+
+    /**
+     * Retrieve the instance of the artwork loader.
+     *
+     * @return instance.
+     */
+    static synchronized ArtworkLoader getInstance() {
+        if (sInstance == null) {
+            sInstance = new ArtworkLoader();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Load an artwork, replacing the pending request of the callback if any.
+     * <p/>
+     * Can be called from any thread, the artwork is delivered on the main thread.
+     *
+     * @param artworkUrl url of the artwork.
+     * @param size       size of the square bitmap to deliver, in pixels.
+     * @param callback   callback notified once the artwork is loaded.
+     */
+    synchronized void load(String artworkUrl, int size, Callback callback) {
+        cancel(callback);
+        if (artworkUrl == null) {
+            return;
+        }
+        ArtworkRequest request = new ArtworkRequest(size, callback);
+        mRequests.put(callback, request);
+        ArrayList<ArtworkRequest> job = mJobs.get(artworkUrl);
+        if (job != null) {
+            // artwork already being loaded, the request will be served by the same decode.
+            job.add(request);
+            return;
+        }
+        job = new ArrayList<>();
+        job.add(request);
+        mJobs.put(artworkUrl, job);
+        submit(artworkUrl);
+    }
+
+    /**
+     * Cancel the pending request of a callback.
+     *
+     * @param callback callback which shouldn't be notified anymore.
+     */
+    synchronized void cancel(Callback callback) {
+        ArtworkRequest request = mRequests.remove(callback);
+        if (request != null) {
+            request.mIsCancelled = true;
+        }
+    }
+
+    /**
+     * Give back a delivered bitmap which won't be used anymore, its memory will be reused.
+     *
+     * @param bitmap bitmap previously delivered, can be null.
+     */
+    void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        synchronized (mPool) {
+            if (mPool.size() < MAX_POOL_SIZE && !mPool.contains(bitmap)) {
+                mPool.add(bitmap);
+            }
+        }
+    }
+
+    /**
+     * Load an artwork in the background and deliver it to each request.
+     *
+     * @param artworkUrl url of the artwork.
+     */
+    private void submit(final String artworkUrl) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap decoded = null;
+                while (true) {
+                    ArrayList<ArtworkRequest> requests;
+                    synchronized (ArtworkLoader.this) {
+                        requests = takeRequests(artworkUrl);
+                        if (requests.isEmpty()) {
+                            // every request has been served or cancelled.
+                            mJobs.remove(artworkUrl);
+                            return;
+                        }
+                    }
+                    if (decoded == null) {
+                        decoded = getDecoded(artworkUrl, getMaxSize(requests));
+                    }
+                    for (ArtworkRequest request : requests) {
+                        deliver(request, decoded == null ? null : crop(decoded, request.mSize));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Take the requests of an artwork which haven't been served nor cancelled.
+     *
+     * @param artworkUrl url of the artwork.
+     * @return requests to serve.
+     */
+    private ArrayList<ArtworkRequest> takeRequests(String artworkUrl) {
+        ArrayList<ArtworkRequest> job = mJobs.get(artworkUrl);
+        ArrayList<ArtworkRequest> requests = new ArrayList<>(job.size());
+        for (ArtworkRequest request : job) {
+            if (!request.mIsCancelled) {
+                requests.add(request);
+            }
+        }
+        job.clear();
+        return requests;
+    }
+
+    /**
+     * Retrieve the decoded artwork, downloading and decoding it if it isn't the last one.
+     *
+     * @param artworkUrl url of the artwork.
+     * @param size       size needed by the requests, in pixels.
+     * @return decoded artwork or null if it can't be loaded.
+     */
+    private Bitmap getDecoded(String artworkUrl, int size) {
+        if (artworkUrl.equals(mDecodedUrl) && mDecoded != null
+                && Math.min(mDecoded.getWidth(), mDecoded.getHeight()) >= size) {
+            return mDecoded;
+        }
+        byte[] data = download(artworkUrl);
+        if (data == null) {
+            return null;
+        }
+        Bitmap decoded = decode(data, size, mDecoded);
+        if (decoded != mDecoded && mDecoded != null) {
+            mDecoded.recycle();
+        }
+        mDecoded = decoded;
+        mDecodedUrl = decoded == null ? null : artworkUrl;
+        return decoded;
+    }
+
+    /**
+     * Download an artwork.
+     *
+     * @param artworkUrl url of the artwork.
+     * @return encoded artwork or null if it can't be downloaded.
+     */
+    private byte[] download(String artworkUrl) {
+        Response response = null;
+        try {
+            Request request = new Request.Builder().url(artworkUrl).build();
+            response = mOkHttpClient.newCall(request).execute();
+            if (!response.isSuccessful()) {
+                Log.e(TAG, "Failed to download artwork : " + response.code());
+                return null;
+            }
+            return response.body().bytes();
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Failed to download artwork : " + e.getMessage());
+            return null;
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    /**
+     * Decode an artwork with the largest sub sampling keeping its shortest side above a size.
+     *
+     * @param data     encoded artwork.
+     * @param size     minimal size of the shortest side, in pixels.
+     * @param reusable bitmap whose memory can be reused, can be null.
+     * @return decoded artwork or null if it can't be decoded.
+     */
+    private static Bitmap decode(byte[] data, int size, Bitmap reusable) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        int shortestSide = Math.min(options.outWidth, options.outHeight);
+        if (shortestSide <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (shortestSide / (options.inSampleSize * 2) >= size) {
+            options.inSampleSize *= 2;
+        }
+        options.inMutable = true;
+        if (canReuse(reusable, options)) {
+            options.inBitmap = reusable;
+            try {
+                return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            } catch (IllegalArgumentException e) {
+                // reuse refused by the decoder, decode in a new bitmap.
+                options.inBitmap = null;
+            }
+        }
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /**
+     * Used to know if a bitmap can receive a decoded artwork.
+     *
+     * @param reusable bitmap whose memory would be reused, can be null.
+     * @param options  decoding options, bounds already decoded.
+     * @return true if the bitmap can be passed as {@link BitmapFactory.Options#inBitmap}
+     */
+    private static boolean canReuse(Bitmap reusable, BitmapFactory.Options options) {
+        if (reusable == null || reusable.isRecycled() || !reusable.isMutable()) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // any bitmap large enough, 4 bytes per pixel at most.
+            int width = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+            int height = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+            return width * height * 4 <= reusable.getByteCount();
+        }
+        // before KitKat, only bitmaps of the same size without sub sampling.
+        return options.inSampleSize == 1
+                && reusable.getWidth() == options.outWidth
+                && reusable.getHeight() == options.outHeight;
+    }
+
+    /**
+     * Center crop the decoded artwork into a square bitmap, reusing a pooled bitmap if possible.
+     *
+     * @param decoded decoded artwork.
+     * @param size    size of the square bitmap, in pixels.
+     * @return cropped artwork.
+     */
+    private Bitmap crop(Bitmap decoded, int size) {
+        Bitmap cropped = obtain(size);
+        int side = Math.min(decoded.getWidth(), decoded.getHeight());
+        int left = (decoded.getWidth() - side) / 2;
+        int top = (decoded.getHeight() - side) / 2;
+        Canvas canvas = new Canvas(cropped);
+        canvas.drawBitmap(decoded, new Rect(left, top, left + side, top + side),
+                new Rect(0, 0, size, size), mPaint);
+        return cropped;
+    }
+
+    /**
+     * Retrieve a cleared square bitmap, from the pool if possible.
+     *
+     * @param size size of the square bitmap, in pixels.
+     * @return mutable bitmap.
+     */
+    private Bitmap obtain(int size) {
+        synchronized (mPool) {
+            for (int i = 0; i < mPool.size(); i++) {
+                Bitmap pooled = mPool.get(i);
+                if (pooled.getWidth() == size && pooled.getHeight() == size && !pooled.isRecycled()) {
+                    mPool.remove(i);
+                    pooled.eraseColor(Color.TRANSPARENT);
+                    return pooled;
+                }
+            }
+        }
+        return Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Deliver an artwork on the main thread, the artwork is pooled if the request has been
+     * cancelled meanwhile.
+     *
+     * @param request request to serve.
+     * @param artwork artwork to deliver, null if it can't be loaded.
+     */
+    private void deliver(final ArtworkRequest request, final Bitmap artwork) {
+        mMainThreadHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ArtworkLoader.this) {
+                    if (request.mIsCancelled) {
+                        release(artwork);
+                        return;
+                    }
+                    mRequests.remove(request.mCallback);
+                }
+                if (artwork != null) {
+                    request.mCallback.onArtworkLoaded(artwork);
+                }
+            }
+        });
+    }
+
+    /**
+     * Retrieve the largest size requested.
+     *
+     * @param requests requests of an artwork.
+     * @return size in pixels.
+     */
+    private static int getMaxSize(ArrayList<ArtworkRequest> requests) {
+        int size = 0;
+        for (ArtworkRequest request : requests) {
+            size = Math.max(size, request.mSize);
+        }
+        return size;
+    }
+
+    /**
+     * Callback used to catch the loaded artworks.
+     */
+    interface Callback {
+
+        /**
+         * Called on the main thread once an artwork has been loaded.
+         * <p/>
+         * The bitmap isn't shared with any other callback and can be given back through
+         * {@link ArtworkLoader#release(Bitmap)} once nothing references it anymore, which is never
+         * the case of a bitmap set on long lived remote views.
+         *
+         * @param artwork loaded artwork.
+         */
+        void onArtworkLoaded(Bitmap artwork);
+    }
+
+    /**
+     * Request of an artwork at a given size.
+     */
+    private static final class ArtworkRequest {
+
+        /**
+         * Size of the square bitmap to deliver, in pixels.
+         */
+        private final int mSize;
+
+        /**
+         * Callback notified once the artwork is loaded.
+         */
+        private final Callback mCallback;
+
+        /**
+         * Used to know if the request has been cancelled.
+         */
+        private boolean mIsCancelled;
+
+        /**
+         * Request of an artwork at a given size.
+         *
+         * @param size     size of the square bitmap to deliver, in pixels.
+         * @param callback callback notified once the artwork is loaded.
+         */
+        private ArtworkRequest(int size, Callback callback) {
+            mSize = size;
+            mCallback = callback;
+        }
+    }
+}
@@ -18,9 +18,9 @@ import rx.functions.Action1;
  */
 public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrack>> {
 
-    private static final int STATE_STOPPED = 0x00000000;
-    private static final int STATE_PAUSED = 0x00000001;
-    private static final int STATE_PLAYING = 0x00000002;
+    static final int STATE_STOPPED = 0x00000000;
+    static final int STATE_PAUSED = 0x00000001;
+    static final int STATE_PLAYING = 0x00000002;
 
     /**
      * Instance, singleton pattern.
@@ -38,24 +38,24 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
     private String mClientKey;
 
     /**
-     * Internal listener used to catch service callbacks
+     * Internal listener used to catch service callbacks and notify the player listeners.
      */
-    private PlaybackListener mInternalListener;
+    private PlayerListeners mPlayerListeners;
 
     /**
-     * Listener which should be notified of playback events.
+     * Listeners which should be notified of playlist events.
      */
-    private ArrayList<CheerleaderPlayerListener> mCheerleaderPlayerListeners;
+    private PlaylistListeners mPlaylistListeners;
 
     /**
-     * Listener which should be notified of playlist events.
+     * Manage the playlist used by the player.
      */
-    private ArrayList<CheerleaderPlaylistListener> mCheerleaderPlaylistListeners;
+    private PlayerPlaylist mPlayerPlaylist;
 
     /**
-     * Manage the playlist used by the player.
+     * Channel used to send commands to the {@link PlaybackService}.
      */
-    private PlayerPlaylist mPlayerPlaylist;
+    private PlaybackConnection mPlaybackConnection;
 
     /**
      * Manage the notification.
@@ -79,11 +79,9 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
     private boolean mDestroyDelayed;
 
     /**
-     * Private default constructor.
+     * Playback options defined through the {@link Builder}.
      */
-    private CheerleaderPlayer() {
-
-    }
+    private PlaybackOptions mPlaybackOptions;
 
     /**
      * Singleton pattern.
@@ -98,15 +96,17 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
         mIsClosed = false;
         mDestroyDelayed = false;
         mState = STATE_STOPPED;
-        mCheerleaderPlayerListeners = new ArrayList<>();
-        mCheerleaderPlaylistListeners = new ArrayList<>();
+        mPlaybackOptions = new PlaybackOptions();
+        mPlaylistListeners = new PlaylistListeners();
 
         mApplicationContext = new WeakReference<>(applicationContext);
 
         mPlayerPlaylist = PlayerPlaylist.getInstance();
+        mPlaybackConnection = new PlaybackConnection(applicationContext);
         mNotificationManager = NotificationManager.getInstance(getContext());
 
-        initInternalListener(applicationContext);
+        mPlayerListeners = new PlayerListeners(this);
+        PlaybackEventBus.getInstance().register(mPlayerListeners);
     }
 
     /**
@@ -148,15 +148,18 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
         }
         mIsClosed = true;
 
-        PlaybackService.unregisterListener(getContext(), mInternalListener);
-        mInternalListener = null;
+        PlaybackEventBus.getInstance().unregister(mPlayerListeners);
+        mPlayerListeners.clear();
+        mPlayerListeners = null;
+
+        mPlaybackConnection.release();
+        mPlaybackConnection = null;
 
         mApplicationContext.clear();
         mApplicationContext = null;
 
         mClientKey = null;
         mPlayerPlaylist = null;
-        mCheerleaderPlayerListeners.clear();
     }
 
     /**
@@ -167,11 +170,11 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
     public void play() {
         checkState();
         if (mState == STATE_PAUSED) {
-            PlaybackService.resume(getContext(), mClientKey);
+            mPlaybackConnection.resume(mClientKey);
         } else if (mState == STATE_STOPPED) {
             SoundCloudTrack track = mPlayerPlaylist.getCurrentTrack();
             if (track != null) {
-                PlaybackService.play(getContext(), mClientKey, track);
+                startPlayback(track);
             } else {
                 return;
             }
@@ -186,11 +189,10 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
      */
     public void play(int position) {
         checkState();
-        ArrayList<SoundCloudTrack> tracks = mPlayerPlaylist.getPlaylist().getTracks();
-        if (position >= 0 && position < tracks.size()) {
-            SoundCloudTrack trackToPlay = tracks.get(position);
+        SoundCloudTrack trackToPlay = mPlayerPlaylist.get(position);
+        if (trackToPlay != null) {
             mPlayerPlaylist.setPlayingTrack(position);
-            PlaybackService.play(getContext(), mClientKey, trackToPlay);
+            startPlayback(trackToPlay);
         }
 
     }
@@ -205,11 +207,10 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
      */
     public void play(SoundCloudTrack track) {
         checkState();
-        ArrayList<SoundCloudTrack> tracks = mPlayerPlaylist.getPlaylist().getTracks();
-        int position = tracks.indexOf(track);
+        int position = mPlayerPlaylist.indexOf(track);
         if (position > -1) {
             mPlayerPlaylist.setPlayingTrack(position);
-            PlaybackService.play(getContext(), mClientKey, track);
+            startPlayback(track);
         }
     }
 
@@ -219,7 +220,7 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
     public void pause() {
         checkState();
         if (mState == STATE_PLAYING) {
-            PlaybackService.pause(getContext(), mClientKey);
+            mPlaybackConnection.pause(mClientKey);
             mState = STATE_PAUSED;
         }
     }
@@ -255,7 +256,7 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
         if (mPlayerPlaylist.isEmpty()) {
             return false;
         }
-        PlaybackService.play(getContext(), mClientKey, mPlayerPlaylist.next());
+        startPlayback(mPlayerPlaylist.next());
         return true;
     }
 
@@ -271,7 +272,7 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
         if (mPlayerPlaylist.isEmpty()) {
             return false;
         }
-        PlaybackService.play(getContext(), mClientKey, mPlayerPlaylist.previous());
+        startPlayback(mPlayerPlaylist.previous());
         return true;
     }
 
@@ -287,10 +288,42 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
     public void seekTo(int milli) {
         checkState();
         if (!mPlayerPlaylist.isEmpty()) {
-            PlaybackService.seekTo(getContext(), mClientKey, milli);
+            mPlaybackConnection.seekTo(mClientKey, milli);
         }
     }
 
+    /**
+     * Hint that a track is about to be played, for instance on touch down or when its row gets
+     * the focus.
+     * <p/>
+     * The player starts preparing the track on a standby engine so that the following
+     * {@link CheerleaderPlayer#play(SoundCloudTrack)} starts right away. The speculation never
+     * competes with the current playback : it is skipped while the current track is buffering,
+     * the number of hinted tracks is limited and a track which isn't played within a few
+     * seconds is dropped. Only the last hinted track is kept.
+     * <p/>
+     * Hints are ignored until a first track has been played, the playback service not running yet.
+     *
+     * @param track track about to be played.
+     */
+    public void hint(SoundCloudTrack track) {
+        checkState();
+        if (track == null) {
+            throw new IllegalArgumentException("Hinted track can't be null.");
+        }
+        mPlaybackConnection.hint(mClientKey, track);
+    }
+
+    /**
+     * Cancel the last hint, for instance when the touch is cancelled.
+     * <p/>
+     * See also {@link CheerleaderPlayer#hint(SoundCloudTrack)}
+     */
+    public void cancelHint() {
+        checkState();
+        mPlaybackConnection.hint(mClientKey, null);
+    }
+
     /**
      * Add a track to the current SoundCloud player playlist.
      * <p/>
@@ -312,10 +345,7 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
      */
     public void addTrack(SoundCloudTrack track, boolean playNow) {
         checkState();
-        mPlayerPlaylist.add(track);
-        for (CheerleaderPlaylistListener listener : mCheerleaderPlaylistListeners) {
-            listener.onTrackAdded(track);
-        }
+        edit().add(track).apply();
         if (playNow) {
             play(mPlayerPlaylist.size() - 1);
         }
@@ -323,15 +353,15 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
 
     /**
      * Add a list of track to thr current SoundCloud player playlist.
+     * <p/>
+     * Tracks are added in a single edit, see also {@link CheerleaderPlayer#edit()}
      *
      * @param tracks list of {@link fr.tvbarthel.cheerleader.library.client.SoundCloudTrack}
      *               to be added to the player.
      */
     public void addTracks(List<SoundCloudTrack> tracks) {
         checkState();
-        for (SoundCloudTrack track : tracks) {
-            addTrack(track);
-        }
+        edit().addAll(tracks).apply();
     }
 
     /**
@@ -343,24 +373,41 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
      */
     public void removeTrack(int playlistIndex) {
         checkState();
-        SoundCloudTrack currentTrack = mPlayerPlaylist.getCurrentTrack();
-        SoundCloudTrack removedTrack = mPlayerPlaylist.remove(playlistIndex);
-
-        if (removedTrack == null) {
+        if (playlistIndex < 0 || playlistIndex >= mPlayerPlaylist.size()) {
             // nothing removed
             return;
         }
+        edit().remove(playlistIndex).apply();
+    }
 
-        if (mPlayerPlaylist.isEmpty()) {
-            // playlist empty after deletion, stop player;
-            PlaybackService.stop(getContext(), mClientKey);
-        } else if (currentTrack != null && currentTrack.equals(removedTrack) && mState == STATE_PLAYING) {
-            // play next track if removed one was the current and playing
-            play(mPlayerPlaylist.getCurrentTrackIndex());
-        }
+    /**
+     * Start a batch of edits of the player playlist.
+     * <p/>
+     * Edits are applied in a single pass once {@link PlaylistEditor#apply()} is called. Each
+     * {@link CheerleaderPlaylistBatchListener} is then notified once with the compacted changes.
+     * <p/>
+     * If the current track is removed while playing, the track taking its place is played. The
+     * shuffle and the repeat mode are edited the same way, see {@link PlaylistSnapshot} to read them.
+     *
+     * @return editor of the player playlist.
+     */
+    public PlaylistEditor edit() {
+        checkState();
+        return new PlaylistEditor(this, mPlayerPlaylist.size());
+    }
 
-        for (CheerleaderPlaylistListener listener : mCheerleaderPlaylistListeners) {
-            listener.onTrackRemoved(removedTrack, mPlayerPlaylist.isEmpty());
+    /**
+     * Remove a track from the SoundCloud player playlist.
+     * <p/>
+     * If the track is currently played, it will be stopped before being removed.
+     *
+     * @param track track to be removed, its first occurrence is removed.
+     */
+    public void removeTrack(SoundCloudTrack track) {
+        checkState();
+        int playlistIndex = mPlayerPlaylist.indexOf(track);
+        if (playlistIndex > -1) {
+            removeTrack(playlistIndex);
         }
     }
 
@@ -382,7 +429,20 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
     public ArrayList<SoundCloudTrack> getTracks() {
         checkState();
         // copy the playlist to avoid reordering, addition, deletion directly on the list.
-        return new ArrayList<>(mPlayerPlaylist.getPlaylist().getTracks());
+        return mPlayerPlaylist.getTracks();
+    }
+
+    /**
+     * Retrieve an immutable snapshot of the tracks added to the playlist.
+     * <p/>
+     * Unlike {@link #getTracks()}, no track is copied and the snapshot can be read from any
+     * thread. Later edits of the playlist publish new snapshots and leave this one unchanged.
+     *
+     * @return current tracks loaded into the player.
+     */
+    public PlaylistSnapshot getPlaylistSnapshot() {
+        checkState();
+        return mPlayerPlaylist.getSnapshot();
     }
 
     /**
@@ -395,6 +455,45 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
         return mPlayerPlaylist.getCurrentTrack();
     }
 
+    /**
+     * Retrieve the last snapshot of the playback clock.
+     * <p/>
+     * The snapshot can be used to extrapolate the playback position at frame rate, see
+     * {@link PlaybackClock#getPosition()}. Must be retrieved again after each player event.
+     *
+     * @return playback clock.
+     */
+    public PlaybackClock getPlaybackClock() {
+        checkState();
+        return mPlayerListeners.getPlaybackClock();
+    }
+
+    /**
+     * Retrieve the playback metrics of the current track.
+     * <p/>
+     * Holds the latency between the play command and the start of the audio, the stalls, the
+     * rebuffer ratio and the seek latencies. The returned snapshot isn't updated afterward.
+     *
+     * @return metrics of the current track, null if no track has been played during the session.
+     */
+    public PlaybackMetrics getTrackMetrics() {
+        checkState();
+        return PlaybackMetricsRecorder.getInstance().getTrackMetrics();
+    }
+
+    /**
+     * Retrieve the playback metrics of the current session.
+     * <p/>
+     * A session starts each time the playback service is created and aggregates the metrics of
+     * every track played since. The returned snapshot isn't updated afterward.
+     *
+     * @return metrics of the current session.
+     */
+    public PlaybackMetrics getSessionMetrics() {
+        checkState();
+        return PlaybackMetricsRecorder.getInstance().getSessionMetrics();
+    }
+
     /**
      * Register a listener to catch player events.
      *
@@ -402,7 +501,7 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
      */
     public void registerPlayerListener(CheerleaderPlayerListener listener) {
         checkState();
-        mCheerleaderPlayerListeners.add(listener);
+        mPlayerListeners.add(listener);
         if (mState == STATE_PLAYING) {
             listener.onPlayerPlay(mPlayerPlaylist.getCurrentTrack(), mPlayerPlaylist.getCurrentTrackIndex());
         } else if (mState == STATE_PAUSED) {
@@ -417,7 +516,7 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
      */
     public void unregisterPlayerListener(CheerleaderPlayerListener listener) {
         checkState();
-        mCheerleaderPlayerListeners.remove(listener);
+        mPlayerListeners.remove(listener);
     }
 
     /**
@@ -427,7 +526,7 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
      */
     public void registerPlaylistListener(CheerleaderPlaylistListener listener) {
         checkState();
-        mCheerleaderPlaylistListeners.add(listener);
+        mPlaylistListeners.add(listener);
     }
 
     /**
@@ -437,110 +536,110 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
      */
     public void unregisterPlaylistListener(CheerleaderPlaylistListener listener) {
         checkState();
-        mCheerleaderPlaylistListeners.remove(listener);
+        mPlaylistListeners.remove(listener);
     }
 
     /**
-     * Retrieve the context used at the creation.
+     * Register a listener to catch playlist change sets.
      *
-     * @return context.
+     * @param listener listener to register.
      */
-    private Context getContext() {
-        if (mApplicationContext.get() == null) {
-            throw new IllegalStateException("WeakReference on application context null");
-        }
-        return mApplicationContext.get();
+    public void registerPlaylistBatchListener(CheerleaderPlaylistBatchListener listener) {
+        checkState();
+        mPlaylistListeners.add(listener);
     }
 
     /**
-     * Initialize the internal listener.
+     * Unregister listener used to catch playlist change sets.
      *
-     * @param context context used to register the internal listener.
-     */
-    private void initInternalListener(Context context) {
-        mInternalListener = new PlaybackListener() {
-            @Override
-            protected void onPlay(SoundCloudTrack track) {
-                super.onPlay(track);
-                mState = STATE_PLAYING;
-                for (CheerleaderPlayerListener listener : mCheerleaderPlayerListeners) {
-                    listener.onPlayerPlay(track, mPlayerPlaylist.getCurrentTrackIndex());
-                }
-            }
-
-            @Override
-            protected void onPause() {
-                super.onPause();
-                mState = STATE_PAUSED;
-                for (CheerleaderPlayerListener listener : mCheerleaderPlayerListeners) {
-                    listener.onPlayerPause();
-                }
-            }
+     * @param listener listener to unregister.
+     */
+    public void unregisterPlaylistBatchListener(CheerleaderPlaylistBatchListener listener) {
+        checkState();
+        mPlaylistListeners.remove(listener);
+    }
 
-            @Override
-            protected void onPlayerDestroyed() {
-                super.onPlayerDestroyed();
-                mState = STATE_STOPPED;
-                for (CheerleaderPlayerListener listener : mCheerleaderPlayerListeners) {
-                    listener.onPlayerDestroyed();
-                }
-                if (mDestroyDelayed) {
-                    CheerleaderPlayer.this.destroy();
-                }
+    /**
+     * Apply a batch of edits to the player playlist.
+     * private package.
+     *
+     * @param editor edits to apply.
+     */
+    void applyPlaylistEdit(PlaylistEditor editor) {
+        checkState();
+        SoundCloudTrack currentTrack = mPlayerPlaylist.getCurrentTrack();
+        PlaylistChangeSet changes = editor.applyTo(mPlayerPlaylist);
+        if (changes.isEmpty()) {
+            if (editor.hasModeChanges()) {
+                // the next track depends on the play modes.
+                mPlaybackConnection.refreshNextTrack();
             }
+            return;
+        }
 
-            @Override
-            protected void onSeekTo(int milli) {
-                super.onSeekTo(milli);
-                for (CheerleaderPlayerListener listener : mCheerleaderPlayerListeners) {
-                    listener.onPlayerSeekTo(milli);
-                }
-            }
+        if (mPlayerPlaylist.isEmpty()) {
+            // playlist empty after deletion, stop player;
+            mPlaybackConnection.stop(mClientKey);
+        } else if (currentTrack != null && !currentTrack.equals(mPlayerPlaylist.getCurrentTrack())
+                && mState == STATE_PLAYING) {
+            // play next track if removed one was the current and playing
+            play(mPlayerPlaylist.getCurrentTrackIndex());
+        } else {
+            // the track prepared ahead of time may not be the next one anymore.
+            mPlaybackConnection.refreshNextTrack();
+        }
 
-            @Override
-            protected void onBufferingStarted() {
-                super.onBufferingStarted();
-                for (CheerleaderPlayerListener listener : mCheerleaderPlayerListeners) {
-                    listener.onBufferingStarted();
-                }
-            }
+        mPlaylistListeners.dispatch(changes);
+    }
 
-            @Override
-            protected void onBufferingEnded() {
-                super.onBufferingEnded();
-                for (CheerleaderPlayerListener listener : mCheerleaderPlayerListeners) {
-                    listener.onBufferingEnded();
-                }
-            }
+    /**
+     * Called by the {@link PlayerListeners} when the playback state changed.
+     * private package.
+     *
+     * @param state {@link #STATE_STOPPED}, {@link #STATE_PAUSED} or {@link #STATE_PLAYING}
+     */
+    void onStateChanged(int state) {
+        mState = state;
+    }
 
-            @Override
-            protected void onProgressChanged(int milli) {
-                super.onProgressChanged(milli);
-                for (CheerleaderPlayerListener listener : mCheerleaderPlayerListeners) {
-                    listener.onProgressChanged(milli);
-                }
-            }
-        };
-        PlaybackService.registerListener(context, mInternalListener);
+    /**
+     * Called by the {@link PlayerListeners} once the {@link PlaybackService} has been destroyed.
+     * private package.
+     */
+    void onServiceDestroyed() {
+        if (mDestroyDelayed) {
+            destroy();
+        }
     }
 
     /**
-     * Used to check the state of the client instance.
+     * Retrieve the context used at the creation.
+     *
+     * @return context.
      */
-    private void checkState() {
-        if (mIsClosed) {
-            throw new IllegalStateException("Client instance can't be used after being closed.");
+    private Context getContext() {
+        if (mApplicationContext.get() == null) {
+            throw new IllegalStateException("WeakReference on application context null");
         }
+        return mApplicationContext.get();
     }
 
     /**
-     * Define the {@link NotificationConfig}
-     * which will used to configure the playback notification.
+     * Start the playback of a track with the player configuration.
      *
-     * @param config started activity.
+     * @param track track to play.
      */
-    private void setNotificationConfig(NotificationConfig config) {
-        mNotificationManager.setNotificationConfig(config);
+    private void startPlayback(SoundCloudTrack track) {
+        mPlaybackConnection.play(mClientKey, track, mPlaybackOptions);
+    }
+
+    /**
+     * Used to check the state of the client instance.
+     */
+    private void checkState() {
+        if (mIsClosed) {
+            throw new IllegalStateException("Client instance can't be used after being closed.");
+        }
     }
 
     /**
@@ -551,6 +650,7 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
         private Context context;
         private String apiKey;
         private NotificationConfig notificationConfig;
+        private PlaybackOptions playbackOptions;
 
         /**
          * Default constructor.
@@ -559,6 +659,7 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
             notificationConfig = new NotificationConfig();
             notificationConfig.setNotificationIcon(R.drawable.simple_sound_cloud_notification_icon);
             notificationConfig.setNotificationIconBackground(R.drawable.notification_icon_background);
+            playbackOptions = new PlaybackOptions();
         }
 
         /**
@@ -638,6 +739,21 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
             return this;
         }
 
+        /**
+         * Define the options of the playback : gapless playback, stream cache, clock resync
+         * interval and decoding engine.
+         *
+         * @param options playback options, see {@link PlaybackOptions}
+         * @return {@link CheerleaderPlayer.Builder}
+         */
+        public Builder playbackOptions(PlaybackOptions options) {
+            if (options == null) {
+                throw new IllegalArgumentException("Playback options can't be null.");
+            }
+            this.playbackOptions = options;
+            return this;
+        }
+
         /**
          * Build the client.
          *
@@ -657,7 +773,9 @@ public final class CheerleaderPlayer implements Action1<ArrayList<SoundCloudTrac
                 throw new IllegalStateException("Only one api key can be used at the same time.");
             }
 
-            sInstance.setNotificationConfig(notificationConfig);
+            sInstance.mNotificationManager.setNotificationConfig(notificationConfig);
+            sInstance.mPlaybackOptions = new PlaybackOptions(playbackOptions);
+            PlaybackService.setEngineFactory(playbackOptions.getEngineFactory());
 
             return sInstance;
         }
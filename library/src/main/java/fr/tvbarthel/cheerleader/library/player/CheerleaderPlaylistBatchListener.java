@@ -0,0 +1,15 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+/**
+ * Listener used to catch the changes performed on the player playlist as a single change set
+ * per edit rather than one callback per track.
+ */
+public interface CheerleaderPlaylistBatchListener {
+
+    /**
+     * Called once the changes of an edit have been applied to the player playlist.
+     *
+     * @param changes changes applied, never empty.
+     */
+    void onPlaylistChanged(PlaylistChangeSet changes);
+}
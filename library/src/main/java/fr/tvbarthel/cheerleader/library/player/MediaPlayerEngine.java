@@ -0,0 +1,159 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.os.Build;
+import android.os.PowerManager;
+
+import java.io.IOException;
+
+/**
+ * {@link PlaybackEngine} backed by the platform {@link MediaPlayer}.
+ */
+final class MediaPlayerEngine implements PlaybackEngine, MediaPlayer.OnPreparedListener,
+        MediaPlayer.OnCompletionListener, MediaPlayer.OnSeekCompleteListener, MediaPlayer.OnInfoListener,
+        MediaPlayer.OnErrorListener {
+
+    /**
+     * Wrapped media player.
+     */
+    private final MediaPlayer mMediaPlayer;
+
+    /**
+     * Listener notified of the engine events, may be null.
+     */
+    private Listener mListener;
+
+    /**
+     * {@link PlaybackEngine} backed by the platform {@link MediaPlayer}.
+     *
+     * @param context context used to hold a wake lock while playing.
+     */
+    MediaPlayerEngine(Context context) {
+        mMediaPlayer = new MediaPlayer();
+        mMediaPlayer.setWakeMode(context.getApplicationContext(), PowerManager.PARTIAL_WAKE_LOCK);
+        mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        mMediaPlayer.setOnPreparedListener(this);
+        mMediaPlayer.setOnCompletionListener(this);
+        mMediaPlayer.setOnSeekCompleteListener(this);
+        mMediaPlayer.setOnInfoListener(this);
+        mMediaPlayer.setOnErrorListener(this);
+    }
+
+    /**
+     * Factory creating engines backed by the platform {@link MediaPlayer}.
+     *
+     * @param context context used to hold a wake lock while playing.
+     * @return factory.
+     */
+    static PlaybackEngine.Factory factory(Context context) {
+        final Context applicationContext = context.getApplicationContext();
+        return new PlaybackEngine.Factory() {
+            @Override
+            public PlaybackEngine create() {
+                return new MediaPlayerEngine(applicationContext);
+            }
+        };
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void setDataSource(String url) throws IOException {
+        mMediaPlayer.setDataSource(url);
+    }
+
+    @Override
+    public void prepareAsync() {
+        mMediaPlayer.prepareAsync();
+    }
+
+    @Override
+    public void start() {
+        mMediaPlayer.start();
+    }
+
+    @Override
+    public void pause() {
+        mMediaPlayer.pause();
+    }
+
+    @Override
+    public void stop() {
+        mMediaPlayer.stop();
+    }
+
+    @Override
+    public void seekTo(int milli) {
+        mMediaPlayer.seekTo(milli);
+    }
+
+    @Override
+    public void reset() {
+        mMediaPlayer.reset();
+        mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+    }
+
+    @Override
+    public void release() {
+        mListener = null;
+        mMediaPlayer.release();
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return mMediaPlayer.getCurrentPosition();
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        mMediaPlayer.setVolume(volume, volume);
+    }
+
+    @Override
+    public boolean isGaplessSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void setNextEngine(PlaybackEngine next) {
+        mMediaPlayer.setNextMediaPlayer(next == null ? null : ((MediaPlayerEngine) next).mMediaPlayer);
+    }
+
+    @Override
+    public void onPrepared(MediaPlayer mp) {
+        if (mListener != null) {
+            mListener.onPrepared(this);
+        }
+    }
+
+    @Override
+    public void onCompletion(MediaPlayer mp) {
+        if (mListener != null) {
+            mListener.onCompletion(this);
+        }
+    }
+
+    @Override
+    public void onSeekComplete(MediaPlayer mp) {
+        if (mListener != null) {
+            mListener.onSeekComplete(this);
+        }
+    }
+
+    @Override
+    public boolean onInfo(MediaPlayer mp, int what, int extra) {
+        return mListener != null && mListener.onInfo(this, what, extra);
+    }
+
+    @Override
+    public boolean onError(MediaPlayer mp, int what, int extra) {
+        return mListener != null && mListener.onError(this, what, extra);
+    }
+}
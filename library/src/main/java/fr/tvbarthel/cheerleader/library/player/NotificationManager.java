@@ -7,15 +7,10 @@ import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.drawable.Drawable;
 import android.os.Build;
-import android.os.Handler;
 import android.support.v7.app.NotificationCompat;
 import android.widget.RemoteViews;
 
-import com.squareup.picasso.Picasso;
-import com.squareup.picasso.Target;
-
 import fr.tvbarthel.cheerleader.library.R;
 import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
 import fr.tvbarthel.cheerleader.library.helpers.SoundCloudArtworkHelper;
@@ -56,25 +51,15 @@ final class NotificationManager {
      */
     private static final int REQUEST_CODE_CLEAR = 0x00000040;
 
-    /**
-     * Delay before effectively loading the artwork. (in milliseconds).
-     */
-    private static final int LOAD_ARTWORK_DELAY = 1000;
-
     /**
      * Singleton pattern.
      */
     private static NotificationManager sInstance;
 
     /**
-     * Handler running on main thread to perform change on notification ui.
-     */
-    private Handler mMainThreadHandler;
-
-    /**
-     * Target used to load asynchronously track artwork into the notification.
+     * Callback used to load asynchronously track artwork into the notification.
      */
-    private Target mThumbnailArtworkTarget;
+    private ArtworkLoader.Callback mThumbnailArtworkCallback;
 
     /**
      * Id of the track displayed in the notification.
@@ -126,11 +111,6 @@ final class NotificationManager {
      */
     private NotificationConfig mNotificationConfig;
 
-    /**
-     * A {@link Runnable} to load the artwork with some delay.
-     */
-    private Runnable mLoadArtworkRunnable;
-
     /**
      * The size of the bitmap artwork. (in pixels).
      * <p/>
@@ -147,8 +127,6 @@ final class NotificationManager {
 
         mTrackId = -1;
 
-        mMainThreadHandler = new Handler(context.getApplicationContext().getMainLooper());
-
         mNotificationManager = ((android.app.NotificationManager)
                 context.getSystemService(Context.NOTIFICATION_SERVICE));
 
@@ -158,8 +136,8 @@ final class NotificationManager {
         // initialize actions' PendingIntents.
         initializePendingIntent(context);
 
-        // initialize target used to load artwork asynchronously.
-        initializeArtworkTarget();
+        // initialize callback used to load artwork asynchronously.
+        initializeArtworkCallback();
     }
 
     /**
@@ -233,9 +211,11 @@ final class NotificationManager {
         // new track is passed.
         int newTrackId = track.getId();
         if (mTrackId == -1 || mTrackId != newTrackId) {
-            loadArtwork(
-                    service,
-                    SoundCloudArtworkHelper.getArtworkUrl(track, SoundCloudArtworkHelper.XLARGE)
+            // same url as the media session artwork, downloaded and decoded only once.
+            ArtworkLoader.getInstance().load(
+                    SoundCloudArtworkHelper.getArtworkUrl(track, SoundCloudArtworkHelper.XXXLARGE),
+                    mArtworkBitmapSize,
+                    mThumbnailArtworkCallback
             );
             mTrackId = newTrackId;
         }
@@ -281,27 +261,20 @@ final class NotificationManager {
     }
 
     /**
-     * Initialize target used to load artwork asynchronously.
+     * Initialize callback used to load artwork asynchronously.
      */
-    private void initializeArtworkTarget() {
-        mThumbnailArtworkTarget = new Target() {
+    private void initializeArtworkCallback() {
+        mThumbnailArtworkCallback = new ArtworkLoader.Callback() {
             @Override
-            public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom from) {
+            public void onArtworkLoaded(Bitmap artwork) {
                 mNotificationView.setImageViewBitmap(
-                        R.id.simple_sound_cloud_notification_thumbnail, bitmap);
+                        R.id.simple_sound_cloud_notification_thumbnail, artwork);
                 mNotificationExpandedView.setImageViewBitmap(
-                        R.id.simple_sound_cloud_notification_thumbnail, bitmap);
+                        R.id.simple_sound_cloud_notification_thumbnail, artwork);
+                // the remote views keep the bitmap and parcel it again on each notify, it must
+                // never be given back to the loader pool.
                 mNotificationManager.notify(NOTIFICATION_ID, buildNotification());
             }
-
-            @Override
-            public void onBitmapFailed(Drawable errorDrawable) {
-
-            }
-
-            @Override
-            public void onPrepareLoad(Drawable placeHolderDrawable) {
-            }
         };
     }
 
@@ -388,30 +361,4 @@ final class NotificationManager {
         notificationView.setImageViewResource(R.id.simple_sound_cloud_notification_icon,
                 mNotificationConfig.getNotificationIcon());
     }
-
-    /**
-     * Load the track artwork.
-     *
-     * @param context    context used by {@link com.squareup.picasso.Picasso} to load the artwork asynchronously.
-     * @param artworkUrl artwork url of the track.
-     */
-    private void loadArtwork(final Context context, final String artworkUrl) {
-        if (mLoadArtworkRunnable != null) {
-            mMainThreadHandler.removeCallbacks(mLoadArtworkRunnable);
-        }
-
-        mLoadArtworkRunnable = new Runnable() {
-            @Override
-            public void run() {
-                final Picasso picasso = Picasso.with(context);
-                picasso.cancelRequest(mThumbnailArtworkTarget);
-
-                picasso.load(artworkUrl)
-                        .centerCrop()
-                        .resize(mArtworkBitmapSize, mArtworkBitmapSize)
-                        .into(mThumbnailArtworkTarget);
-            }
-        };
-        mMainThreadHandler.postDelayed(mLoadArtworkRunnable, LOAD_ARTWORK_DELAY);
-    }
 }
@@ -0,0 +1,154 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import android.os.SystemClock;
+
+/**
+ * Snapshot of the playback clock.
+ * <p/>
+ * Holds the playback position at a reference time, the playback rate and the player state so
+ * that the current position can be extrapolated at any time, for instance on each frame of a
+ * progress animation, without querying the player.
+ * <p/>
+ * A new snapshot is only published on discontinuities (play, pause, seek, buffering) and at a
+ * low rate to correct the drift, see {@link PlaybackOptions#clockResyncInterval(long)}
+ */
+public final class PlaybackClock {
+
+    /**
+     * No track is being played.
+     */
+    public static final int STATE_STOPPED = 0;
+
+    /**
+     * The position moves forward at the playback rate.
+     */
+    public static final int STATE_PLAYING = 1;
+
+    /**
+     * The playback has been paused by the user.
+     */
+    public static final int STATE_PAUSED = 2;
+
+    /**
+     * The playback is stalled while buffering.
+     */
+    public static final int STATE_BUFFERING = 3;
+
+    /**
+     * Clock of a stopped player.
+     */
+    static final PlaybackClock STOPPED = new PlaybackClock(STATE_STOPPED, 0, 0, 0);
+
+    /**
+     * Player state.
+     */
+    private final int mState;
+
+    /**
+     * Playback position at the reference time, in milli.
+     */
+    private final long mPosition;
+
+    /**
+     * Duration of the current track, in milli.
+     */
+    private final long mDuration;
+
+    /**
+     * Reference time, in {@link SystemClock#elapsedRealtime()} milli.
+     */
+    private final long mReferenceTime;
+
+    /**
+     * Snapshot of the playback clock.
+     *
+     * @param state         player state.
+     * @param position      playback position at the reference time, in milli.
+     * @param duration      duration of the current track, in milli.
+     * @param referenceTime reference time, in {@link SystemClock#elapsedRealtime()} milli.
+     */
+    PlaybackClock(int state, long position, long duration, long referenceTime) {
+        mState = state;
+        mPosition = position;
+        mDuration = duration;
+        mReferenceTime = referenceTime;
+    }
+
+    /**
+     * Player state.
+     *
+     * @return one of STATE_* constants.
+     */
+    public int getState() {
+        return mState;
+    }
+
+    /**
+     * Playback rate, position milli elapsed per real time milli.
+     *
+     * @return 1 while playing, 0 otherwise.
+     */
+    public float getRate() {
+        return mState == STATE_PLAYING ? 1f : 0f;
+    }
+
+    /**
+     * Duration of the current track.
+     *
+     * @return duration in milli.
+     */
+    public long getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * Reference time of the snapshot.
+     *
+     * @return reference time, in {@link SystemClock#elapsedRealtime()} milli.
+     */
+    public long getReferenceTime() {
+        return mReferenceTime;
+    }
+
+    /**
+     * Playback position at the reference time.
+     *
+     * @return position in milli.
+     */
+    public long getReferencePosition() {
+        return mPosition;
+    }
+
+    /**
+     * Extrapolate the current playback position.
+     *
+     * @return position in milli.
+     */
+    public long getPosition() {
+        return getPosition(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Extrapolate the playback position at a given time.
+     *
+     * @param elapsedRealtime time in {@link SystemClock#elapsedRealtime()} milli.
+     * @return position in milli, bounded by the track duration.
+     */
+    public long getPosition(long elapsedRealtime) {
+        if (mState != STATE_PLAYING) {
+            return mPosition;
+        }
+        long position = mPosition + Math.max(0, elapsedRealtime - mReferenceTime);
+        return mDuration > 0 ? Math.min(position, mDuration) : position;
+    }
+
+    @Override
+    public String toString() {
+        return "PlaybackClock{"
+                + "state=" + mState
+                + ", position=" + mPosition
+                + ", duration=" + mDuration
+                + ", referenceTime=" + mReferenceTime
+                + '}';
+    }
+}
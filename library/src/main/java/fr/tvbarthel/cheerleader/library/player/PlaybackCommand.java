@@ -0,0 +1,284 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import android.os.SystemClock;
+
+import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
+
+/**
+ * Player command sent to the {@link PlaybackService} through its local binder.
+ * <p/>
+ * Media session and notification actions are turned into commands as well, so that every
+ * command goes through the same {@link PlaybackCommandQueue}.
+ * <p/>
+ * Arguments are passed by reference, no {@link android.os.Parcel} is involved.
+ */
+final class PlaybackCommand {
+
+    /**
+     * what id of the command, one of the PlaybackService WHAT_* constants.
+     */
+    private final int mWhat;
+
+    /**
+     * SoundCloud api client id.
+     */
+    private final String mClientId;
+
+    /**
+     * Track to play, null for other commands.
+     */
+    private final SoundCloudTrack mTrack;
+
+    /**
+     * True to enable gapless playback.
+     */
+    private final boolean mGapless;
+
+    /**
+     * Maximum size of the stream disk cache in bytes, 0 to disable it.
+     */
+    private final long mStreamCacheSize;
+
+    /**
+     * Interval between two resyncs of the playback clock in milli.
+     */
+    private final long mClockResyncInterval;
+
+    /**
+     * Integer argument : position to seek to in milli, or number of tracks to skip.
+     */
+    private final int mArgument;
+
+    /**
+     * {@link SystemClock#elapsedRealtime()} at which the command has been issued.
+     */
+    private final long mIssueTime;
+
+    /**
+     * Player command sent to the {@link PlaybackService} through its local binder.
+     *
+     * @param what                what id of the command.
+     * @param clientId            SoundCloud api client id.
+     * @param track               track to play, null for other commands.
+     * @param gapless             true to enable gapless playback.
+     * @param streamCacheSize     maximum size of the stream disk cache in bytes.
+     * @param clockResyncInterval interval between two resyncs of the playback clock in milli.
+     * @param argument            position to seek to in milli, or number of tracks to skip.
+     */
+    private PlaybackCommand(int what, String clientId, SoundCloudTrack track, boolean gapless,
+                            long streamCacheSize, long clockResyncInterval, int argument) {
+        mWhat = what;
+        mClientId = clientId;
+        mTrack = track;
+        mGapless = gapless;
+        mStreamCacheSize = streamCacheSize;
+        mClockResyncInterval = clockResyncInterval;
+        mArgument = argument;
+        mIssueTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Command used to play a track.
+     *
+     * @param clientId            SoundCloud api client id.
+     * @param track               the track which will be played.
+     * @param gapless             true to enable gapless playback.
+     * @param streamCacheSize     maximum size of the stream disk cache in bytes, 0 to disable it.
+     * @param clockResyncInterval interval between two resyncs of the playback clock in milli.
+     * @return command.
+     */
+    static PlaybackCommand play(String clientId, SoundCloudTrack track, boolean gapless,
+                                long streamCacheSize, long clockResyncInterval) {
+        return new PlaybackCommand(PlaybackService.WHAT_PLAY, clientId, track, gapless,
+                streamCacheSize, clockResyncInterval, 0);
+    }
+
+    /**
+     * Command used to pause the player.
+     *
+     * @param clientId SoundCloud api client id.
+     * @return command.
+     */
+    static PlaybackCommand pause(String clientId) {
+        return new PlaybackCommand(PlaybackService.WHAT_PAUSE_PLAYER, clientId, null, false, 0, 0, 0);
+    }
+
+    /**
+     * Command used to resume the player.
+     *
+     * @param clientId SoundCloud api client id.
+     * @return command.
+     */
+    static PlaybackCommand resume(String clientId) {
+        return new PlaybackCommand(PlaybackService.WHAT_RESUME_PLAYER, clientId, null, false, 0, 0, 0);
+    }
+
+    /**
+     * Command used to stop the player.
+     *
+     * @param clientId SoundCloud api client id.
+     * @return command.
+     */
+    static PlaybackCommand stop(String clientId) {
+        return new PlaybackCommand(PlaybackService.WHAT_STOP_PLAYER, clientId, null, false, 0, 0, 0);
+    }
+
+    /**
+     * Command used to seek to a position of the current track.
+     *
+     * @param clientId SoundCloud api client id.
+     * @param milli    time in milli of the position.
+     * @return command.
+     */
+    static PlaybackCommand seekTo(String clientId, int milli) {
+        return new PlaybackCommand(PlaybackService.WHAT_SEEK_TO, clientId, null, false, 0, 0, milli);
+    }
+
+    /**
+     * Command used to warm a standby engine with a track which is about to be played.
+     *
+     * @param clientId SoundCloud api client id.
+     * @param track    track about to be played, null to drop the current standby track.
+     * @return command.
+     */
+    static PlaybackCommand hint(String clientId, SoundCloudTrack track) {
+        return new PlaybackCommand(PlaybackService.WHAT_HINT, clientId, track, false, 0, 0, 0);
+    }
+
+    /**
+     * Command used to prepare the next track again once the playlist has changed.
+     *
+     * @return command.
+     */
+    static PlaybackCommand refreshNext() {
+        return new PlaybackCommand(PlaybackService.WHAT_REFRESH_NEXT_TRACK, null, null, false, 0, 0, 0);
+    }
+
+    /**
+     * Command used to skip to the next track.
+     *
+     * @return command.
+     */
+    static PlaybackCommand next() {
+        return skip(PlaybackService.WHAT_NEXT_TRACK, 1);
+    }
+
+    /**
+     * Command used to skip to the previous track.
+     *
+     * @return command.
+     */
+    static PlaybackCommand previous() {
+        return skip(PlaybackService.WHAT_PREVIOUS_TRACK, 1);
+    }
+
+    /**
+     * Command used to skip several tracks at once.
+     *
+     * @param what  {@link PlaybackService#WHAT_NEXT_TRACK} or {@link PlaybackService#WHAT_PREVIOUS_TRACK}.
+     * @param count number of tracks to skip.
+     * @return command.
+     */
+    static PlaybackCommand skip(int what, int count) {
+        return new PlaybackCommand(what, null, null, false, 0, 0, count);
+    }
+
+    /**
+     * Command used to pause or resume the player, according to its state once executed.
+     *
+     * @return command.
+     */
+    static PlaybackCommand toggle() {
+        return new PlaybackCommand(PlaybackService.WHAT_TOGGLE_PLAYBACK, null, null, false, 0, 0, 0);
+    }
+
+    /**
+     * Command used to clear the player and stop the service.
+     *
+     * @return command.
+     */
+    static PlaybackCommand clear() {
+        return new PlaybackCommand(PlaybackService.WHAT_CLEAR_PLAYER, null, null, false, 0, 0, 0);
+    }
+
+    /**
+     * what id of the command.
+     *
+     * @return what id, one of the PlaybackService WHAT_* constants.
+     */
+    int getWhat() {
+        return mWhat;
+    }
+
+    /**
+     * SoundCloud api client id.
+     *
+     * @return client id.
+     */
+    String getClientId() {
+        return mClientId;
+    }
+
+    /**
+     * Track to play.
+     *
+     * @return track, null if not a play command.
+     */
+    SoundCloudTrack getTrack() {
+        return mTrack;
+    }
+
+    /**
+     * Used to know if gapless playback should be enabled.
+     *
+     * @return true to enable gapless playback.
+     */
+    boolean isGapless() {
+        return mGapless;
+    }
+
+    /**
+     * Maximum size of the stream disk cache.
+     *
+     * @return size in bytes, 0 to disable the cache.
+     */
+    long getStreamCacheSize() {
+        return mStreamCacheSize;
+    }
+
+    /**
+     * Interval between two resyncs of the playback clock.
+     *
+     * @return interval in milli.
+     */
+    long getClockResyncInterval() {
+        return mClockResyncInterval;
+    }
+
+    /**
+     * Position to seek to.
+     *
+     * @return position in milli.
+     */
+    int getMilli() {
+        return mArgument;
+    }
+
+    /**
+     * Number of tracks to skip.
+     *
+     * @return number of tracks, only meaningful for skip commands.
+     */
+    int getCount() {
+        return mArgument;
+    }
+
+    /**
+     * Time at which the command has been issued, used to measure the latencies.
+     *
+     * @return {@link SystemClock#elapsedRealtime()} in milli.
+     */
+    long getIssueTime() {
+        return mIssueTime;
+    }
+}
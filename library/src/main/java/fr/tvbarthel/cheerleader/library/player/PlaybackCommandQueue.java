@@ -0,0 +1,83 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import java.util.ArrayDeque;
+
+/**
+ * Queue of the commands waiting to be executed by the {@link PlaybackService}.
+ * <p/>
+ * A command is merged with the last queued one when they are of the same kind : the last seek or
+ * play wins, consecutive skips add up and two toggles cancel each other. Commands of different
+ * kinds keep their order, nothing else is dropped.
+ * <p/>
+ * Thread safe, commands are queued from the main thread and executed by the player thread.
+ */
+final class PlaybackCommandQueue {
+
+    /**
+     * Queued commands, at most one per kind in a row.
+     */
+    private final ArrayDeque<PlaybackCommand> mCommands;
+
+    /**
+     * Queue of the commands waiting to be executed by the {@link PlaybackService}.
+     */
+    PlaybackCommandQueue() {
+        mCommands = new ArrayDeque<>();
+    }
+
+    /**
+     * Queue a command, merging it with the last queued one if they are of the same kind.
+     * <p/>
+     * A merge never changes the kind of the last queued command.
+     *
+     * @param command command to queue.
+     */
+    synchronized void offer(PlaybackCommand command) {
+        PlaybackCommand last = mCommands.peekLast();
+        if (last == null || last.getWhat() != command.getWhat()) {
+            mCommands.addLast(command);
+            return;
+        }
+        mCommands.pollLast();
+        switch (command.getWhat()) {
+            case PlaybackService.WHAT_NEXT_TRACK:
+            case PlaybackService.WHAT_PREVIOUS_TRACK:
+                mCommands.addLast(PlaybackCommand.skip(command.getWhat(), last.getCount() + command.getCount()));
+                break;
+            case PlaybackService.WHAT_TOGGLE_PLAYBACK:
+                // toggled twice, nothing to do.
+                break;
+            default:
+                // same command with newer arguments, only the last one matters.
+                mCommands.addLast(command);
+                break;
+        }
+    }
+
+    /**
+     * Retrieve the next command without removing it.
+     *
+     * @return next command or null if the queue is empty.
+     */
+    synchronized PlaybackCommand peek() {
+        return mCommands.peekFirst();
+    }
+
+    /**
+     * Retrieve and remove the next command.
+     *
+     * @return next command or null if the queue is empty.
+     */
+    synchronized PlaybackCommand poll() {
+        return mCommands.pollFirst();
+    }
+
+    /**
+     * Used to know if commands are waiting to be executed.
+     *
+     * @return true if the queue is empty.
+     */
+    synchronized boolean isEmpty() {
+        return mCommands.isEmpty();
+    }
+}
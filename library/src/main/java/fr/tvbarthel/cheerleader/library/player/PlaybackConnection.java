@@ -0,0 +1,209 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.IBinder;
+
+import java.util.ArrayList;
+
+import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
+
+/**
+ * In-process command channel to the {@link PlaybackService}.
+ * <p/>
+ * Commands are handed to the service through its local binder, without building any
+ * {@link Intent} nor parceling the tracks. The binding doesn't keep the service alive : when the
+ * service isn't running, it is started once and the commands are kept until it is connected.
+ * <p/>
+ * Must be used from the main thread.
+ */
+final class PlaybackConnection implements ServiceConnection {
+
+    /**
+     * Context used to start and bind the service.
+     */
+    private final Context mContext;
+
+    /**
+     * Binder of the running service, null when not connected.
+     */
+    private PlaybackService.PlaybackBinder mBinder;
+
+    /**
+     * Commands waiting for the service to be connected.
+     */
+    private final ArrayList<PlaybackCommand> mPendingCommands;
+
+    /**
+     * Used to know if the service has been started and isn't connected yet.
+     */
+    private boolean mIsStarting;
+
+    /**
+     * Used to know if the connection has been released.
+     */
+    private boolean mIsReleased;
+
+    /**
+     * In-process command channel to the {@link PlaybackService}.
+     *
+     * @param context application context used to start and bind the service.
+     */
+    PlaybackConnection(Context context) {
+        mContext = context;
+        mPendingCommands = new ArrayList<>();
+        // no BIND_AUTO_CREATE : connected whenever the service runs, without keeping it alive.
+        mContext.bindService(new Intent(mContext, PlaybackService.class), this, 0);
+    }
+
+    /**
+     * Play a track.
+     *
+     * @param clientId SoundCloud api client id.
+     * @param track    the track which will be played.
+     * @param options  playback options of the player.
+     */
+    void play(String clientId, SoundCloudTrack track, PlaybackOptions options) {
+        execute(PlaybackCommand.play(clientId, track, options.isGapless(), options.getStreamCacheSize(),
+                options.getClockResyncInterval()));
+    }
+
+    /**
+     * Pause the player.
+     *
+     * @param clientId SoundCloud api client id.
+     */
+    void pause(String clientId) {
+        execute(PlaybackCommand.pause(clientId));
+    }
+
+    /**
+     * Resume the player.
+     *
+     * @param clientId SoundCloud api client id.
+     */
+    void resume(String clientId) {
+        execute(PlaybackCommand.resume(clientId));
+    }
+
+    /**
+     * Stop the player.
+     *
+     * @param clientId SoundCloud api client id.
+     */
+    void stop(String clientId) {
+        execute(PlaybackCommand.stop(clientId));
+    }
+
+    /**
+     * Seek to a position of the current track.
+     *
+     * @param clientId SoundCloud api client id.
+     * @param milli    time in milli of the position.
+     */
+    void seekTo(String clientId, int milli) {
+        execute(PlaybackCommand.seekTo(clientId, milli));
+    }
+
+    /**
+     * Warm a standby engine with a track which is about to be played.
+     * <p/>
+     * Dropped while the service isn't connected : a hint never starts the service.
+     *
+     * @param clientId SoundCloud api client id.
+     * @param track    track about to be played, null to drop the current standby track.
+     */
+    void hint(String clientId, SoundCloudTrack track) {
+        executeIfConnected(PlaybackCommand.hint(clientId, track));
+    }
+
+    /**
+     * Prepare the next track again once the playlist, the shuffle or the repeat mode has changed.
+     * <p/>
+     * Dropped while the service isn't connected : nothing is prepared ahead of time.
+     */
+    void refreshNextTrack() {
+        executeIfConnected(PlaybackCommand.refreshNext());
+    }
+
+    /**
+     * Unbind from the service, pending commands are dropped.
+     */
+    void release() {
+        if (mIsReleased) {
+            return;
+        }
+        mIsReleased = true;
+        mPendingCommands.clear();
+        mBinder = null;
+        mContext.unbindService(this);
+    }
+
+    @Override
+    public void onServiceConnected(ComponentName name, IBinder service) {
+        mIsStarting = false;
+        mBinder = (PlaybackService.PlaybackBinder) service;
+        ArrayList<PlaybackCommand> commands = new ArrayList<>(mPendingCommands);
+        mPendingCommands.clear();
+        for (PlaybackCommand command : commands) {
+            execute(command);
+        }
+    }
+
+    @Override
+    public void onServiceDisconnected(ComponentName name) {
+        // service destroyed, it will be started again by the next command.
+        mBinder = null;
+        // the start requested while the service was stopping may have been consumed before it
+        // stopped : start it again rather than keeping the pending commands forever.
+        mIsStarting = false;
+        if (!mPendingCommands.isEmpty()) {
+            startService();
+        }
+    }
+
+    /**
+     * Hand a command to the service, starting it if needed.
+     *
+     * @param command command to execute.
+     */
+    private void execute(PlaybackCommand command) {
+        if (mIsReleased) {
+            throw new IllegalStateException("Connection can't be used once released.");
+        }
+        if (mBinder != null && mBinder.execute(command)) {
+            return;
+        }
+        // service not running or being stopped, start it again.
+        mBinder = null;
+        mPendingCommands.add(command);
+        if (!mIsStarting) {
+            startService();
+        }
+    }
+
+    /**
+     * Start the service, pending commands are executed once connected.
+     */
+    private void startService() {
+        mIsStarting = true;
+        mContext.startService(new Intent(mContext, PlaybackService.class));
+    }
+
+    /**
+     * Hand a command to the service only if it is running, the command is dropped otherwise.
+     *
+     * @param command command to execute.
+     */
+    private void executeIfConnected(PlaybackCommand command) {
+        if (mIsReleased) {
+            throw new IllegalStateException("Connection can't be used once released.");
+        }
+        if (mBinder != null && !mBinder.execute(command)) {
+            // service being stopped, nothing to warm nor to prepare.
+            mBinder = null;
+        }
+    }
+}
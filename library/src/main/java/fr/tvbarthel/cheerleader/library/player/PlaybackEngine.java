@@ -0,0 +1,176 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import java.io.IOException;
+
+/**
+ * Decoder driven by the {@link PlaybackService}.
+ * <p/>
+ * Follows the {@link android.media.MediaPlayer} state machine : reset, set the data source,
+ * prepare asynchronously then start, pause, seek and stop. Events are reported to the
+ * {@link PlaybackEngine.Listener} on the thread which created the engine.
+ * <p/>
+ * See also {@link SimulatedPlaybackEngine} to exercise the playback logic without any device,
+ * outside of the {@link PlaybackService}.
+ */
+public interface PlaybackEngine {
+
+    /**
+     * Info reported when the playback is stalled to buffer more data.
+     */
+    int INFO_BUFFERING_START = 701;
+
+    /**
+     * Info reported when the playback resumes once enough data has been buffered.
+     */
+    int INFO_BUFFERING_END = 702;
+
+    /**
+     * Error reported when the underlying decoder died, the engine must be reset.
+     */
+    int ERROR_SERVER_DIED = 100;
+
+    /**
+     * Error reported for any other failure.
+     */
+    int ERROR_UNKNOWN = 1;
+
+    /**
+     * Set the listener notified of the engine events.
+     *
+     * @param listener listener, null to stop being notified.
+     */
+    void setListener(Listener listener);
+
+    /**
+     * Set the url of the stream to play, the engine must be idle.
+     *
+     * @param url stream url.
+     * @throws IOException if the stream can't be opened.
+     */
+    void setDataSource(String url) throws IOException;
+
+    /**
+     * Prepare the stream, {@link Listener#onPrepared(PlaybackEngine)} is called once done.
+     */
+    void prepareAsync();
+
+    /**
+     * Start or resume the playback of a prepared stream.
+     */
+    void start();
+
+    /**
+     * Pause the playback.
+     */
+    void pause();
+
+    /**
+     * Stop the playback, the engine must be reset to be used again.
+     */
+    void stop();
+
+    /**
+     * Seek to a position, {@link Listener#onSeekComplete(PlaybackEngine)} is called once done.
+     *
+     * @param milli position in milli.
+     */
+    void seekTo(int milli);
+
+    /**
+     * Go back to the idle state, dropping the current stream.
+     */
+    void reset();
+
+    /**
+     * Release the resources held by the engine, it can't be used anymore.
+     */
+    void release();
+
+    /**
+     * Current playback position.
+     *
+     * @return position in milli.
+     */
+    int getCurrentPosition();
+
+    /**
+     * Set the output volume.
+     *
+     * @param volume volume between 0 and 1.
+     */
+    void setVolume(float volume);
+
+    /**
+     * Used to know if {@link #setNextEngine(PlaybackEngine)} is supported.
+     *
+     * @return true if the engine can chain a prepared engine for gapless playback.
+     */
+    boolean isGaplessSupported();
+
+    /**
+     * Set the engine started as soon as the current stream completes.
+     *
+     * @param next prepared engine created by the same factory, null to clear it.
+     */
+    void setNextEngine(PlaybackEngine next);
+
+    /**
+     * Listener notified of the engine events.
+     */
+    interface Listener {
+
+        /**
+         * Called once the stream has been prepared.
+         *
+         * @param engine prepared engine.
+         */
+        void onPrepared(PlaybackEngine engine);
+
+        /**
+         * Called once the end of the stream has been reached.
+         *
+         * @param engine completed engine.
+         */
+        void onCompletion(PlaybackEngine engine);
+
+        /**
+         * Called once a seek has been performed.
+         *
+         * @param engine engine which performed the seek.
+         */
+        void onSeekComplete(PlaybackEngine engine);
+
+        /**
+         * Called to report an information such as {@link #INFO_BUFFERING_START}.
+         *
+         * @param engine engine reporting the information.
+         * @param what   type of information.
+         * @param extra  extra code, specific to the engine.
+         * @return true if the information has been handled.
+         */
+        boolean onInfo(PlaybackEngine engine, int what, int extra);
+
+        /**
+         * Called when an error occurred, such as {@link #ERROR_SERVER_DIED}.
+         *
+         * @param engine engine in error.
+         * @param what   type of error.
+         * @param extra  extra code, specific to the engine.
+         * @return true if the error has been handled.
+         */
+        boolean onError(PlaybackEngine engine, int what, int extra);
+    }
+
+    /**
+     * Factory used by the {@link PlaybackService} to create its engines.
+     */
+    interface Factory {
+
+        /**
+         * Create a new idle engine.
+         *
+         * @return engine.
+         */
+        PlaybackEngine create();
+    }
+}
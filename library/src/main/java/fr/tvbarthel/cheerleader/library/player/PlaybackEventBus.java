@@ -0,0 +1,183 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
+
+/**
+ * In-process bus used to dispatch the {@link PlaybackService} events to the
+ * {@link PlaybackListener}.
+ * <p/>
+ * Events are posted from any thread and delivered on the main thread, in order, as broadcasts
+ * sent through {@link android.support.v4.content.LocalBroadcastManager} would be. Events are
+ * carried by pooled {@link Message} and tracks are passed by reference, which keeps the playback
+ * free of allocation.
+ */
+final class PlaybackEventBus {
+
+    /**
+     * Event posted when the player started a track.
+     */
+    static final int EVENT_TRACK_PLAYED = 0;
+
+    /**
+     * Event posted when the player paused.
+     */
+    static final int EVENT_PLAYER_PAUSED = 1;
+
+    /**
+     * Event posted when the player completed a seek action.
+     */
+    static final int EVENT_SEEK_COMPLETE = 2;
+
+    /**
+     * Event posted when the player has been destroyed.
+     */
+    static final int EVENT_PLAYER_DESTROYED = 3;
+
+    /**
+     * Event posted when the player paused due to buffering.
+     */
+    static final int EVENT_BUFFERING_STARTED = 4;
+
+    /**
+     * Event posted when the player resumed due to buffering end.
+     */
+    static final int EVENT_BUFFERING_ENDED = 5;
+
+    /**
+     * Event posted when the progress changed.
+     */
+    static final int EVENT_PROGRESS_CHANGED = 6;
+
+    /**
+     * Event posted when a new {@link PlaybackClock} snapshot is published.
+     */
+    static final int EVENT_CLOCK_CHANGED = 7;
+
+    /**
+     * Singleton pattern.
+     */
+    private static PlaybackEventBus sInstance;
+
+    /**
+     * Registered listeners, copied on registration so that a listener can unregister itself
+     * while an event is being dispatched.
+     */
+    private volatile PlaybackListener[] mListeners;
+
+    /**
+     * Handler used to deliver the events on the main thread.
+     */
+    private final Handler mMainThreadHandler;
+
+    /**
+     * Singleton.
+     */
+    private PlaybackEventBus() {
+        mListeners = new PlaybackListener[0];
+        mMainThreadHandler = new Handler(Looper.getMainLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                dispatch(msg.what, msg.obj, msg.arg1);
+            }
+        };
+    }
+
+    /**
+     * Retrieve the instance of the bus.
+     *
+     * @return instance.
+     */
+    static synchronized PlaybackEventBus getInstance() {
+        if (sInstance == null) {
+            sInstance = new PlaybackEventBus();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Register a listener to catch the player events.
+     *
+     * @param listener listener to register.
+     */
+    synchronized void register(PlaybackListener listener) {
+        if (Arrays.asList(mListeners).contains(listener)) {
+            return;
+        }
+        PlaybackListener[] listeners = Arrays.copyOf(mListeners, mListeners.length + 1);
+        listeners[mListeners.length] = listener;
+        mListeners = listeners;
+    }
+
+    /**
+     * Unregister a registered listener.
+     *
+     * @param listener listener to unregister.
+     */
+    synchronized void unregister(PlaybackListener listener) {
+        ArrayList<PlaybackListener> listeners = new ArrayList<>(Arrays.asList(mListeners));
+        if (listeners.remove(listener)) {
+            mListeners = listeners.toArray(new PlaybackListener[listeners.size()]);
+        }
+    }
+
+    /**
+     * Post an event to be delivered on the main thread.
+     *
+     * @param event   one of the EVENT_* constants.
+     * @param payload track or clock of the event, can be null.
+     * @param milli   time of the event in milli.
+     */
+    void post(int event, Object payload, int milli) {
+        if (mListeners.length == 0) {
+            return;
+        }
+        mMainThreadHandler.obtainMessage(event, milli, 0, payload).sendToTarget();
+    }
+
+    /**
+     * Deliver an event to the registered listeners.
+     *
+     * @param event   one of the EVENT_* constants.
+     * @param payload track or clock of the event, can be null.
+     * @param milli   time of the event in milli.
+     */
+    private void dispatch(int event, Object payload, int milli) {
+        for (PlaybackListener listener : mListeners) {
+            switch (event) {
+                case EVENT_TRACK_PLAYED:
+                    listener.onPlay((SoundCloudTrack) payload);
+                    break;
+                case EVENT_PLAYER_PAUSED:
+                    listener.onPause();
+                    break;
+                case EVENT_SEEK_COMPLETE:
+                    listener.onSeekTo(milli);
+                    break;
+                case EVENT_PLAYER_DESTROYED:
+                    listener.onPlayerDestroyed();
+                    break;
+                case EVENT_BUFFERING_STARTED:
+                    listener.onBufferingStarted();
+                    break;
+                case EVENT_BUFFERING_ENDED:
+                    listener.onBufferingEnded();
+                    break;
+                case EVENT_PROGRESS_CHANGED:
+                    listener.onProgressChanged(milli);
+                    break;
+                case EVENT_CLOCK_CHANGED:
+                    listener.onClockChanged((PlaybackClock) payload);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown event : " + event);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations, in milli.
+ * <p/>
+ * Values are counted in power of two buckets : recording is constant time without allocation and
+ * percentiles are approximated by the upper bound of their bucket, never above the max.
+ */
+public final class PlaybackHistogram {
+
+    /**
+     * Number of buckets, the last one holds every duration above 2^30 milli.
+     */
+    private static final int BUCKET_COUNT = 32;
+
+    /**
+     * Number of recorded values per bucket, bucket i holding the durations in [2^(i-1), 2^i).
+     */
+    private final long[] mBuckets;
+
+    /**
+     * Number of recorded values.
+     */
+    private long mCount;
+
+    /**
+     * Sum of the recorded values.
+     */
+    private long mSum;
+
+    /**
+     * Greatest recorded value.
+     */
+    private long mMax;
+
+    /**
+     * Histogram of durations, in milli.
+     */
+    PlaybackHistogram() {
+        mBuckets = new long[BUCKET_COUNT];
+    }
+
+    /**
+     * Copy of a histogram.
+     *
+     * @param histogram histogram to copy.
+     */
+    PlaybackHistogram(PlaybackHistogram histogram) {
+        mBuckets = Arrays.copyOf(histogram.mBuckets, BUCKET_COUNT);
+        mCount = histogram.mCount;
+        mSum = histogram.mSum;
+        mMax = histogram.mMax;
+    }
+
+    /**
+     * Record a duration.
+     *
+     * @param milli duration in milli, negative durations are recorded as 0.
+     */
+    void record(long milli) {
+        long value = Math.max(0, milli);
+        int bucket = Math.min(BUCKET_COUNT - 1, Long.SIZE - Long.numberOfLeadingZeros(value));
+        mBuckets[bucket]++;
+        mCount++;
+        mSum += value;
+        mMax = Math.max(mMax, value);
+    }
+
+    /**
+     * Number of recorded durations.
+     *
+     * @return count.
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Sum of the recorded durations.
+     *
+     * @return sum in milli.
+     */
+    public long getSum() {
+        return mSum;
+    }
+
+    /**
+     * Greatest recorded duration.
+     *
+     * @return max in milli, 0 if empty.
+     */
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Mean of the recorded durations.
+     *
+     * @return mean in milli, 0 if empty.
+     */
+    public long getMean() {
+        return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    /**
+     * Approximated percentile of the recorded durations.
+     *
+     * @param percentile percentile between 0 and 100, 50 for the median.
+     * @return upper bound of the bucket holding the percentile in milli, 0 if empty.
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100 : " + percentile);
+        }
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(mCount * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets[i];
+            if (seen >= rank) {
+                // the last bucket isn't bounded.
+                return i == BUCKET_COUNT - 1 ? mMax : Math.min(mMax, (1L << i) - 1);
+            }
+        }
+        return mMax;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + mCount + " mean=" + getMean() + " p50=" + getPercentile(50)
+                + " p95=" + getPercentile(95) + " max=" + mMax;
+    }
+}
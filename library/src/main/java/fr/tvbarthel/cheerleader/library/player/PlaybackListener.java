@@ -10,6 +10,9 @@ import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
 /**
  * Listener used to catch event send by the
  * {@link fr.tvbarthel.cheerleader.library.player.PlaybackService}
+ * <p/>
+ * Registered on the {@link PlaybackEventBus}, or as a broadcast receiver through
+ * {@link PlaybackService#registerListener(Context, PlaybackListener)} for compatibility.
  */
 class PlaybackListener extends BroadcastReceiver {
 
@@ -151,4 +154,15 @@ class PlaybackListener extends BroadcastReceiver {
     protected void onProgressChanged(int milli) {
 
     }
+
+    /**
+     * Called when a new playback clock snapshot has been published.
+     * <p/>
+     * Only dispatched through the {@link PlaybackEventBus}.
+     *
+     * @param clock playback clock.
+     */
+    protected void onClockChanged(PlaybackClock clock) {
+
+    }
 }
@@ -0,0 +1,210 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
+
+/**
+ * Snapshot of the playback metrics, either of a single track or of a whole session.
+ * <p/>
+ * A session starts each time the playback service is created.
+ * See also {@link CheerleaderPlayer#getTrackMetrics()} and {@link CheerleaderPlayer#getSessionMetrics()}
+ */
+public final class PlaybackMetrics {
+
+    /**
+     * Track measured, null for a session.
+     */
+    private final SoundCloudTrack mTrack;
+
+    /**
+     * Latencies between a play command and the end of the preparation of its track.
+     */
+    private final PlaybackHistogram mPrepareLatency;
+
+    /**
+     * Durations of the stalls while playing.
+     */
+    private final PlaybackHistogram mStallDuration;
+
+    /**
+     * Latencies between a seek command and the resumption of the playback.
+     */
+    private final PlaybackHistogram mSeekLatency;
+
+    /**
+     * Time spent playing, in milli.
+     */
+    private long mPlayedTime;
+
+    /**
+     * Number of tracks started.
+     */
+    private int mTrackCount;
+
+    /**
+     * Empty metrics.
+     *
+     * @param track track measured, null for a session.
+     */
+    PlaybackMetrics(SoundCloudTrack track) {
+        this(track, new PlaybackHistogram(), new PlaybackHistogram(), new PlaybackHistogram());
+    }
+
+    /**
+     * Metrics made of existing histograms.
+     *
+     * @param track          track measured, null for a session.
+     * @param prepareLatency latencies between a play command and the end of the preparation.
+     * @param stallDuration  durations of the stalls.
+     * @param seekLatency    latencies between a seek command and the resumption of the playback.
+     */
+    private PlaybackMetrics(SoundCloudTrack track, PlaybackHistogram prepareLatency,
+                            PlaybackHistogram stallDuration, PlaybackHistogram seekLatency) {
+        mTrack = track;
+        mPrepareLatency = prepareLatency;
+        mStallDuration = stallDuration;
+        mSeekLatency = seekLatency;
+    }
+
+    /**
+     * Copy the metrics.
+     *
+     * @return copy.
+     */
+    PlaybackMetrics copy() {
+        PlaybackMetrics copy = new PlaybackMetrics(mTrack, new PlaybackHistogram(mPrepareLatency),
+                new PlaybackHistogram(mStallDuration), new PlaybackHistogram(mSeekLatency));
+        copy.mPlayedTime = mPlayedTime;
+        copy.mTrackCount = mTrackCount;
+        return copy;
+    }
+
+    /**
+     * Count a started track.
+     */
+    void onTrackStarted() {
+        mTrackCount++;
+    }
+
+    /**
+     * Record a latency between a play command and the end of the preparation.
+     *
+     * @param milli latency in milli.
+     */
+    void recordPrepareLatency(long milli) {
+        mPrepareLatency.record(milli);
+    }
+
+    /**
+     * Record a stall.
+     *
+     * @param milli stall duration in milli.
+     */
+    void recordStall(long milli) {
+        mStallDuration.record(milli);
+    }
+
+    /**
+     * Record a latency between a seek command and the resumption of the playback.
+     *
+     * @param milli latency in milli.
+     */
+    void recordSeekLatency(long milli) {
+        mSeekLatency.record(milli);
+    }
+
+    /**
+     * Record time spent playing.
+     *
+     * @param milli played time in milli.
+     */
+    void recordPlayedTime(long milli) {
+        mPlayedTime += Math.max(0, milli);
+    }
+
+    /**
+     * Track measured.
+     *
+     * @return track, null for the metrics of a session.
+     */
+    public SoundCloudTrack getTrack() {
+        return mTrack;
+    }
+
+    /**
+     * Latencies between a play command, from the player or the notification, and the end of the
+     * preparation of the track, which is when the audio starts.
+     *
+     * @return histogram of the latencies.
+     */
+    public PlaybackHistogram getPrepareLatency() {
+        return mPrepareLatency;
+    }
+
+    /**
+     * Durations of the stalls which interrupted the playback to buffer.
+     * <p/>
+     * The initial buffering and the seeks aren't considered as stalls.
+     *
+     * @return histogram of the stall durations.
+     */
+    public PlaybackHistogram getStallDuration() {
+        return mStallDuration;
+    }
+
+    /**
+     * Number of stalls which interrupted the playback to buffer.
+     *
+     * @return stall count.
+     */
+    public long getStallCount() {
+        return mStallDuration.getCount();
+    }
+
+    /**
+     * Latencies between a seek command and the resumption of the playback.
+     *
+     * @return histogram of the latencies.
+     */
+    public PlaybackHistogram getSeekLatency() {
+        return mSeekLatency;
+    }
+
+    /**
+     * Time spent playing, stalls and pauses excluded.
+     *
+     * @return played time in milli.
+     */
+    public long getPlayedTime() {
+        return mPlayedTime;
+    }
+
+    /**
+     * Share of the playback time spent stalled : stalled time / (played time + stalled time).
+     *
+     * @return ratio between 0 and 1, 0 if nothing has been played.
+     */
+    public float getRebufferRatio() {
+        long stalledTime = mStallDuration.getSum();
+        long total = mPlayedTime + stalledTime;
+        return total == 0 ? 0f : (float) stalledTime / total;
+    }
+
+    /**
+     * Number of tracks started.
+     *
+     * @return 1 for the metrics of a track, number of tracks started during a session.
+     */
+    public int getTrackCount() {
+        return mTrackCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PlaybackMetrics{tracks=" + mTrackCount
+                + ", prepareLatency=[" + mPrepareLatency
+                + "], stalls=[" + mStallDuration
+                + "], rebufferRatio=" + getRebufferRatio()
+                + ", seekLatency=[" + mSeekLatency
+                + "], playedTime=" + mPlayedTime + "}";
+    }
+}
@@ -0,0 +1,292 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import android.os.SystemClock;
+
+import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
+
+/**
+ * Collects the {@link PlaybackMetrics} of the current track and of the current session.
+ * <p/>
+ * Fed by the {@link PlaybackService} from its threads and read by the {@link CheerleaderPlayer},
+ * each call only updates a few counters under the recorder lock.
+ */
+final class PlaybackMetricsRecorder {
+
+    /**
+     * No pending time.
+     */
+    private static final long NONE = -1;
+
+    /**
+     * Singleton pattern.
+     */
+    private static PlaybackMetricsRecorder sInstance;
+
+    /**
+     * Metrics of the current session.
+     */
+    private PlaybackMetrics mSession;
+
+    /**
+     * Metrics of the current track, null if no track has been played during the session.
+     */
+    private PlaybackMetrics mTrack;
+
+    /**
+     * Time of the play command waiting for the preparation of its track, {@link #NONE} if none.
+     */
+    private long mPrepareRequestTime;
+
+    /**
+     * Time of the seek command waiting to be completed, {@link #NONE} if none.
+     */
+    private long mSeekRequestTime;
+
+    /**
+     * Time since which the track is playing, {@link #NONE} if not playing.
+     */
+    private long mPlayingSince;
+
+    /**
+     * Time since which the playback is stalled, {@link #NONE} if not stalled.
+     */
+    private long mStalledSince;
+
+    /**
+     * Singleton.
+     */
+    private PlaybackMetricsRecorder() {
+        startSession();
+    }
+
+    /**
+     * Retrieve the instance of the recorder.
+     *
+     * @return instance.
+     */
+    static synchronized PlaybackMetricsRecorder getInstance() {
+        if (sInstance == null) {
+            sInstance = new PlaybackMetricsRecorder();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Start a new session, dropping the metrics of the previous one.
+     */
+    synchronized void startSession() {
+        mSession = new PlaybackMetrics(null);
+        mTrack = null;
+        mPrepareRequestTime = NONE;
+        mSeekRequestTime = NONE;
+        mPlayingSince = NONE;
+        mStalledSince = NONE;
+    }
+
+    /**
+     * Called when a track starts being prepared.
+     *
+     * @param track       track being prepared.
+     * @param requestTime {@link SystemClock#elapsedRealtime()} of the command which requested it.
+     */
+    synchronized void onTrackRequested(SoundCloudTrack track, long requestTime) {
+        startTrack(track);
+        mPrepareRequestTime = requestTime;
+    }
+
+    /**
+     * Called when a track prepared ahead of time starts without any preparation.
+     *
+     * @param track track started.
+     */
+    synchronized void onGaplessTrackStarted(SoundCloudTrack track) {
+        startTrack(track);
+        startPlaying();
+    }
+
+    /**
+     * Called once the current track has been prepared.
+     *
+     * @param isPlaying true if the playback starts, false if paused meanwhile.
+     */
+    synchronized void onPrepared(boolean isPlaying) {
+        if (mPrepareRequestTime != NONE) {
+            long latency = SystemClock.elapsedRealtime() - mPrepareRequestTime;
+            mTrack.recordPrepareLatency(latency);
+            mSession.recordPrepareLatency(latency);
+            mPrepareRequestTime = NONE;
+        }
+        if (isPlaying) {
+            startPlaying();
+        }
+    }
+
+    /**
+     * Called when the playback resumes.
+     */
+    synchronized void onResumed() {
+        if (mPrepareRequestTime == NONE && mSeekRequestTime == NONE && mStalledSince == NONE) {
+            startPlaying();
+        }
+    }
+
+    /**
+     * Called when the playback is paused.
+     */
+    synchronized void onPaused() {
+        stopPlaying();
+        // a stall interrupted by the user is only measured until the pause.
+        endStall();
+    }
+
+    /**
+     * Called when the playback stops, either stopped or completed.
+     */
+    synchronized void onStopped() {
+        stopPlaying();
+        endStall();
+        mPrepareRequestTime = NONE;
+        mSeekRequestTime = NONE;
+    }
+
+    /**
+     * Called when the playback stalls to buffer.
+     * <p/>
+     * The initial buffering and the buffering following a seek aren't considered as stalls.
+     */
+    synchronized void onStallStarted() {
+        if (mTrack == null || mPrepareRequestTime != NONE || mSeekRequestTime != NONE) {
+            return;
+        }
+        stopPlaying();
+        if (mStalledSince == NONE) {
+            mStalledSince = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Called when the playback can go on once enough data has been buffered.
+     *
+     * @param isPlaying true if the playback goes on, false if paused.
+     */
+    synchronized void onStallEnded(boolean isPlaying) {
+        endStall();
+        if (isPlaying && mPrepareRequestTime == NONE && mSeekRequestTime == NONE) {
+            startPlaying();
+        }
+    }
+
+    /**
+     * Called when a seek command is executed.
+     *
+     * @param requestTime {@link SystemClock#elapsedRealtime()} of the seek command.
+     */
+    synchronized void onSeekRequested(long requestTime) {
+        if (mTrack == null) {
+            return;
+        }
+        stopPlaying();
+        endStall();
+        mSeekRequestTime = requestTime;
+    }
+
+    /**
+     * Called once a seek has been completed.
+     *
+     * @param isPlaying true if the playback resumes, false if paused.
+     */
+    synchronized void onSeekCompleted(boolean isPlaying) {
+        if (mSeekRequestTime != NONE) {
+            long latency = SystemClock.elapsedRealtime() - mSeekRequestTime;
+            mTrack.recordSeekLatency(latency);
+            mSession.recordSeekLatency(latency);
+            mSeekRequestTime = NONE;
+        }
+        if (isPlaying && mPrepareRequestTime == NONE) {
+            startPlaying();
+        }
+    }
+
+    /**
+     * Snapshot of the metrics of the current session.
+     *
+     * @return metrics.
+     */
+    synchronized PlaybackMetrics getSessionMetrics() {
+        return snapshot(mSession);
+    }
+
+    /**
+     * Snapshot of the metrics of the current track.
+     *
+     * @return metrics, null if no track has been played during the session.
+     */
+    synchronized PlaybackMetrics getTrackMetrics() {
+        return mTrack == null ? null : snapshot(mTrack);
+    }
+
+    /**
+     * Close the measures of the current track and start measuring a new one.
+     *
+     * @param track new track.
+     */
+    private void startTrack(SoundCloudTrack track) {
+        stopPlaying();
+        // a stall cut by a track change isn't a rebuffering the user waited for.
+        mStalledSince = NONE;
+        mSeekRequestTime = NONE;
+        mPrepareRequestTime = NONE;
+        mTrack = new PlaybackMetrics(track);
+        mTrack.onTrackStarted();
+        mSession.onTrackStarted();
+    }
+
+    /**
+     * Start counting the played time, if not already.
+     */
+    private void startPlaying() {
+        if (mTrack != null && mPlayingSince == NONE) {
+            mPlayingSince = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Stop counting the played time.
+     */
+    private void stopPlaying() {
+        if (mPlayingSince == NONE) {
+            return;
+        }
+        long played = SystemClock.elapsedRealtime() - mPlayingSince;
+        mTrack.recordPlayedTime(played);
+        mSession.recordPlayedTime(played);
+        mPlayingSince = NONE;
+    }
+
+    /**
+     * Record the current stall, if any.
+     */
+    private void endStall() {
+        if (mStalledSince == NONE) {
+            return;
+        }
+        long stall = SystemClock.elapsedRealtime() - mStalledSince;
+        mTrack.recordStall(stall);
+        mSession.recordStall(stall);
+        mStalledSince = NONE;
+    }
+
+    /**
+     * Copy metrics, counting the time played so far.
+     *
+     * @param metrics metrics to copy.
+     * @return snapshot.
+     */
+    private PlaybackMetrics snapshot(PlaybackMetrics metrics) {
+        PlaybackMetrics snapshot = metrics.copy();
+        if (mPlayingSince != NONE) {
+            snapshot.recordPlayedTime(SystemClock.elapsedRealtime() - mPlayingSince);
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,157 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+/**
+ * Encapsulate the options of the playback, given to the player through
+ * {@link CheerleaderPlayer.Builder#playbackOptions(PlaybackOptions)}.
+ */
+public final class PlaybackOptions {
+
+    /**
+     * Used to know if the next track should be prepared while the current one is playing.
+     */
+    private boolean mGapless;
+
+    /**
+     * Maximum size of the stream disk cache in bytes, 0 when disabled.
+     */
+    private long mStreamCacheSize;
+
+    /**
+     * Interval between two resyncs of the playback clock while playing, in milli.
+     */
+    private long mClockResyncInterval;
+
+    /**
+     * Factory used to create the playback engines, null to use the platform player.
+     */
+    private PlaybackEngine.Factory mEngineFactory;
+
+    /**
+     * Default options : no gapless playback, no stream cache and the default clock resync interval.
+     */
+    public PlaybackOptions() {
+        mClockResyncInterval = PlaybackService.DEFAULT_CLOCK_RESYNC_INTERVAL;
+    }
+
+    /**
+     * Copy of options, so that they can still be changed once the player built.
+     * private package.
+     *
+     * @param options options to copy.
+     */
+    PlaybackOptions(PlaybackOptions options) {
+        mGapless = options.mGapless;
+        mStreamCacheSize = options.mStreamCacheSize;
+        mClockResyncInterval = options.mClockResyncInterval;
+        mEngineFactory = options.mEngineFactory;
+    }
+
+    /**
+     * Used to know if the next track should be prepared while the current one is playing.
+     * private package.
+     *
+     * @return true if gapless playback is enabled.
+     */
+    boolean isGapless() {
+        return mGapless;
+    }
+
+    /**
+     * Enable or disable gapless playback.
+     * <p/>
+     * When enabled, the next track of the playlist is prepared while the current one is
+     * playing so that it starts without delay. Uses more bandwidth and memory, only available
+     * from Jelly Bean. Disabled by default.
+     *
+     * @param enable true to enable gapless playback.
+     * @return options, for chaining.
+     */
+    public PlaybackOptions gapless(boolean enable) {
+        mGapless = enable;
+        return this;
+    }
+
+    /**
+     * Retrieve the maximum size of the stream disk cache.
+     * private package.
+     *
+     * @return size in bytes, 0 when disabled.
+     */
+    long getStreamCacheSize() {
+        return mStreamCacheSize;
+    }
+
+    /**
+     * Enable the disk cache of the track streams.
+     * <p/>
+     * When enabled, streams are played through a local proxy which keeps them on disk so that
+     * tracks played again don't hit the network, seeking included. Least recently played
+     * streams are deleted first once the cache exceeds its maximum size. Disabled by default.
+     *
+     * @param maxSize maximum size of the stream cache in bytes, 0 to disable it.
+     * @return options, for chaining.
+     */
+    public PlaybackOptions streamCache(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Stream cache size can't be negative.");
+        }
+        mStreamCacheSize = maxSize;
+        return this;
+    }
+
+    /**
+     * Retrieve the interval between two resyncs of the playback clock.
+     * private package.
+     *
+     * @return interval in milli.
+     */
+    long getClockResyncInterval() {
+        return mClockResyncInterval;
+    }
+
+    /**
+     * Define how often the playback clock is resynchronized with the player while playing.
+     * <p/>
+     * Snapshots of the clock are published on each discontinuity (play, pause, seek,
+     * buffering) and then at this interval to correct the drift. The interval also drives
+     * {@link CheerleaderPlayerListener#onProgressChanged(int)}. UIs interpolating the
+     * position with {@link CheerleaderPlayer#getPlaybackClock()} can use a larger interval.
+     * Default to 1 second.
+     *
+     * @param milli interval between two resyncs in milli.
+     * @return options, for chaining.
+     */
+    public PlaybackOptions clockResyncInterval(long milli) {
+        if (milli <= 0) {
+            throw new IllegalArgumentException("Clock resync interval must be positive.");
+        }
+        mClockResyncInterval = milli;
+        return this;
+    }
+
+    /**
+     * Retrieve the factory used to create the playback engines.
+     * private package.
+     *
+     * @return factory, null to use the platform player.
+     */
+    PlaybackEngine.Factory getEngineFactory() {
+        return mEngineFactory;
+    }
+
+    /**
+     * Define the engine used to decode the streams instead of the platform player.
+     * <p/>
+     * Engines are created and driven on the player thread of the playback service and must
+     * report their events on the thread which created them, see {@link PlaybackEngine}.
+     * {@link SimulatedPlaybackEngine} can't be used here. Applied the next time the playback
+     * service is created.
+     *
+     * @param engineFactory factory used to create the engines, null to use the platform player.
+     * @return options, for chaining.
+     */
+    public PlaybackOptions playbackEngine(PlaybackEngine.Factory engineFactory) {
+        mEngineFactory = engineFactory;
+        return this;
+    }
+}
@@ -5,27 +5,27 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.graphics.Bitmap;
-import android.graphics.drawable.Drawable;
 import android.media.AudioManager;
-import android.media.MediaPlayer;
 import android.net.wifi.WifiManager;
+import android.os.Binder;
 import android.os.Build;
-import android.os.Bundle;
-import android.os.CountDownTimer;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.Message;
-import android.os.PowerManager;
 import android.os.Process;
+import android.os.SystemClock;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 
-import com.squareup.picasso.Picasso;
-import com.squareup.picasso.Target;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
 import fr.tvbarthel.cheerleader.library.helpers.SoundCloudArtworkHelper;
@@ -34,9 +34,8 @@ import fr.tvbarthel.cheerleader.library.media.MediaSessionWrapper;
 /**
  * Service used as SoundCloudPlayer.
  */
-public class PlaybackService extends Service implements MediaPlayer.OnErrorListener,
-        MediaPlayer.OnCompletionListener, MediaPlayer.OnSeekCompleteListener,
-        AudioManager.OnAudioFocusChangeListener, MediaPlayer.OnInfoListener, MediaPlayer.OnPreparedListener {
+public class PlaybackService extends Service implements PlaybackEngine.Listener,
+        AudioManager.OnAudioFocusChangeListener {
 
     /**
      * Action used for toggle playback event
@@ -73,89 +72,94 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
     static final String ACTION_AUDIO_BECOMING_NOISY = "sound_cloud_player_becoming_noisy";
 
     /**
-     * Action used to play a track.
+     * Name of the directory holding the cached streams.
      */
-    private static final String ACTION_PLAY = "sound_cloud_play";
+    private static final String STREAM_CACHE_DIRECTORY = "cheerleader_streams";
 
     /**
-     * Action used to resume the sound cloud player.
+     * package private, default interval between two resyncs of the playback clock in milli.
      */
-    private static final String ACTION_PAUSE_PLAYER = "sound_cloud_player_resume";
+    static final long DEFAULT_CLOCK_RESYNC_INTERVAL = 1000;
 
     /**
-     * Action used to pause the sound cloud player.
+     * Number of upcoming tracks whose stream url is resolved ahead of time.
      */
-    private static final String ACTION_RESUME_PLAYER = "sound_cloud_player_pause";
+    private static final int RESOLVE_AHEAD_COUNT = 3;
 
     /**
-     * Action used to stop the sound cloud player.
+     * package private, what id used to identify "play" message.
      */
-    private static final String ACTION_STOP_PLAYER = "sound_cloud_player_stop";
+    static final int WHAT_PLAY = 0;
 
     /**
-     * Action used to change the cursor of the current track.
+     * package private, what id used to identify "pause player" message.
      */
-    private static final String ACTION_SEEK_TO = "sound_cloud_player_seek_to";
+    static final int WHAT_PAUSE_PLAYER = 1;
 
     /**
-     * Bundle key used to pass client id.
+     * package private, what id used to identify "resume player" message.
      */
-    private static final String BUNDLE_KEY_SOUND_CLOUD_CLIENT_ID = "sound_cloud_player_bundle_key_client_id";
+    static final int WHAT_RESUME_PLAYER = 2;
 
     /**
-     * Bundle key used to pass track url.
+     * package private, what id used to identify "next track" message.
      */
-    private static final String BUNDLE_KEY_SOUND_CLOUD_TRACK = "sound_cloud_player_bundle_key_track_url";
+    static final int WHAT_NEXT_TRACK = 3;
 
     /**
-     * Bundle key used to seek to a given position.
+     * package private, what id used to identify "previous track" message.
      */
-    private static final String BUNDLE_KEY_SOUND_CLOUD_TRACK_POSITION = "sound_cloud_player_bundle_key_seek_to";
+    static final int WHAT_PREVIOUS_TRACK = 4;
 
     /**
-     * what id used to identify "play" message.
+     * package private, what id used to identify "seek to" message.
      */
-    private static final int WHAT_PLAY = 0;
+    static final int WHAT_SEEK_TO = 5;
 
     /**
-     * what id used to identify "pause player" message.
+     * package private, what id used to stop playback request
      */
-    private static final int WHAT_PAUSE_PLAYER = 1;
+    static final int WHAT_STOP_PLAYER = 6;
 
     /**
-     * what id used to identify "resume player" message.
+     * what id used to stop the service.
      */
-    private static final int WHAT_RESUME_PLAYER = 2;
+    private static final int WHAT_RELEASE_PLAYER = 7;
 
     /**
-     * what id used to identify "next track" message.
+     * package private, what id used to toggle the playback.
      */
-    private static final int WHAT_NEXT_TRACK = 3;
+    static final int WHAT_TOGGLE_PLAYBACK = 8;
 
     /**
-     * what id used to identify "previous track" message.
+     * package private, what id used to clear the player.
      */
-    private static final int WHAT_PREVIOUS_TRACK = 4;
+    static final int WHAT_CLEAR_PLAYER = 9;
 
     /**
-     * what id used to identify "seek to" message.
+     * what id used to play the track following a completed one, according to the repeat mode.
      */
-    private static final int WHAT_SEEK_TO = 5;
+    private static final int WHAT_COMPLETE_TRACK = 10;
 
     /**
-     * what id used to stop playback request
+     * what id used to execute the queued commands.
      */
-    private static final int WHAT_STOP_PLAYER = 6;
+    private static final int WHAT_EXECUTE_COMMANDS = 11;
 
     /**
-     * what id used to stop the service.
+     * package private, what id used to warm a standby engine with a track about to be played.
      */
-    private static final int WHAT_RELEASE_PLAYER = 7;
+    static final int WHAT_HINT = 12;
+
+    /**
+     * package private, what id used to prepare the next track again once the playlist has changed.
+     */
+    static final int WHAT_REFRESH_NEXT_TRACK = 13;
 
     /**
-     * what id used to clear the player.
+     * what id used to execute the track changes once the user landed on a track.
      */
-    private static final int WHAT_CLEAR_PLAYER = 9;
+    private static final int WHAT_SETTLE_TRACK_CHANGES = 14;
 
     /**
      * Log cat and thread name prefix.
@@ -163,15 +167,57 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
     private static final String TAG = PlaybackService.class.getSimpleName();
 
     /**
-     * Delay used to avoid useless action in case of spam action.
+     * Broadcast actions matching the {@link PlaybackEventBus} events, indexed by event.
+     */
+    private static final String[] EVENT_ACTIONS = new String[]{
+            PlaybackListener.ACTION_ON_TRACK_PLAYED,
+            PlaybackListener.ACTION_ON_PLAYER_PAUSED,
+            PlaybackListener.ACTION_ON_SEEK_COMPLETE,
+            PlaybackListener.ACTION_ON_PLAYER_DESTROYED,
+            PlaybackListener.ACTION_ON_BUFFERING_STARTED,
+            PlaybackListener.ACTION_ON_BUFFERING_ENDED,
+            PlaybackListener.ACTION_ON_PROGRESS_CHANGED
+    };
+
+    /**
+     * Number of listeners registered through {@link LocalBroadcastManager}.
+     */
+    private static final AtomicInteger BROADCAST_LISTENER_COUNT = new AtomicInteger();
+
+    /**
+     * Factory used instead of the platform player by the next created service, null if none.
      */
-    private static final int MESSAGE_DELAY_MILLI = 100;
+    private static volatile PlaybackEngine.Factory sEngineFactory;
+
+    /**
+     * Delay without track change after which a skip is executed right away.
+     * <p/>
+     * Track changes received meanwhile, while the previous track is still preparing, wait for the
+     * end of the delay and are merged : rapid skipping only prepares the track the user lands on.
+     * The other commands don't wait.
+     */
+    private static final int TRACK_CHANGE_SETTLE_MILLI = 300;
 
     /**
      * Max idle period after which the service will be stopped.
      */
     private static final int IDLE_PERIOD_MILLI = 60000;
 
+    /**
+     * Delay after which a hinted track which hasn't been played is dropped.
+     */
+    private static final int STANDBY_TIMEOUT_MILLI = 10000;
+
+    /**
+     * Period over which the number of warmed hints is limited.
+     */
+    private static final int HINT_WINDOW_MILLI = 60000;
+
+    /**
+     * Maximum number of hinted tracks warmed per {@link #HINT_WINDOW_MILLI}.
+     */
+    private static final int MAX_HINTS_PER_WINDOW = 6;
+
     /**
      * Path param used to access streaming url.
      */
@@ -208,9 +254,88 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
     private Handler mStopServiceHandler;
 
     /**
-     * MediaPlayer used to play music.
+     * Factory used to create the playback engines.
+     */
+    private PlaybackEngine.Factory mEngineFactory;
+
+    /**
+     * Engine used to play music.
+     */
+    private PlaybackEngine mEngine;
+
+    /**
+     * Engine used to prepare the next track while the current one is playing.
+     * <p/>
+     * Only used in gapless mode, swapped with {@link PlaybackService#mEngine} once the
+     * current track completes.
+     */
+    private PlaybackEngine mNextEngine;
+
+    /**
+     * Track prepared by the next engine, null if none.
+     */
+    private SoundCloudTrack mNextTrack;
+
+    /**
+     * Used to know if the next engine is prepared and chained to the current one.
+     */
+    private boolean mIsNextPrepared;
+
+    /**
+     * Engine warmed with a hinted track, swapped with {@link PlaybackService#mEngine} if the
+     * track is played.
+     */
+    private PlaybackEngine mStandbyEngine;
+
+    /**
+     * Track being prepared by the standby engine, null if none.
+     */
+    private SoundCloudTrack mStandbyTrack;
+
+    /**
+     * Used to know if the standby engine is prepared.
      */
-    private MediaPlayer mMediaPlayer;
+    private boolean mIsStandbyPrepared;
+
+    /**
+     * Runnable used to drop the standby track once {@link #STANDBY_TIMEOUT_MILLI} elapsed.
+     */
+    private Runnable mStandbyTimeout;
+
+    /**
+     * Start of the current hint window.
+     */
+    private long mHintWindowStart;
+
+    /**
+     * Number of hinted tracks warmed during the current hint window.
+     */
+    private int mHintCount;
+
+    /**
+     * Used to know if the playback is stalled to buffer.
+     */
+    private boolean mIsStalled;
+
+    /**
+     * Used to know if the next track should be prepared while the current one is playing.
+     */
+    private boolean mIsGapless;
+
+    /**
+     * Local proxy caching the streams on disk, null when the stream cache is disabled.
+     */
+    private StreamProxy mStreamProxy;
+
+    /**
+     * Maximum size of the stream disk cache in bytes, 0 when disabled.
+     */
+    private long mStreamCacheSize;
+
+    /**
+     * Used to resolve the redirections of the stream urls before the tracks are played.
+     */
+    private StreamUrlResolver mStreamUrlResolver;
 
     /**
      * Used to know if the player is paused.
@@ -242,6 +367,11 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
      */
     private LocalBroadcastManager mLocalBroadcastManager;
 
+    /**
+     * Bus used to dispatch the player events to the in-process listeners.
+     */
+    private PlaybackEventBus mEventBus;
+
     /**
      * Sound cloud notification manager.
      */
@@ -264,108 +394,96 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
     private MediaSessionWrapper mMediaSession;
 
     /**
-     * Picasso target used to retrieve the track artwork.
+     * Shared loader used to retrieve the track artwork.
+     */
+    private ArtworkLoader mArtworkLoader;
+
+    /**
+     * Recorder collecting the playback metrics.
+     */
+    private PlaybackMetricsRecorder mMetricsRecorder;
+
+    /**
+     * Callback used to retrieve the track artwork.
+     */
+    private ArtworkLoader.Callback mMediaSessionArtworkCallback;
+
+    /**
+     * Artwork currently set in the media session meta data.
      */
-    private Target mMediaSessionArtworkTarget;
+    private Bitmap mMediaSessionArtwork;
 
     /**
-     * Handler running on main thread to perform change on notification ui.
+     * Periodic resync of the playback clock, also used to propagate the progress.
      */
-    private Handler mMainThreadHandler;
+    private Runnable mClockResync;
 
     /**
-     * Progress used to update current track progress.
+     * Interval between two resyncs of the playback clock while playing, in milli.
      */
-    private CountDownTimer mCountDown;
+    private long mClockResyncInterval;
 
     /**
-     * Boolean used to if the media player is preparing.
+     * Boolean used to if the engine is preparing.
      */
     private boolean mIsPreparing;
 
+    /**
+     * Binder handed to the in-process clients.
+     */
+    private PlaybackBinder mBinder;
 
     /**
-     * Start the playback.
-     * <p/>
-     * Play the track matching the given position in the given playlist.
-     *
-     * @param context  context from which the service will be started.
-     * @param clientId SoundCloud api client id.
-     * @param track    the track which will be played.
+     * Commands waiting to be executed by the player handler.
      */
-    public static void play(Context context, String clientId, SoundCloudTrack track) {
-        Intent intent = new Intent(context, PlaybackService.class);
-        intent.setAction(ACTION_PLAY);
-        intent.putExtra(BUNDLE_KEY_SOUND_CLOUD_CLIENT_ID, clientId);
-        intent.putExtra(BUNDLE_KEY_SOUND_CLOUD_TRACK, track);
-        context.startService(intent);
-    }
+    private PlaybackCommandQueue mCommands;
 
     /**
-     * Pause the SoundCloud player.
-     *
-     * @param context  context from which the service will be started.
-     * @param clientId SoundCloud api client id.
+     * Elapsed realtime of the last track change, used to merge rapid skips.
      */
-    public static void pause(Context context, String clientId) {
-        Intent intent = new Intent(context, PlaybackService.class);
-        intent.setAction(ACTION_PAUSE_PLAYER);
-        intent.putExtra(BUNDLE_KEY_SOUND_CLOUD_CLIENT_ID, clientId);
-        context.startService(intent);
-    }
+    private long mLastTrackChangeTime;
 
     /**
-     * Resume the SoundCloud player.
-     *
-     * @param context  context from which the service will be started.
-     * @param clientId SoundCloud api client id.
+     * Track changes waiting for the end of the settle delay, executed at once.
      */
-    public static void resume(Context context, String clientId) {
-        Intent intent = new Intent(context, PlaybackService.class);
-        intent.setAction(ACTION_RESUME_PLAYER);
-        intent.putExtra(BUNDLE_KEY_SOUND_CLOUD_CLIENT_ID, clientId);
-        context.startService(intent);
-    }
+    private ArrayList<PlaybackCommand> mSettlingTrackChanges;
 
     /**
-     * Stop the SoundCloud player.
-     *
-     * @param context  context from which the service will be started.
-     * @param clientId SoundCloud api client id.
+     * Used to know if the execution of the queued commands has been scheduled.
      */
-    public static void stop(Context context, String clientId) {
-        Intent intent = new Intent(context, PlaybackService.class);
-        intent.setAction(ACTION_STOP_PLAYER);
-        intent.putExtra(BUNDLE_KEY_SOUND_CLOUD_CLIENT_ID, clientId);
-        context.startService(intent);
-    }
+    private AtomicBoolean mIsExecutionScheduled;
+
+    /**
+     * Used to know if the service is being stopped, commands are then refused.
+     */
+    private volatile boolean mIsStopping;
 
     /**
-     * Seek to the precise track position.
+     * Replace the platform player by another {@link PlaybackEngine}, such as an alternative decoder.
      * <p/>
-     * The current playing state of the SoundCloud player will be kept.
+     * Engines are created and driven on the player thread and must report their events on it.
      * <p/>
-     * If playing it remains playing, if paused it remains paused.
+     * Only applied to the next created service.
      *
-     * @param context  context from which the service will be started.
-     * @param clientId SoundCloud api client id.
-     * @param milli    time in milli of the position.
+     * @param factory factory used to create the engines, null to use the platform player.
      */
-    public static void seekTo(Context context, String clientId, int milli) {
-        Intent intent = new Intent(context, PlaybackService.class);
-        intent.setAction(ACTION_SEEK_TO);
-        intent.putExtra(BUNDLE_KEY_SOUND_CLOUD_CLIENT_ID, clientId);
-        intent.putExtra(BUNDLE_KEY_SOUND_CLOUD_TRACK_POSITION, milli);
-        context.startService(intent);
+    static void setEngineFactory(PlaybackEngine.Factory factory) {
+        sEngineFactory = factory;
     }
 
     /**
-     * Register a listener to catch player event.
+     * Register a listener to catch player event through
+     * {@link android.support.v4.content.LocalBroadcastManager}.
+     * <p/>
+     * Compatibility layer, events are only broadcast while at least one listener is registered
+     * this way. Prefer {@link PlaybackEventBus#register(PlaybackListener)} which doesn't allocate
+     * an intent per event.
      *
      * @param context  context used to register the listener.
      * @param listener listener to register.
      */
     public static void registerListener(Context context, PlaybackListener listener) {
+        BROADCAST_LISTENER_COUNT.incrementAndGet();
         IntentFilter filter = new IntentFilter();
         filter.addAction(PlaybackListener.ACTION_ON_TRACK_PLAYED);
         filter.addAction(PlaybackListener.ACTION_ON_PLAYER_PAUSED);
@@ -386,6 +504,7 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
      * @param listener listener to unregister.
      */
     public static void unregisterListener(Context context, PlaybackListener listener) {
+        BROADCAST_LISTENER_COUNT.decrementAndGet();
         LocalBroadcastManager.getInstance(context.getApplicationContext())
                 .unregisterReceiver(listener);
     }
@@ -398,27 +517,50 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
         mHandlerThread.start();
 
         mPlayerHandler = new PlayerHandler(mHandlerThread.getLooper());
-        mMediaPlayer = new MediaPlayer();
-
-        initializeMediaPlayer();
+        mEngineFactory = sEngineFactory != null ? sEngineFactory : MediaPlayerEngine.factory(this);
+        mEngine = createEngine();
         mStopServiceHandler = new StopHandler(mHandlerThread.getLooper());
 
-        // instantiate target used to load track artwork.
-        mMediaSessionArtworkTarget = new MediaSessionArtworkTarget();
+        mBinder = new PlaybackBinder();
+        mCommands = new PlaybackCommandQueue();
+        mSettlingTrackChanges = new ArrayList<>();
+        mIsExecutionScheduled = new AtomicBoolean(false);
+
+        mMetricsRecorder = PlaybackMetricsRecorder.getInstance();
+        mMetricsRecorder.startSession();
 
-        // create handler on the main thread to avoid throwing error
-        // with picasso when bitmap is retrieved and loaded in notification.
-        mMainThreadHandler = new Handler(getApplicationContext().getMainLooper());
+        // instantiate callback used to load track artwork.
+        mArtworkLoader = ArtworkLoader.getInstance();
+        mMediaSessionArtworkCallback = new MediaSessionArtworkCallback();
+
+        mClockResyncInterval = DEFAULT_CLOCK_RESYNC_INTERVAL;
+        mClockResync = new Runnable() {
+            @Override
+            public void run() {
+                resyncClock(this);
+            }
+        };
+
+        mStandbyTimeout = new Runnable() {
+            @Override
+            public void run() {
+                discardStandbyTrack();
+            }
+        };
 
         mWifiLock = ((WifiManager) getBaseContext().getSystemService(Context.WIFI_SERVICE))
                 .createWifiLock(WifiManager.WIFI_MODE_FULL, WIFI_LOCK_TAG);
 
         mLocalBroadcastManager = LocalBroadcastManager.getInstance(getApplicationContext());
 
+        mEventBus = PlaybackEventBus.getInstance();
+
         mNotificationManager = NotificationManager.getInstance(this);
 
         mPlayerPlaylist = PlayerPlaylist.getInstance();
 
+        mStreamUrlResolver = new StreamUrlResolver();
+
         mHasAlreadyPlayed = false;
 
         mAudioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
@@ -428,23 +570,41 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
 
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return mBinder;
     }
 
     @Override
     public void onDestroy() {
-        stopTimer();
+        stopClock();
+        mMetricsRecorder.onStopped();
         mAudioManager.abandonAudioFocus(this);
         mMediaSession.onDestroy();
+        mArtworkLoader.cancel(mMediaSessionArtworkCallback);
 
         mPlayerHandler.removeCallbacksAndMessages(null);
         stopForeground(true);
 
-        Intent intent = new Intent(PlaybackListener.ACTION_ON_PLAYER_DESTROYED);
-        mLocalBroadcastManager.sendBroadcast(intent);
+        dispatchEvent(PlaybackEventBus.EVENT_PLAYER_DESTROYED, null, 0);
+
+        mEngine.release();
+        mEngine = null;
+
+        if (mNextEngine != null) {
+            mNextEngine.release();
+            mNextEngine = null;
+        }
+
+        if (mStandbyEngine != null) {
+            mStandbyEngine.release();
+            mStandbyEngine = null;
+        }
 
-        mMediaPlayer.release();
-        mMediaPlayer = null;
+        if (mStreamProxy != null) {
+            mStreamProxy.stop();
+            mStreamProxy = null;
+        }
+
+        mStreamUrlResolver.release();
 
         mHandlerThread.quit();
 
@@ -453,117 +613,132 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent != null) {
-            Message message = mPlayerHandler.obtainMessage();
-            Bundle extra = intent.getExtras();
-
-            if (extra != null) {
-                // client id should be passed for each command as service could have been restarted
-                // by the system.
-                mSoundCloundClientId = extra.getString(BUNDLE_KEY_SOUND_CLOUD_CLIENT_ID);
-
-                // transfer args to the handler.
-                message.setData(extra);
-            }
-
+        // intents without action only start the service, commands then go through the binder.
+        if (intent != null && intent.getAction() != null) {
             switch (intent.getAction()) {
-                case ACTION_PLAY:
-                    message.what = WHAT_PLAY;
-                    break;
-                case ACTION_PAUSE_PLAYER:
-                    message.what = WHAT_PAUSE_PLAYER;
-                    break;
-                case ACTION_RESUME_PLAYER:
-                    message.what = WHAT_RESUME_PLAYER;
-                    break;
-                case ACTION_STOP_PLAYER:
-                    message.what = WHAT_STOP_PLAYER;
-                    break;
                 case ACTION_NEXT_TRACK:
-                    message.what = WHAT_NEXT_TRACK;
+                    enqueue(PlaybackCommand.next());
                     break;
                 case ACTION_PREVIOUS_TRACK:
-                    message.what = WHAT_PREVIOUS_TRACK;
-                    break;
-                case ACTION_SEEK_TO:
-                    message.what = WHAT_SEEK_TO;
+                    enqueue(PlaybackCommand.previous());
                     break;
                 case ACTION_TOGGLE_PLAYBACK:
-                    if (mIsPaused) {
-                        message.what = WHAT_RESUME_PLAYER;
-                    } else {
-                        message.what = WHAT_PAUSE_PLAYER;
-                    }
+                    enqueue(PlaybackCommand.toggle());
                     break;
                 case ACTION_AUDIO_BECOMING_NOISY:
-                    if (!mIsPaused) {
-                        message.what = WHAT_PAUSE_PLAYER;
-                    }
+                    // no-op if already paused once executed.
+                    enqueue(PlaybackCommand.pause(null));
                     break;
                 case ACTION_CLEAR_NOTIFICATION:
-                    message.what = WHAT_CLEAR_PLAYER;
+                    enqueue(PlaybackCommand.clear());
                     break;
                 default:
                     break;
             }
-            gotoIdleState();
-            mPlayerHandler.removeCallbacksAndMessages(null);
-            mPlayerHandler.sendMessageDelayed(message, MESSAGE_DELAY_MILLI);
         }
         return START_STICKY;
     }
 
     @Override
-    public void onPrepared(MediaPlayer mp) {
+    public void onPrepared(PlaybackEngine engine) {
+        if (engine == mNextEngine) {
+            chainNextTrack();
+            return;
+        }
+
+        if (engine == mStandbyEngine) {
+            mIsStandbyPrepared = mStandbyTrack != null;
+            return;
+        }
+
         // start the playback.
         mIsPreparing = false;
+        mMetricsRecorder.onPrepared(!mIsPaused);
         if (!mIsPaused) {
-            mMediaPlayer.start();
+            mEngine.start();
             SoundCloudTrack currentTrack = mPlayerPlaylist.getCurrentTrack();
             if (currentTrack == null) {
-                mMediaPlayer.stop();
+                mEngine.stop();
             } else {
-                startTimer(currentTrack.getDurationInMilli());
+                startClock();
             }
 
-            Intent bufferingEnds = new Intent(PlaybackListener.ACTION_ON_BUFFERING_ENDED);
-            mLocalBroadcastManager.sendBroadcast(bufferingEnds);
+            dispatchEvent(PlaybackEventBus.EVENT_BUFFERING_ENDED, null, 0);
         }
+        prepareNextTrack();
     }
 
     @Override
-    public boolean onError(MediaPlayer mp, int what, int extra) {
-        // Most of the time when the media player fires an error, it can recover from it.
+    public boolean onError(PlaybackEngine engine, int what, int extra) {
+        // Most of the time when the engine fires an error, it can recover from it.
         // We simply return true to mark the error as handled.
-        Log.e(TAG, "MediaPlayer error occurred : " + what + " - " + extra + " => reset mediaPlayer");
+        Log.e(TAG, "Playback engine error occurred : " + what + " - " + extra + " => reset engine");
+
+        if (engine == mNextEngine) {
+            // the next track will be prepared from a cold start once the current one completes.
+            discardNextTrack();
+            return true;
+        }
+
+        if (engine == mStandbyEngine) {
+            // the hinted track will be prepared from a cold start if played.
+            discardStandbyTrack();
+            return true;
+        }
 
         // If the media server died
-        // Re-initialize the media player.
-        if (what == MediaPlayer.MEDIA_ERROR_SERVER_DIED) {
-            initializeMediaPlayer();
+        // Re-initialize the engine.
+        if (what == PlaybackEngine.ERROR_SERVER_DIED) {
+            discardNextTrack();
+            resetEngine();
+        }
+
+        // the resolved location may have expired, let the player follow the redirection next time.
+        SoundCloudTrack currentTrack = mPlayerPlaylist.getCurrentTrack();
+        if (currentTrack != null) {
+            mStreamUrlResolver.invalidate(getSignedStreamUrl(currentTrack));
         }
 
         return true;
     }
 
     @Override
-    public void onCompletion(MediaPlayer mp) {
+    public void onCompletion(PlaybackEngine engine) {
+        if (engine != mEngine) {
+            return;
+        }
+
+        if (mIsNextPrepared && mNextTrack.equals(mPlayerPlaylist.peekNext())) {
+            // the next engine has already been started by the current one.
+            playNextPreparedTrack();
+            return;
+        }
+
+        // the playlist changed too close to the completion for the next track to be refreshed.
+        discardNextTrack();
+        completeClock();
+        mMetricsRecorder.onStopped();
+
         // release lock on wifi.
         if (mWifiLock.isHeld()) {
             mWifiLock.release();
         }
         gotoIdleState();
-        mPlayerHandler.sendEmptyMessage(WHAT_NEXT_TRACK);
+        mPlayerHandler.sendEmptyMessage(WHAT_COMPLETE_TRACK);
     }
 
     @Override
-    public void onSeekComplete(MediaPlayer mp) {
+    public void onSeekComplete(PlaybackEngine engine) {
+        if (engine != mEngine) {
+            return;
+        }
+        mMetricsRecorder.onSeekCompleted(!mIsPaused);
         // broadcast event
-        Intent intent = new Intent(PlaybackListener.ACTION_ON_SEEK_COMPLETE);
-        intent.putExtra(PlaybackListener.EXTRA_KEY_CURRENT_TIME, mp.getCurrentPosition());
-        mLocalBroadcastManager.sendBroadcast(intent);
-        if (!mIsPaused) {
-            resumeTimer();
+        dispatchEvent(PlaybackEventBus.EVENT_SEEK_COMPLETE, null, engine.getCurrentPosition());
+        if (mIsPaused) {
+            pauseClock(PlaybackClock.STATE_PAUSED, engine.getCurrentPosition());
+        } else {
+            startClock();
         }
     }
 
@@ -574,7 +749,7 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
                 if (mIsPausedAfterAudioFocusChanged) {
                     resume();
                 }
-                mMediaPlayer.setVolume(1.0f, 1.0f);
+                mEngine.setVolume(1.0f);
                 break;
             case AudioManager.AUDIOFOCUS_LOSS:
                 if (!mIsPaused) {
@@ -590,7 +765,7 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
                 break;
             case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
                 if (!mIsPaused) {
-                    mMediaPlayer.setVolume(0.1f, 0.1f);
+                    mEngine.setVolume(0.1f);
                 }
                 break;
             default:
@@ -599,18 +774,28 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
     }
 
     @Override
-    public boolean onInfo(MediaPlayer mp, int what, int extra) {
-        Intent i;
+    public boolean onInfo(PlaybackEngine engine, int what, int extra) {
+        if (engine != mEngine) {
+            return false;
+        }
         switch (what) {
-            case MediaPlayer.MEDIA_INFO_BUFFERING_START:
+            case PlaybackEngine.INFO_BUFFERING_START:
+                mIsStalled = true;
+                // leave the bandwidth to the current track.
+                discardStandbyTrack();
+                mMetricsRecorder.onStallStarted();
                 // broadcast event
-                i = new Intent(PlaybackListener.ACTION_ON_BUFFERING_STARTED);
-                mLocalBroadcastManager.sendBroadcast(i);
+                dispatchEvent(PlaybackEventBus.EVENT_BUFFERING_STARTED, null, 0);
+                pauseClock(PlaybackClock.STATE_BUFFERING, engine.getCurrentPosition());
                 return true;
-            case MediaPlayer.MEDIA_INFO_BUFFERING_END:
+            case PlaybackEngine.INFO_BUFFERING_END:
+                mIsStalled = false;
+                mMetricsRecorder.onStallEnded(!mIsPaused);
                 // broadcast event
-                i = new Intent(PlaybackListener.ACTION_ON_BUFFERING_ENDED);
-                mLocalBroadcastManager.sendBroadcast(i);
+                dispatchEvent(PlaybackEventBus.EVENT_BUFFERING_ENDED, null, 0);
+                if (!mIsPaused) {
+                    startClock();
+                }
                 return true;
             default:
                 return false;
@@ -624,18 +809,18 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
     private void pause() {
         if (mHasAlreadyPlayed && !mIsPaused) {
             mIsPaused = true;
+            mMetricsRecorder.onPaused();
             if (!mIsPreparing) {
-                mMediaPlayer.pause();
+                mEngine.pause();
             }
 
             // broadcast event
-            Intent intent = new Intent(PlaybackListener.ACTION_ON_PLAYER_PAUSED);
-            mLocalBroadcastManager.sendBroadcast(intent);
+            dispatchEvent(PlaybackEventBus.EVENT_PLAYER_PAUSED, null, 0);
 
             updateNotification();
 
             mMediaSession.setPlaybackState(MediaSessionWrapper.PLAYBACK_STATE_PAUSED);
-            pauseTimer();
+            pauseClock(PlaybackClock.STATE_PAUSED, mIsPreparing ? 0 : mEngine.getCurrentPosition());
         }
     }
 
@@ -646,64 +831,267 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
         if (mIsPaused) {
             mIsPaused = false;
             mIsPausedAfterAudioFocusChanged = false;
-            // Try to gain the audio focus before preparing and starting the media player.
+            // Try to gain the audio focus before preparing and starting the engine.
             if (mAudioManager.requestAudioFocus(this, AudioManager.STREAM_MUSIC, AudioManager.AUDIOFOCUS_GAIN)
                     == AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
-                mMediaPlayer.start();
+                mEngine.start();
+                mMetricsRecorder.onResumed();
 
-                Intent intent = new Intent(PlaybackListener.ACTION_ON_TRACK_PLAYED);
-                intent.putExtra(PlaybackListener.EXTRA_KEY_TRACK,
-                        mPlayerPlaylist.getCurrentTrack());
-                mLocalBroadcastManager.sendBroadcast(intent);
+                dispatchEvent(PlaybackEventBus.EVENT_TRACK_PLAYED, mPlayerPlaylist.getCurrentTrack(), 0);
 
                 updateNotification();
                 mMediaSession.setPlaybackState(MediaSessionWrapper.PLAYBACK_STATE_PLAYING);
-                resumeTimer();
+                startClock();
             }
         }
     }
 
     private void stopPlayer() {
         mMediaSession.setPlaybackState(MediaSessionWrapper.PLAYBACK_STATE_STOPPED);
-        mMediaPlayer.stop();
+        discardNextTrack();
+        mEngine.stop();
+        discardStandbyTrack();
         mIsPaused = true;
-        stopSelf();
+        mMetricsRecorder.onStopped();
+        shutdown();
     }
 
-    private void nextTrack() {
-        playTrack(mPlayerPlaylist.next());
+    private void seekToPosition(int milli, long requestTime) {
+        mMetricsRecorder.onSeekRequested(requestTime);
+        mEngine.seekTo(milli);
     }
 
-    private void previousTrack() {
-        playTrack(mPlayerPlaylist.previous());
+    /**
+     * Create an engine reporting its events to the service.
+     *
+     * @return idle engine.
+     */
+    private PlaybackEngine createEngine() {
+        PlaybackEngine engine = mEngineFactory.create();
+        engine.setListener(this);
+        return engine;
     }
 
-    private void seekToPosition(int milli) {
-        mMediaPlayer.seekTo(milli);
+    /**
+     * Put the current engine back to the idle state.
+     */
+    private void resetEngine() {
+        mEngine.reset();
+        mIsPreparing = false;
     }
 
-    private void initializeMediaPlayer() {
-        mMediaPlayer.reset();
-        mMediaPlayer.setWakeMode(getApplicationContext(), PowerManager.PARTIAL_WAKE_LOCK);
-        mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-        mMediaPlayer.setOnCompletionListener(this);
-        mMediaPlayer.setOnSeekCompleteListener(this);
-        mMediaPlayer.setOnInfoListener(this);
-        mMediaPlayer.setOnPreparedListener(this);
-        mMediaPlayer.setOnErrorListener(this);
-        mIsPreparing = false;
+    /**
+     * Prepare the next track of the playlist on the next engine.
+     * <p/>
+     * Only in gapless mode, if supported by the engine.
+     */
+    private void prepareNextTrack() {
+        discardNextTrack();
+        if (!mIsGapless || !mEngine.isGaplessSupported()) {
+            return;
+        }
+
+        SoundCloudTrack nextTrack = mPlayerPlaylist.peekNext();
+        if (nextTrack == null) {
+            return;
+        }
+
+        if (mNextEngine == null) {
+            mNextEngine = createEngine();
+        }
+        try {
+            mNextEngine.setDataSource(getStreamUrl(nextTrack));
+            mNextTrack = nextTrack;
+            mNextEngine.prepareAsync();
+        } catch (IOException e) {
+            Log.e(TAG, "File referencing not exist : " + nextTrack);
+        }
+    }
+
+    /**
+     * Prepare the next track again if the playlist, the shuffle or the repeat mode changed it.
+     * <p/>
+     * Avoid the engine to start a track which isn't the next one anymore once the current one completes.
+     */
+    private void refreshNextTrack() {
+        if (!mHasAlreadyPlayed || mIsPreparing) {
+            // the next track will be prepared once the current one is.
+            return;
+        }
+        SoundCloudTrack nextTrack = mPlayerPlaylist.peekNext();
+        if (mNextTrack != null && mNextTrack.equals(nextTrack)) {
+            return;
+        }
+        prepareNextTrack();
+    }
+
+    /**
+     * Chain the prepared next engine to the current one so that it is started
+     * as soon as the current track completes.
+     */
+    private void chainNextTrack() {
+        if (mNextTrack == null) {
+            return;
+        }
+        mIsNextPrepared = true;
+        mEngine.setNextEngine(mNextEngine);
+    }
+
+    /**
+     * Discard the track prepared by the next engine.
+     */
+    private void discardNextTrack() {
+        if (mNextEngine == null) {
+            return;
+        }
+        if (mIsNextPrepared) {
+            mEngine.setNextEngine(null);
+        }
+        mNextTrack = null;
+        mIsNextPrepared = false;
+        mNextEngine.reset();
+    }
+
+    /**
+     * Rotate the engines once the current track has completed and the next engine
+     * has been started.
+     */
+    private void playNextPreparedTrack() {
+        PlaybackEngine completed = mEngine;
+        mEngine = mNextEngine;
+        mNextEngine = completed;
+        mNextTrack = null;
+        mIsNextPrepared = false;
+        mNextEngine.reset();
+
+        SoundCloudTrack track = mPlayerPlaylist.advance();
+        mMetricsRecorder.onGaplessTrackStarted(track);
+        notifyTrackChanged(track);
+        startClock();
+        resolveUpcomingTracks();
+        prepareNextTrack();
+    }
+
+    /**
+     * Update the notification, the media session and the listeners with a new track.
+     *
+     * @param track new track.
+     */
+    private void notifyTrackChanged(SoundCloudTrack track) {
+        updateNotification();
+        // update playback state as well as meta data.
+        mMediaSession.setPlaybackState(MediaSessionWrapper.PLAYBACK_STATE_PLAYING);
+        // start loading of the artwork.
+        mArtworkLoader.load(SoundCloudArtworkHelper.getArtworkUrl(track, SoundCloudArtworkHelper.XXXLARGE),
+                MEDIA_SESSION_ARTWORK_SIZE, mMediaSessionArtworkCallback);
+        // broadcast events
+        dispatchEvent(PlaybackEventBus.EVENT_TRACK_PLAYED, track, 0);
+    }
+
+    /**
+     * Dispatch a player event to the listeners registered on the {@link PlaybackEventBus} and
+     * broadcast it for the ones registered through {@link LocalBroadcastManager}, if any.
+     *
+     * @param event one of the {@link PlaybackEventBus} events.
+     * @param track track of the event, can be null.
+     * @param milli time of the event in milli.
+     */
+    private void dispatchEvent(int event, SoundCloudTrack track, int milli) {
+        mEventBus.post(event, track, milli);
+        if (BROADCAST_LISTENER_COUNT.get() <= 0) {
+            return;
+        }
+        Intent intent = new Intent(EVENT_ACTIONS[event]);
+        if (track != null) {
+            intent.putExtra(PlaybackListener.EXTRA_KEY_TRACK, track);
+        }
+        if (event == PlaybackEventBus.EVENT_SEEK_COMPLETE || event == PlaybackEventBus.EVENT_PROGRESS_CHANGED) {
+            intent.putExtra(PlaybackListener.EXTRA_KEY_CURRENT_TIME, milli);
+        }
+        mLocalBroadcastManager.sendBroadcast(intent);
+    }
+
+    /**
+     * Build the SoundCloud streaming url of a track.
+     *
+     * @param track track.
+     * @return streaming url signed with the client id.
+     */
+    private String getSignedStreamUrl(SoundCloudTrack track) {
+        return track.getStreamUrl() + SOUND_CLOUD_CLIENT_ID_PARAM + mSoundCloundClientId;
+    }
+
+    /**
+     * Build the url given to the engine to stream a track.
+     *
+     * @param track track.
+     * @return resolved CDN location if available, else the signed streaming url. Wrapped by the
+     * stream proxy when the stream cache is enabled.
+     */
+    private String getStreamUrl(SoundCloudTrack track) {
+        String url = mStreamUrlResolver.get(getSignedStreamUrl(track));
+        if (mStreamProxy != null) {
+            url = mStreamProxy.getUrl(track.getId(), url);
+        }
+        return url;
+    }
+
+    /**
+     * Resolve ahead of time the stream urls of the tracks which will be played next.
+     */
+    private void resolveUpcomingTracks() {
+        List<SoundCloudTrack> upcoming = mPlayerPlaylist.peekUpcoming(RESOLVE_AHEAD_COUNT);
+        ArrayList<String> streamUrls = new ArrayList<>(upcoming.size());
+        for (SoundCloudTrack upcomingTrack : upcoming) {
+            streamUrls.add(getSignedStreamUrl(upcomingTrack));
+        }
+        mStreamUrlResolver.prefetch(streamUrls);
+    }
+
+    /**
+     * Enable, resize or disable the stream disk cache.
+     *
+     * @param maxSize maximum size of the stream disk cache in bytes, 0 to disable it.
+     */
+    private void configureStreamCache(long maxSize) {
+        if (maxSize == mStreamCacheSize) {
+            return;
+        }
+        mStreamCacheSize = maxSize;
+        if (mStreamProxy != null) {
+            mStreamProxy.stop();
+            mStreamProxy = null;
+        }
+        if (maxSize <= 0) {
+            return;
+        }
+        try {
+            StreamProxy proxy = new StreamProxy(
+                    new StreamCache(new File(getCacheDir(), STREAM_CACHE_DIRECTORY), maxSize));
+            proxy.start();
+            mStreamProxy = proxy;
+        } catch (IOException | IllegalStateException e) {
+            Log.e(TAG, "Stream cache disabled : " + e.getMessage());
+        }
     }
 
     /**
      * Play a track.
      * <p/>
-     * This method ensures that the media player will be in the right state to be able to play a new
+     * This method ensures that the engine will be in the right state to be able to play a new
      * datasource.
      *
-     * @param track track url.
-     */
-    private void playTrack(SoundCloudTrack track) {
-        pauseTimer();
+     * @param track       track url, null if the playlist has been emptied meanwhile.
+     * @param requestTime {@link SystemClock#elapsedRealtime()} at which the track has been requested.
+     */
+    private void playTrack(SoundCloudTrack track, long requestTime) {
+        if (track == null) {
+            // nothing left to play, as when the playlist is emptied by the player.
+            stopPlayer();
+            return;
+        }
+        pauseClock(PlaybackClock.STATE_BUFFERING, 0);
+        mMetricsRecorder.onTrackRequested(track, requestTime);
         try {
             // acquire lock on wifi.
             mWifiLock.acquire();
@@ -714,35 +1102,46 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
 
             // 1 - UPDATE ALL VISUAL CALLBACK FIRST TO IMPROVE USER EXPERIENCE
 
-            updateNotification();
-            // update playback state as well as meta data.
-            mMediaSession.setPlaybackState(MediaSessionWrapper.PLAYBACK_STATE_PLAYING);
-            // start loading of the artwork.
-            loadArtwork(this,
-                    SoundCloudArtworkHelper.getArtworkUrl(track, SoundCloudArtworkHelper.XXXLARGE));
-            // broadcast events
-            Intent intent = new Intent(PlaybackListener.ACTION_ON_TRACK_PLAYED);
-            intent.putExtra(PlaybackListener.EXTRA_KEY_TRACK, track);
-            mLocalBroadcastManager.sendBroadcast(intent);
-            Intent bufferingStart = new Intent(PlaybackListener.ACTION_ON_BUFFERING_STARTED);
-            mLocalBroadcastManager.sendBroadcast(bufferingStart);
+            notifyTrackChanged(track);
+            dispatchEvent(PlaybackEventBus.EVENT_BUFFERING_STARTED, null, 0);
 
             // 2 - THEN PREPARE THE TRACK STREAMING
 
-            // set media player to stop state in order to be able to call prepare.
-            mMediaPlayer.reset();
+            // drop the track prepared for gapless playback, it will be prepared again.
+            discardNextTrack();
+            mIsStalled = false;
+
+            boolean isWarm = track != null && track.equals(mStandbyTrack);
+            boolean isPrepared = isWarm && mIsStandbyPrepared;
+            if (isWarm) {
+                // the hinted track is already being prepared by the standby engine.
+                promoteStandbyEngine();
+            } else {
+                // leave the bandwidth to the played track.
+                discardStandbyTrack();
+
+                // set the engine to idle state in order to be able to call prepare.
+                resetEngine();
 
-            // set new data source
-            mMediaPlayer.setDataSource(track.getStreamUrl() + SOUND_CLOUD_CLIENT_ID_PARAM
-                    + mSoundCloundClientId);
+                // set new data source
+                mEngine.setDataSource(getStreamUrl(track));
+            }
+            resolveUpcomingTracks();
 
-            // Try to gain the audio focus before preparing and starting the media player.
+            // Try to gain the audio focus before preparing and starting the engine.
             if (mAudioManager.requestAudioFocus(this, AudioManager.STREAM_MUSIC, AudioManager.AUDIOFOCUS_GAIN)
                     == AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
                 // prepare asynchronously the stream to be able to handle new action on the
                 // service thread such as a pause command.
                 mIsPreparing = true;
-                mMediaPlayer.prepareAsync();
+                if (isPrepared) {
+                    onPrepared(mEngine);
+                } else if (!isWarm) {
+                    mEngine.prepareAsync();
+                }
+            } else if (isWarm) {
+                // the warmed track must not start without the audio focus.
+                resetEngine();
             }
 
         } catch (IOException e) {
@@ -750,6 +1149,79 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
         }
     }
 
+    /**
+     * Warm the standby engine with a track which is about to be played.
+     * <p/>
+     * The speculation never competes with the current playback : it is skipped while the current
+     * track is preparing or stalled, at most {@link #MAX_HINTS_PER_WINDOW} tracks are warmed per
+     * {@link #HINT_WINDOW_MILLI} and a track which isn't played within
+     * {@link #STANDBY_TIMEOUT_MILLI} is dropped.
+     *
+     * @param track track to warm, null to drop the current standby track.
+     */
+    private void hintTrack(SoundCloudTrack track) {
+        if (track == null) {
+            discardStandbyTrack();
+            return;
+        }
+        if (track.equals(mStandbyTrack)
+                || (mHasAlreadyPlayed && track.equals(mPlayerPlaylist.getCurrentTrack()))) {
+            return;
+        }
+        if (mIsPreparing || mIsStalled) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (now - mHintWindowStart > HINT_WINDOW_MILLI) {
+            mHintWindowStart = now;
+            mHintCount = 0;
+        }
+        if (mHintCount >= MAX_HINTS_PER_WINDOW) {
+            return;
+        }
+        mHintCount++;
+
+        discardStandbyTrack();
+        if (mStandbyEngine == null) {
+            mStandbyEngine = createEngine();
+        }
+        try {
+            mStandbyEngine.setDataSource(getStreamUrl(track));
+            mStandbyTrack = track;
+            mStandbyEngine.prepareAsync();
+            mPlayerHandler.postDelayed(mStandbyTimeout, STANDBY_TIMEOUT_MILLI);
+        } catch (IOException e) {
+            Log.e(TAG, "File referencing not exist : " + track);
+            mStandbyEngine.reset();
+        }
+    }
+
+    /**
+     * Swap the standby engine with the current one, the standby track becoming the current one.
+     */
+    private void promoteStandbyEngine() {
+        mPlayerHandler.removeCallbacks(mStandbyTimeout);
+        PlaybackEngine previous = mEngine;
+        mEngine = mStandbyEngine;
+        mStandbyEngine = previous;
+        mStandbyTrack = null;
+        mIsStandbyPrepared = false;
+        previous.reset();
+    }
+
+    /**
+     * Drop the track being prepared by the standby engine, if any.
+     */
+    private void discardStandbyTrack() {
+        mPlayerHandler.removeCallbacks(mStandbyTimeout);
+        if (mStandbyTrack == null) {
+            return;
+        }
+        mStandbyTrack = null;
+        mIsStandbyPrepared = false;
+        mStandbyEngine.reset();
+    }
+
     /**
      * Update the notification with the current track information.
      */
@@ -770,83 +1242,251 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
     }
 
     /**
-     * Load the track artwork.
+     * Queue a command and schedule its execution, can be called from any thread.
      *
-     * @param context    context used by {@link com.squareup.picasso.Picasso} to load the artwork asynchronously.
-     * @param artworkUrl artwork url of the track.
+     * @param command command to execute.
      */
-    private void loadArtwork(final Context context, final String artworkUrl) {
-        mMainThreadHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                final Picasso picasso = Picasso.with(context);
-                picasso.cancelRequest(mMediaSessionArtworkTarget);
-                picasso.load(artworkUrl)
-                        .centerCrop()
-                        .resize(MEDIA_SESSION_ARTWORK_SIZE, MEDIA_SESSION_ARTWORK_SIZE)
-                        .into(mMediaSessionArtworkTarget);
-            }
-        });
+    private void enqueue(PlaybackCommand command) {
+        mCommands.offer(command);
+        gotoIdleState();
+        scheduleCommands();
     }
 
     /**
-     * Start internal timer used to propagate the playback position.
-     *
-     * @param duration duration for which the timer should be started.
+     * Schedule the execution of the queued commands on the player handler, if not already.
      */
-    private void startTimer(long duration) {
-        if (mCountDown != null) {
-            mCountDown.cancel();
-            mCountDown = null;
+    private void scheduleCommands() {
+        if (!mCommands.isEmpty() && mIsExecutionScheduled.compareAndSet(false, true)) {
+            mPlayerHandler.sendEmptyMessage(WHAT_EXECUTE_COMMANDS);
         }
+    }
 
-        // refresh progress every seconds.
-        mCountDown = new CountDownTimer(duration, 1000) {
-            @Override
-            public void onTick(long millisUntilFinished) {
-                Intent i = new Intent(PlaybackListener.ACTION_ON_PROGRESS_CHANGED);
-                i.putExtra(PlaybackListener.EXTRA_KEY_CURRENT_TIME, mMediaPlayer.getCurrentPosition());
-                mLocalBroadcastManager.sendBroadcast(i);
+    /**
+     * Execute the queued commands in order, on the player handler thread.
+     * <p/>
+     * Consecutive track changes are executed at once, only the last reached track is prepared.
+     * While skipping rapidly, track changes wait for the end of the settle delay without delaying
+     * the commands queued behind them.
+     */
+    private void executeCommands() {
+        mIsExecutionScheduled.set(false);
+        PlaybackCommand command = mCommands.poll();
+        while (command != null) {
+            if (isTrackChange(command)) {
+                mSettlingTrackChanges.add(command);
+                // merged commands never change kind, the peeked track change is the polled one.
+                while (isTrackChange(mCommands.peek())) {
+                    mSettlingTrackChanges.add(mCommands.poll());
+                }
+                // when already waiting, merged with the pending track changes.
+                if (!mPlayerHandler.hasMessages(WHAT_SETTLE_TRACK_CHANGES)) {
+                    long settleDelay = mLastTrackChangeTime + TRACK_CHANGE_SETTLE_MILLI
+                            - SystemClock.elapsedRealtime();
+                    if (mIsPreparing && settleDelay > 0) {
+                        // skipping rapidly, wait for the user to land on a track before preparing it.
+                        mPlayerHandler.sendEmptyMessageDelayed(WHAT_SETTLE_TRACK_CHANGES, settleDelay);
+                    } else {
+                        executeTrackChanges(true);
+                    }
+                }
+            } else {
+                int what = command.getWhat();
+                if (!mSettlingTrackChanges.isEmpty() && what != WHAT_HINT && what != WHAT_REFRESH_NEXT_TRACK) {
+                    // the user landed on a track : execute the pending track changes first to keep
+                    // the order of the commands, only moving the playlist when stopping.
+                    executeTrackChanges(what != WHAT_STOP_PLAYER && what != WHAT_CLEAR_PLAYER);
+                }
+                executeCommand(command);
             }
+            command = mCommands.poll();
+        }
+    }
 
-            @Override
-            public void onFinish() {
-                Intent i = new Intent(PlaybackListener.ACTION_ON_PROGRESS_CHANGED);
-                i.putExtra(PlaybackListener.EXTRA_KEY_CURRENT_TIME
-                        , (int) mPlayerPlaylist.getCurrentTrack().getDurationInMilli());
-                mLocalBroadcastManager.sendBroadcast(i);
-            }
-        };
-        mCountDown.start();
+    /**
+     * Execute the pending track changes at once.
+     *
+     * @param play true to prepare the reached track, false to only move the playlist.
+     */
+    private void executeTrackChanges(boolean play) {
+        mPlayerHandler.removeMessages(WHAT_SETTLE_TRACK_CHANGES);
+        SoundCloudTrack track = null;
+        long requestTime = 0;
+        for (PlaybackCommand command : mSettlingTrackChanges) {
+            track = applyTrackChange(command, track);
+            requestTime = command.getIssueTime();
+        }
+        mSettlingTrackChanges.clear();
+        if (play) {
+            mLastTrackChangeTime = SystemClock.elapsedRealtime();
+            playTrack(track, requestTime);
+        }
     }
 
     /**
-     * Pause the internal timer used to propagate the playback position.
+     * Execute a command which doesn't change the current track.
+     *
+     * @param command command to execute.
      */
-    private void pauseTimer() {
-        if (mCountDown != null) {
-            mCountDown.cancel();
-            mCountDown = null;
+    private void executeCommand(PlaybackCommand command) {
+        if (command.getClientId() != null) {
+            mSoundCloundClientId = command.getClientId();
+        }
+        switch (command.getWhat()) {
+            case WHAT_PAUSE_PLAYER:
+                pause();
+                break;
+            case WHAT_RESUME_PLAYER:
+                resume();
+                break;
+            case WHAT_TOGGLE_PLAYBACK:
+                if (mIsPaused) {
+                    resume();
+                } else {
+                    pause();
+                }
+                break;
+            case WHAT_STOP_PLAYER:
+                stopPlayer();
+                break;
+            case WHAT_SEEK_TO:
+                seekToPosition(command.getMilli(), command.getIssueTime());
+                break;
+            case WHAT_CLEAR_PLAYER:
+                shutdown();
+                break;
+            case WHAT_HINT:
+                hintTrack(command.getTrack());
+                break;
+            case WHAT_REFRESH_NEXT_TRACK:
+                refreshNextTrack();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command : " + command.getWhat());
         }
     }
 
     /**
-     * Resume the internal timer used to propagate the playback position.
+     * Move the playlist according to a track change command, without preparing the reached track.
+     *
+     * @param command track change command.
+     * @param track   track reached by the previous track changes, null if none.
+     * @return track reached once the command applied.
      */
-    private void resumeTimer() {
-        // restart timer for the remaining time amount.
-        startTimer(mPlayerPlaylist.getCurrentTrack().getDurationInMilli()
-                - mMediaPlayer.getCurrentPosition());
+    private SoundCloudTrack applyTrackChange(PlaybackCommand command, SoundCloudTrack track) {
+        if (command.getClientId() != null) {
+            mSoundCloundClientId = command.getClientId();
+        }
+        SoundCloudTrack reached = track;
+        switch (command.getWhat()) {
+            case WHAT_PLAY:
+                mIsGapless = command.isGapless();
+                configureStreamCache(command.getStreamCacheSize());
+                mClockResyncInterval = command.getClockResyncInterval();
+                reached = command.getTrack();
+                break;
+            case WHAT_NEXT_TRACK:
+                for (int i = 0; i < command.getCount(); i++) {
+                    reached = mPlayerPlaylist.next();
+                }
+                break;
+            case WHAT_PREVIOUS_TRACK:
+                for (int i = 0; i < command.getCount(); i++) {
+                    reached = mPlayerPlaylist.previous();
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Not a track change : " + command.getWhat());
+        }
+        return reached;
     }
 
     /**
-     * Pause the internal timer used to propagate the playback position.
+     * Used to know if a command changes the current track.
+     *
+     * @param command command, may be null.
+     * @return true for play, next and previous commands.
      */
-    private void stopTimer() {
-        if (mCountDown != null) {
-            mCountDown.cancel();
-            mCountDown = null;
+    private static boolean isTrackChange(PlaybackCommand command) {
+        if (command == null) {
+            return false;
         }
+        int what = command.getWhat();
+        return what == WHAT_PLAY || what == WHAT_NEXT_TRACK || what == WHAT_PREVIOUS_TRACK;
+    }
+
+    /**
+     * Stop the service, commands received meanwhile are refused so that the clients start it again.
+     */
+    private void shutdown() {
+        mIsStopping = true;
+        stopSelf();
+    }
+
+    /**
+     * Publish the playback clock as playing and schedule its periodic resync.
+     */
+    private void startClock() {
+        mPlayerHandler.removeCallbacks(mClockResync);
+        publishClock(PlaybackClock.STATE_PLAYING, mEngine.getCurrentPosition());
+        mPlayerHandler.postDelayed(mClockResync, mClockResyncInterval);
+    }
+
+    /**
+     * Publish the playback clock as stalled and stop its periodic resync.
+     *
+     * @param state    {@link PlaybackClock#STATE_PAUSED} or {@link PlaybackClock#STATE_BUFFERING}
+     * @param position position at which the playback stalled, in milli.
+     */
+    private void pauseClock(int state, int position) {
+        mPlayerHandler.removeCallbacks(mClockResync);
+        publishClock(state, position);
+    }
+
+    /**
+     * Publish the end of the current track.
+     */
+    private void completeClock() {
+        SoundCloudTrack track = mPlayerPlaylist.getCurrentTrack();
+        int duration = track == null ? 0 : (int) track.getDurationInMilli();
+        dispatchEvent(PlaybackEventBus.EVENT_PROGRESS_CHANGED, null, duration);
+        mPlayerHandler.removeCallbacks(mClockResync);
+        publishClock(PlaybackClock.STATE_STOPPED, duration);
+    }
+
+    /**
+     * Publish the playback clock as stopped and stop its periodic resync.
+     */
+    private void stopClock() {
+        mPlayerHandler.removeCallbacks(mClockResync);
+        publishClock(PlaybackClock.STATE_STOPPED, 0);
+    }
+
+    /**
+     * Correct the drift of the playback clock and propagate the progress.
+     *
+     * @param resync runnable to schedule for the next resync.
+     */
+    private void resyncClock(Runnable resync) {
+        int position = mEngine.getCurrentPosition();
+        dispatchEvent(PlaybackEventBus.EVENT_PROGRESS_CHANGED, null, position);
+        publishClock(PlaybackClock.STATE_PLAYING, position);
+        SoundCloudTrack track = mPlayerPlaylist.getCurrentTrack();
+        if (track != null && position < track.getDurationInMilli()) {
+            mPlayerHandler.postDelayed(resync, mClockResyncInterval);
+        }
+    }
+
+    /**
+     * Publish a new snapshot of the playback clock.
+     *
+     * @param state    one of the {@link PlaybackClock} states.
+     * @param position playback position, in milli.
+     */
+    private void publishClock(int state, int position) {
+        SoundCloudTrack track = mPlayerPlaylist.getCurrentTrack();
+        long duration = track == null ? 0 : track.getDurationInMilli();
+        PlaybackClock clock = new PlaybackClock(state, position, duration, SystemClock.elapsedRealtime());
+        mEventBus.post(PlaybackEventBus.EVENT_CLOCK_CHANGED, clock, 0);
     }
 
     /**
@@ -866,31 +1506,17 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
         @Override
         public void handleMessage(Message msg) {
             super.handleMessage(msg);
-            Bundle data = msg.getData();
             switch (msg.what) {
-                case WHAT_PLAY:
-                    playTrack(((SoundCloudTrack) data.getParcelable(BUNDLE_KEY_SOUND_CLOUD_TRACK)));
+                case WHAT_EXECUTE_COMMANDS:
+                    executeCommands();
                     break;
-                case WHAT_PAUSE_PLAYER:
-                    pause();
-                    break;
-                case WHAT_RESUME_PLAYER:
-                    resume();
-                    break;
-                case WHAT_STOP_PLAYER:
-                    stopPlayer();
-                    break;
-                case WHAT_NEXT_TRACK:
-                    nextTrack();
-                    break;
-                case WHAT_PREVIOUS_TRACK:
-                    previousTrack();
-                    break;
-                case WHAT_SEEK_TO:
-                    seekToPosition(data.getInt(BUNDLE_KEY_SOUND_CLOUD_TRACK_POSITION));
+                case WHAT_SETTLE_TRACK_CHANGES:
+                    if (!mSettlingTrackChanges.isEmpty()) {
+                        executeTrackChanges(true);
+                    }
                     break;
-                case WHAT_CLEAR_PLAYER:
-                    stopSelf();
+                case WHAT_COMPLETE_TRACK:
+                    playTrack(mPlayerPlaylist.advance(), SystemClock.elapsedRealtime());
                     break;
                 default:
                     break;
@@ -898,6 +1524,28 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
         }
     }
 
+    /**
+     * Local binder used by the in-process clients to send commands to the player.
+     * <p/>
+     * Commands are merged with the pending ones and executed in order by the player handler.
+     */
+    final class PlaybackBinder extends Binder {
+
+        /**
+         * Queue a command, can be called from any thread.
+         *
+         * @param command command to execute.
+         * @return false if the service is being stopped and the command has been refused.
+         */
+        boolean execute(PlaybackCommand command) {
+            if (mIsStopping) {
+                return false;
+            }
+            enqueue(command);
+            return true;
+        }
+    }
+
     /**
      * Callback implementation to catch media session events.
      */
@@ -906,64 +1554,51 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
 
         @Override
         public void onPlay() {
-            resume();
+            enqueue(PlaybackCommand.resume(null));
         }
 
         @Override
         public void onPause() {
-            pause();
+            enqueue(PlaybackCommand.pause(null));
         }
 
         @Override
         public void onSkipToNext() {
-            nextTrack();
+            enqueue(PlaybackCommand.next());
         }
 
         @Override
         public void onSkipToPrevious() {
-            previousTrack();
+            enqueue(PlaybackCommand.previous());
         }
 
         @Override
         public void onPlayPauseToggle() {
-            if (mIsPaused) {
-                resume();
-            } else {
-                pause();
-            }
+            enqueue(PlaybackCommand.toggle());
         }
     }
 
     /**
-     * Custom target used to load track artwork asynchronously.
+     * Custom callback used to load track artwork asynchronously.
      */
-    private class MediaSessionArtworkTarget implements Target {
+    private class MediaSessionArtworkCallback implements ArtworkLoader.Callback {
 
         @Override
-        public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom from) {
+        public void onArtworkLoaded(Bitmap artwork) {
             // update meta data with artwork.
             SoundCloudTrack track = mPlayerPlaylist.getCurrentTrack();
-            if (track != null) {
-                // On KitKat and bellow, copy bitmap to avoid IllegalStateException
-                // from the remove control client on KitKat (IRemoteControlDisplay.java:340)
-                // The MediaSession seems to recycle the bitmap, so be sure to pass a copy.
-                if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.KITKAT) {
-                    mMediaSession.setMetaData(mPlayerPlaylist.getCurrentTrack(),
-                            bitmap.copy(bitmap.getConfig(), false));
-                } else {
-                    mMediaSession.setMetaData(mPlayerPlaylist.getCurrentTrack(), bitmap);
-                }
+            if (track == null) {
+                mArtworkLoader.release(artwork);
+                return;
             }
-
-        }
-
-        @Override
-        public void onBitmapFailed(Drawable errorDrawable) {
-
-        }
-
-        @Override
-        public void onPrepareLoad(Drawable placeHolderDrawable) {
+            mMediaSession.setMetaData(track, artwork);
+            // On KitKat and bellow, the remote control client recycles the previous bitmap
+            // (IRemoteControlDisplay.java:340) : the delivered bitmaps aren't shared, so
+            // they are simply never given back to the loader.
+            if (Build.VERSION.SDK_INT > Build.VERSION_CODES.KITKAT) {
+                mArtworkLoader.release(mMediaSessionArtwork);
+            }
+            mMediaSessionArtwork = artwork;
         }
     }
 
@@ -989,7 +1624,7 @@ public class PlaybackService extends Service implements MediaPlayer.OnErrorListe
                 return;
             }
 
-            stopSelf();
+            shutdown();
         }
     }
 }
@@ -0,0 +1,142 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import java.util.ArrayList;
+
+import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
+
+/**
+ * Listeners of the {@link CheerleaderPlayer}, notified of the events of the {@link PlaybackService}.
+ * <p/>
+ * Registered on the {@link PlaybackEventBus} by the player, keeps its state and its playback
+ * clock up to date before notifying the {@link CheerleaderPlayerListener}s.
+ */
+final class PlayerListeners extends PlaybackListener {
+
+    /**
+     * Player whose state follows the events.
+     */
+    private final CheerleaderPlayer mPlayer;
+
+    /**
+     * Listeners which should be notified of playback events.
+     */
+    private final ArrayList<CheerleaderPlayerListener> mListeners;
+
+    /**
+     * Last published snapshot of the playback clock.
+     */
+    private PlaybackClock mPlaybackClock;
+
+    /**
+     * Listeners of the {@link CheerleaderPlayer}.
+     *
+     * @param player player whose state follows the events.
+     */
+    PlayerListeners(CheerleaderPlayer player) {
+        mPlayer = player;
+        mListeners = new ArrayList<>();
+        mPlaybackClock = PlaybackClock.STOPPED;
+    }
+
+    /**
+     * Register a listener to catch player events.
+     *
+     * @param listener listener to register.
+     */
+    void add(CheerleaderPlayerListener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Unregister a listener used to catch player events.
+     *
+     * @param listener listener to unregister.
+     */
+    void remove(CheerleaderPlayerListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Unregister all the listeners.
+     */
+    void clear() {
+        mListeners.clear();
+    }
+
+    /**
+     * Retrieve the last snapshot of the playback clock.
+     *
+     * @return playback clock.
+     */
+    PlaybackClock getPlaybackClock() {
+        return mPlaybackClock;
+    }
+
+    @Override
+    protected void onPlay(SoundCloudTrack track) {
+        super.onPlay(track);
+        mPlayer.onStateChanged(CheerleaderPlayer.STATE_PLAYING);
+        int position = PlayerPlaylist.getInstance().getCurrentTrackIndex();
+        for (CheerleaderPlayerListener listener : mListeners) {
+            listener.onPlayerPlay(track, position);
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mPlayer.onStateChanged(CheerleaderPlayer.STATE_PAUSED);
+        for (CheerleaderPlayerListener listener : mListeners) {
+            listener.onPlayerPause();
+        }
+    }
+
+    @Override
+    protected void onPlayerDestroyed() {
+        super.onPlayerDestroyed();
+        mPlayer.onStateChanged(CheerleaderPlayer.STATE_STOPPED);
+        mPlaybackClock = PlaybackClock.STOPPED;
+        for (CheerleaderPlayerListener listener : mListeners) {
+            listener.onPlayerDestroyed();
+        }
+        mPlayer.onServiceDestroyed();
+    }
+
+    @Override
+    protected void onSeekTo(int milli) {
+        super.onSeekTo(milli);
+        for (CheerleaderPlayerListener listener : mListeners) {
+            listener.onPlayerSeekTo(milli);
+        }
+    }
+
+    @Override
+    protected void onBufferingStarted() {
+        super.onBufferingStarted();
+        for (CheerleaderPlayerListener listener : mListeners) {
+            listener.onBufferingStarted();
+        }
+    }
+
+    @Override
+    protected void onBufferingEnded() {
+        super.onBufferingEnded();
+        for (CheerleaderPlayerListener listener : mListeners) {
+            listener.onBufferingEnded();
+        }
+    }
+
+    @Override
+    protected void onClockChanged(PlaybackClock clock) {
+        super.onClockChanged(clock);
+        mPlaybackClock = clock;
+    }
+
+    @Override
+    protected void onProgressChanged(int milli) {
+        super.onProgressChanged(milli);
+        for (CheerleaderPlayerListener listener : mListeners) {
+            listener.onProgressChanged(milli);
+        }
+    }
+}
@@ -3,35 +3,103 @@ package fr.tvbarthel.cheerleader.library.player;
 import java.util.ArrayList;
 import java.util.List;
 
-import fr.tvbarthel.cheerleader.library.client.SoundCloudPlaylist;
 import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
 
 /**
  * Used to manage the player playlist.
+ * <p/>
+ * Tracks are kept in a {@link PlaylistIndex} so that positional edits and lookups by track run
+ * in logarithmic time, even for very large queues.
+ * <p/>
+ * Shuffle relies on a lazily drawn {@link PlaylistShuffle} permutation: toggling it doesn't copy
+ * the playlist and moving to the next track only draws one more slot.
+ * <p/>
+ * Each edit of the tracks or of the play modes publishes a new {@link PlaylistSnapshot} sharing
+ * the structure of the index, which lets readers on other threads access the playlist without
+ * copying nor locking.
+ * <p/>
+ * Edited by the {@link CheerleaderPlayer} on the main thread while the {@link PlaybackService}
+ * moves the current track from its player thread. Each operation holds the playlist lock for a
+ * logarithmic time at most : a batch of edits releases it between two edits, the player thread
+ * never waits for the whole batch. The snapshot and the current track are published and read
+ * without locking.
  */
 final class PlayerPlaylist {
 
+    /**
+     * Repeat the whole playlist, the first track follows the last one.
+     */
+    static final int REPEAT_ALL = 0;
+
+    /**
+     * Repeat the current track once completed, skipping still moves to the next one.
+     */
+    static final int REPEAT_ONE = 1;
+
     /**
      * Singleton pattern.
      */
     private static PlayerPlaylist sInstance;
 
     /**
-     * Current playlist.
+     * Tracks of the current playlist.
      */
-    private SoundCloudPlaylist mSoundCloudPlaylist;
+    private PlaylistIndex mTracks;
 
     /**
      * Index of the current track.
      */
     private int mCurrentTrackIndex;
 
+    /**
+     * Track at the current index, published for the readers of the other threads.
+     */
+    private volatile SoundCloudTrack mCurrentTrack;
+
+    /**
+     * Play order used while shuffle is enabled.
+     */
+    private PlaylistShuffle mShuffle;
+
+    /**
+     * Used to know if the tracks are played in a random order.
+     */
+    private boolean mIsShuffled;
+
+    /**
+     * Current repeat mode, {@link #REPEAT_ALL} or {@link #REPEAT_ONE}
+     */
+    private int mRepeatMode;
+
+    /**
+     * Last published version of the tracks.
+     */
+    private volatile PlaylistSnapshot mSnapshot;
+
+    /**
+     * Version of the tracks, incremented on each publication.
+     */
+    private long mVersion;
+
+    /**
+     * Used to know if a batch of edits is being applied, the snapshot is then published once.
+     */
+    private boolean mIsEditing;
+
+    /**
+     * Used to know if the playlist changed since the last published snapshot.
+     */
+    private boolean mHasPendingChanges;
+
     /**
      * Singleton.
      */
     private PlayerPlaylist() {
-        mSoundCloudPlaylist = new SoundCloudPlaylist();
+        mSnapshot = PlaylistSnapshot.EMPTY;
+        mTracks = new PlaylistIndex();
+        mShuffle = new PlaylistShuffle();
         mCurrentTrackIndex = -1;
+        mRepeatMode = REPEAT_ALL;
     }
 
     /**
@@ -39,7 +107,7 @@ final class PlayerPlaylist {
      *
      * @return instance.
      */
-    public static PlayerPlaylist getInstance() {
+    public static synchronized PlayerPlaylist getInstance() {
         if (sInstance == null) {
             sInstance = new PlayerPlaylist();
         }
@@ -47,24 +115,62 @@ final class PlayerPlaylist {
     }
 
     /**
-     * Retrieve the current playlist.
+     * Retrieve a copy of the tracks of the current playlist.
+     *
+     * @return tracks, in playlist order.
+     */
+    public ArrayList<SoundCloudTrack> getTracks() {
+        PlaylistIndex.Node root;
+        synchronized (this) {
+            root = mTracks.freeze();
+        }
+        // frozen nodes are never modified, the copy doesn't need the lock.
+        return PlaylistIndex.toList(root);
+    }
+
+    /**
+     * Retrieve the last published version of the tracks.
+     * <p/>
+     * Can be called from any thread.
+     *
+     * @return immutable snapshot of the tracks, in playlist order.
+     */
+    public PlaylistSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Retrieve the track at a given position.
+     *
+     * @param position position of the track in the playlist.
+     * @return track or null if the position is out of the playlist.
+     */
+    public synchronized SoundCloudTrack get(int position) {
+        if (position < 0 || position >= mTracks.size()) {
+            return null;
+        }
+        return mTracks.get(position);
+    }
+
+    /**
+     * Retrieve the position of a track in the playlist.
      *
-     * @return current playlist.
+     * @param track track to look for.
+     * @return position of the first occurrence of the track or -1 if not in the playlist.
      */
-    public SoundCloudPlaylist getPlaylist() {
-        return mSoundCloudPlaylist;
+    public synchronized int indexOf(SoundCloudTrack track) {
+        return mTracks.indexOf(track);
     }
 
     /**
      * Return the current track.
+     * <p/>
+     * Can be called from any thread.
      *
      * @return current track or null if none has been added to the player playlist.
      */
     public SoundCloudTrack getCurrentTrack() {
-        if (mCurrentTrackIndex > -1 && mCurrentTrackIndex < mSoundCloudPlaylist.getTracks().size()) {
-            return mSoundCloudPlaylist.getTracks().get(mCurrentTrackIndex);
-        }
-        return null;
+        return mCurrentTrack;
     }
 
     /**
@@ -72,7 +178,7 @@ final class PlayerPlaylist {
      *
      * @return current track index.
      */
-    public int getCurrentTrackIndex() {
+    public synchronized int getCurrentTrackIndex() {
         return mCurrentTrackIndex;
     }
 
@@ -81,8 +187,8 @@ final class PlayerPlaylist {
      *
      * @param track track to be added.
      */
-    public void add(SoundCloudTrack track) {
-        add(mSoundCloudPlaylist.getTracks().size(), track);
+    public synchronized void add(SoundCloudTrack track) {
+        add(mTracks.size(), track);
     }
 
     /**
@@ -91,9 +197,11 @@ final class PlayerPlaylist {
      * @param tracks tracks to add.
      */
     public void addAll(List<SoundCloudTrack> tracks) {
+        beginEdit();
         for (SoundCloudTrack track : tracks) {
-            add(mSoundCloudPlaylist.getTracks().size(), track);
+            add(track);
         }
+        endEdit();
     }
 
     /**
@@ -102,11 +210,18 @@ final class PlayerPlaylist {
      * @param position position of the track to insert
      * @param track    track to insert.
      */
-    public void add(int position, SoundCloudTrack track) {
+    public synchronized void add(int position, SoundCloudTrack track) {
         if (mCurrentTrackIndex == -1) {
             mCurrentTrackIndex = 0;
+        } else if (position <= mCurrentTrackIndex && mTracks.size() > 0) {
+            // current track translated on the right.
+            mCurrentTrackIndex++;
         }
-        mSoundCloudPlaylist.addTrack(position, track);
+        mTracks.add(position, track);
+        if (mIsShuffled) {
+            mShuffle.onAdded();
+        }
+        onPlaylistChanged();
     }
 
     /**
@@ -117,49 +232,207 @@ final class PlayerPlaylist {
      * @param trackIndex index of the track to be removed.
      * @return track removed or null if given index can't be found.
      */
-    public SoundCloudTrack remove(int trackIndex) {
+    public synchronized SoundCloudTrack remove(int trackIndex) {
 
         SoundCloudTrack removedTrack = null;
-        ArrayList<SoundCloudTrack> tracks = mSoundCloudPlaylist.getTracks();
 
         // check if track is in the playlist
-        if (trackIndex >= 0 && trackIndex < tracks.size()) {
-            removedTrack = tracks.remove(trackIndex);
+        if (trackIndex >= 0 && trackIndex < mTracks.size()) {
+            int removedSlot = mTracks.slotAt(trackIndex);
+            int lastSlot = mTracks.size() - 1;
+            removedTrack = mTracks.remove(trackIndex);
+            int size = mTracks.size();
 
-            if (tracks.size() == 0) {
+            if (mIsShuffled) {
+                // the shuffle order decides which track becomes the current one.
+                mShuffle.onRemoved(removedSlot, lastSlot);
+                int currentSlot = mShuffle.current();
+                mCurrentTrackIndex = currentSlot < 0 ? 0 : mTracks.positionOfSlot(currentSlot);
+            } else if (size == 0) {
                 // track list empty after removal
                 mCurrentTrackIndex = 0;
-            } else if (trackIndex == tracks.size()) {
-                // last song removed
-                mCurrentTrackIndex = (mCurrentTrackIndex - 1) % tracks.size();
+            } else if (trackIndex == size && trackIndex == mCurrentTrackIndex) {
+                // last song removed while being the current one
+                mCurrentTrackIndex = (mCurrentTrackIndex - 1) % size;
             } else if (trackIndex >= 0 && trackIndex < mCurrentTrackIndex) {
                 // tracks translated on the right after a deletion before current played one.
-                mCurrentTrackIndex = (mCurrentTrackIndex - 1) % tracks.size();
+                mCurrentTrackIndex = (mCurrentTrackIndex - 1) % size;
             }
+            onPlaylistChanged();
         }
         return removedTrack;
     }
 
+    /**
+     * Move a track to another position of the playlist.
+     * <p/>
+     * The shuffle order isn't altered by a move.
+     *
+     * @param from position of the track to move.
+     * @param to   position of the track once moved.
+     */
+    public synchronized void move(int from, int to) {
+        mTracks.move(from, to);
+        if (mCurrentTrackIndex == from) {
+            mCurrentTrackIndex = to;
+        } else if (from < mCurrentTrackIndex && to >= mCurrentTrackIndex) {
+            // current track translated on the left.
+            mCurrentTrackIndex--;
+        } else if (from > mCurrentTrackIndex && to <= mCurrentTrackIndex) {
+            // current track translated on the right.
+            mCurrentTrackIndex++;
+        }
+        onPlaylistChanged();
+    }
+
+    /**
+     * Remove all the tracks of the playlist.
+     *
+     * @return removed tracks, in playlist order.
+     */
+    public ArrayList<SoundCloudTrack> clear() {
+        PlaylistIndex.Node removed;
+        synchronized (this) {
+            removed = mTracks.freeze();
+            mTracks.clear();
+            mShuffle.reset(0, -1);
+            mCurrentTrackIndex = -1;
+            onPlaylistChanged();
+        }
+        return PlaylistIndex.toList(removed);
+    }
+
     /**
      * Retrieve the next track.
+     * <p/>
+     * While shuffled, tracks aren't repeated until every track of the playlist has been played.
+     *
+     * @return next track to be played or null if the playlist is empty.
+     */
+    public synchronized SoundCloudTrack next() {
+        if (mTracks.size() == 0) {
+            return null;
+        }
+        if (mIsShuffled) {
+            mCurrentTrackIndex = mTracks.positionOfSlot(mShuffle.next());
+        } else {
+            mCurrentTrackIndex = (mCurrentTrackIndex + 1) % mTracks.size();
+        }
+        refreshCurrentTrack();
+        return mCurrentTrack;
+    }
+
+    /**
+     * Retrieve the track to play once the current one has been completed.
+     * <p/>
+     * Unlike {@link #next()}, follows the repeat mode.
+     *
+     * @return track to be played or null if the playlist is empty.
+     */
+    public synchronized SoundCloudTrack advance() {
+        SoundCloudTrack currentTrack = getCurrentTrack();
+        if (mRepeatMode == REPEAT_ONE && currentTrack != null) {
+            return currentTrack;
+        }
+        return next();
+    }
+
+    /**
+     * Retrieve the track which will be played once the current one has been completed, without
+     * moving to it.
      *
-     * @return next track to be played.
+     * @return next track or null if the playlist is empty.
      */
+    public synchronized SoundCloudTrack peekNext() {
+        if (mTracks.size() == 0) {
+            return null;
+        }
+        SoundCloudTrack currentTrack = getCurrentTrack();
+        if (mRepeatMode == REPEAT_ONE && currentTrack != null) {
+            return currentTrack;
+        }
+        if (mIsShuffled) {
+            return mTracks.get(mTracks.positionOfSlot(mShuffle.peek(1)[0]));
+        }
+        return mTracks.get((mCurrentTrackIndex + 1) % mTracks.size());
+    }
 
-    public SoundCloudTrack next() {
-        mCurrentTrackIndex = (mCurrentTrackIndex + 1) % mSoundCloudPlaylist.getTracks().size();
-        return mSoundCloudPlaylist.getTracks().get(mCurrentTrackIndex);
+    /**
+     * Retrieve the tracks which will be played after the current one, without moving to them.
+     *
+     * @param count maximum number of tracks to retrieve.
+     * @return upcoming tracks, in play order.
+     */
+    public synchronized List<SoundCloudTrack> peekUpcoming(int count) {
+        if (mIsShuffled) {
+            int[] slots = mShuffle.peek(Math.min(count, mTracks.size()));
+            ArrayList<SoundCloudTrack> upcoming = new ArrayList<>(slots.length);
+            for (int slot : slots) {
+                upcoming.add(mTracks.get(mTracks.positionOfSlot(slot)));
+            }
+            return upcoming;
+        }
+        int size = Math.min(count, mTracks.size());
+        ArrayList<SoundCloudTrack> upcoming = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            upcoming.add(mTracks.get((mCurrentTrackIndex + i) % mTracks.size()));
+        }
+        return upcoming;
     }
 
     /**
      * Retrieve the previous track.
+     * <p/>
+     * While shuffled, goes back in the order in which the tracks have been played.
+     *
+     * @return previous track to be played or null if the playlist is empty.
+     */
+    public synchronized SoundCloudTrack previous() {
+        if (mTracks.size() == 0) {
+            return null;
+        }
+        if (mIsShuffled) {
+            mCurrentTrackIndex = mTracks.positionOfSlot(mShuffle.previous());
+        } else {
+            int tracks = mTracks.size();
+            mCurrentTrackIndex = (tracks + mCurrentTrackIndex - 1) % tracks;
+        }
+        refreshCurrentTrack();
+        return mCurrentTrack;
+    }
+
+    /**
+     * Enable or disable the shuffle.
+     * <p/>
+     * Enabling the shuffle starts a new random order, the current track being considered as
+     * already played.
+     *
+     * @param enable true to play the tracks in a random order.
+     */
+    public synchronized void setShuffle(boolean enable) {
+        if (enable && !mIsShuffled) {
+            boolean hasCurrent = mCurrentTrackIndex >= 0 && mCurrentTrackIndex < mTracks.size();
+            mShuffle.reset(mTracks.size(), hasCurrent ? mTracks.slotAt(mCurrentTrackIndex) : -1);
+        }
+        if (mIsShuffled != enable) {
+            mIsShuffled = enable;
+            onPlaylistChanged();
+        }
+    }
+
+    /**
+     * Define the repeat mode.
      *
-     * @return previous track to be played.
+     * @param repeatMode {@link #REPEAT_ALL} or {@link #REPEAT_ONE}
      */
-    public SoundCloudTrack previous() {
-        int tracks = mSoundCloudPlaylist.getTracks().size();
-        mCurrentTrackIndex = (tracks + mCurrentTrackIndex - 1) % tracks;
-        return mSoundCloudPlaylist.getTracks().get(mCurrentTrackIndex);
+    public synchronized void setRepeatMode(int repeatMode) {
+        if (repeatMode != REPEAT_ALL && repeatMode != REPEAT_ONE) {
+            throw new IllegalArgumentException("Unknown repeat mode : " + repeatMode);
+        }
+        if (mRepeatMode != repeatMode) {
+            mRepeatMode = repeatMode;
+            onPlaylistChanged();
+        }
     }
 
     /**
@@ -167,8 +440,8 @@ final class PlayerPlaylist {
      *
      * @return Number of tracks in the playlist.
      */
-    public int size() {
-        return mSoundCloudPlaylist.getTracks().size();
+    public synchronized int size() {
+        return mTracks.size();
     }
 
     /**
@@ -176,8 +449,8 @@ final class PlayerPlaylist {
      *
      * @return true if the current playlist is empty.
      */
-    public boolean isEmpty() {
-        return mSoundCloudPlaylist.getTracks().size() == 0;
+    public synchronized boolean isEmpty() {
+        return mTracks.size() == 0;
     }
 
 
@@ -187,10 +460,56 @@ final class PlayerPlaylist {
      *
      * @param playingTrackPosition current playing song index.
      */
-    void setPlayingTrack(int playingTrackPosition) {
-        if (playingTrackPosition < 0 || playingTrackPosition >= mSoundCloudPlaylist.getTracks().size()) {
+    synchronized void setPlayingTrack(int playingTrackPosition) {
+        if (playingTrackPosition < 0 || playingTrackPosition >= mTracks.size()) {
             throw new IllegalArgumentException("No tracks a the position " + playingTrackPosition);
         }
         mCurrentTrackIndex = playingTrackPosition;
+        if (mIsShuffled) {
+            mShuffle.moveTo(mTracks.slotAt(playingTrackPosition));
+        }
+        refreshCurrentTrack();
+    }
+
+    /**
+     * Start a batch of edits, the snapshot will be published once the batch ended.
+     * private package.
+     */
+    synchronized void beginEdit() {
+        mIsEditing = true;
+    }
+
+    /**
+     * End a batch of edits and publish the snapshot if the playlist changed.
+     * private package.
+     */
+    synchronized void endEdit() {
+        mIsEditing = false;
+        if (mHasPendingChanges) {
+            onPlaylistChanged();
+        }
+    }
+
+    /**
+     * Publish a new snapshot of the playlist, or delay it until the end of the current batch.
+     */
+    private void onPlaylistChanged() {
+        // the current track is published even during a batch, its index has already moved.
+        refreshCurrentTrack();
+        if (mIsEditing) {
+            mHasPendingChanges = true;
+            return;
+        }
+        mHasPendingChanges = false;
+        mVersion++;
+        mSnapshot = new PlaylistSnapshot(mTracks.freeze(), mVersion, mIsShuffled, mRepeatMode);
+    }
+
+    /**
+     * Publish the track at the current index.
+     */
+    private void refreshCurrentTrack() {
+        boolean hasCurrent = mCurrentTrackIndex >= 0 && mCurrentTrackIndex < mTracks.size();
+        mCurrentTrack = hasCurrent ? mTracks.get(mCurrentTrackIndex) : null;
     }
 }
@@ -0,0 +1,289 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
+
+/**
+ * Compact description of the changes applied to the player playlist by a single edit.
+ * <p/>
+ * Changes are ordered and each one is expressed in the positions of the playlist as left by the
+ * previous ones, which matches the way list adapters expect to be notified of range changes.
+ * Consecutive insertions or removals are merged in a single range.
+ */
+public final class PlaylistChangeSet {
+
+    /**
+     * Tracks have been inserted.
+     */
+    public static final int TYPE_INSERTED = 0;
+
+    /**
+     * Tracks have been removed.
+     */
+    public static final int TYPE_REMOVED = 1;
+
+    /**
+     * Tracks have been moved.
+     */
+    public static final int TYPE_MOVED = 2;
+
+    /**
+     * Ordered changes.
+     */
+    private final ArrayList<Change> mChanges;
+
+    /**
+     * Used to know if the playlist is empty once the changes applied.
+     */
+    private boolean mIsPlaylistEmpty;
+
+    /**
+     * Compact description of the changes applied to the player playlist by a single edit.
+     */
+    PlaylistChangeSet() {
+        mChanges = new ArrayList<>();
+    }
+
+    /**
+     * Retrieve the changes.
+     *
+     * @return changes, in the order they have been applied.
+     */
+    public List<Change> getChanges() {
+        return Collections.unmodifiableList(mChanges);
+    }
+
+    /**
+     * Used to know if the edit didn't change anything.
+     *
+     * @return true if there is no change.
+     */
+    public boolean isEmpty() {
+        return mChanges.isEmpty();
+    }
+
+    /**
+     * Used to know if the playlist is empty once the changes applied.
+     *
+     * @return true if the playlist is empty.
+     */
+    public boolean isPlaylistEmpty() {
+        return mIsPlaylistEmpty;
+    }
+
+    /**
+     * Record the insertion of a track.
+     *
+     * @param position position of the inserted track.
+     * @param track    inserted track.
+     */
+    void onInserted(int position, SoundCloudTrack track) {
+        Change last = getLastChange();
+        if (last != null && last.mType == TYPE_INSERTED
+                && position >= last.mPosition && position <= last.mPosition + last.mCount) {
+            // extend the inserted range.
+            last.mTracks.add(position - last.mPosition, track);
+            last.mCount++;
+            return;
+        }
+        mChanges.add(new Change(TYPE_INSERTED, position, position, track));
+    }
+
+    /**
+     * Record the removal of a track.
+     *
+     * @param position position of the removed track.
+     * @param track    removed track.
+     */
+    void onRemoved(int position, SoundCloudTrack track) {
+        Change last = getLastChange();
+        if (last != null && last.mType == TYPE_INSERTED
+                && position >= last.mPosition && position < last.mPosition + last.mCount) {
+            // track inserted by the same edit, nothing to report.
+            last.mTracks.remove(position - last.mPosition);
+            last.mCount--;
+            if (last.mCount == 0) {
+                mChanges.remove(mChanges.size() - 1);
+            }
+        } else if (last != null && last.mType == TYPE_REMOVED && position == last.mPosition) {
+            // following track removed.
+            last.mTracks.add(track);
+            last.mCount++;
+        } else if (last != null && last.mType == TYPE_REMOVED && position == last.mPosition - 1) {
+            // preceding track removed.
+            last.mTracks.add(0, track);
+            last.mPosition--;
+            last.mToPosition--;
+            last.mCount++;
+        } else {
+            mChanges.add(new Change(TYPE_REMOVED, position, position, track));
+        }
+    }
+
+    /**
+     * Record the removal of a range of tracks.
+     *
+     * @param position position of the first removed track.
+     * @param tracks   removed tracks, in playlist order.
+     */
+    void onRemoved(int position, List<SoundCloudTrack> tracks) {
+        if (tracks.isEmpty()) {
+            return;
+        }
+        Change change = new Change(TYPE_REMOVED, position, position, tracks.get(0));
+        change.mTracks.addAll(tracks.subList(1, tracks.size()));
+        change.mCount = tracks.size();
+        mChanges.add(change);
+    }
+
+    /**
+     * Record the move of a range of tracks.
+     *
+     * @param from   position of the first track before the move.
+     * @param to     position of the first track once moved.
+     * @param tracks moved tracks, in playlist order.
+     */
+    void onMoved(int from, int to, List<SoundCloudTrack> tracks) {
+        if (tracks.isEmpty() || from == to) {
+            return;
+        }
+        Change change = new Change(TYPE_MOVED, from, to, tracks.get(0));
+        change.mTracks.addAll(tracks.subList(1, tracks.size()));
+        change.mCount = tracks.size();
+        mChanges.add(change);
+    }
+
+    /**
+     * Define if the playlist is empty once the changes applied.
+     *
+     * @param isPlaylistEmpty true if the playlist is empty.
+     */
+    void setPlaylistEmpty(boolean isPlaylistEmpty) {
+        mIsPlaylistEmpty = isPlaylistEmpty;
+    }
+
+    /**
+     * Retrieve the last recorded change.
+     *
+     * @return last change or null if none.
+     */
+    private Change getLastChange() {
+        return mChanges.isEmpty() ? null : mChanges.get(mChanges.size() - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "PlaylistChangeSet{"
+                + "changes=" + mChanges
+                + ", isPlaylistEmpty=" + mIsPlaylistEmpty
+                + '}';
+    }
+
+    /**
+     * Range of tracks inserted, removed or moved.
+     */
+    public static final class Change {
+
+        /**
+         * One of the TYPE_* constants.
+         */
+        private final int mType;
+
+        /**
+         * Position of the first track.
+         */
+        private int mPosition;
+
+        /**
+         * Position of the first track once moved.
+         */
+        private int mToPosition;
+
+        /**
+         * Number of tracks.
+         */
+        private int mCount;
+
+        /**
+         * Tracks of the range, in playlist order.
+         */
+        private final ArrayList<SoundCloudTrack> mTracks;
+
+        /**
+         * Range of tracks inserted, removed or moved.
+         *
+         * @param type       one of the TYPE_* constants.
+         * @param position   position of the first track.
+         * @param toPosition position of the first track once moved.
+         * @param track      first track of the range.
+         */
+        private Change(int type, int position, int toPosition, SoundCloudTrack track) {
+            mType = type;
+            mPosition = position;
+            mToPosition = toPosition;
+            mCount = 1;
+            mTracks = new ArrayList<>();
+            mTracks.add(track);
+        }
+
+        /**
+         * Type of the change.
+         *
+         * @return one of the TYPE_* constants.
+         */
+        public int getType() {
+            return mType;
+        }
+
+        /**
+         * Position of the first track of the range.
+         * <p/>
+         * For a removal or a move, position before the change.
+         *
+         * @return position.
+         */
+        public int getPosition() {
+            return mPosition;
+        }
+
+        /**
+         * Position of the first track of the range once moved.
+         *
+         * @return position, same as {@link #getPosition()} if not a move.
+         */
+        public int getToPosition() {
+            return mToPosition;
+        }
+
+        /**
+         * Number of tracks of the range.
+         *
+         * @return number of tracks.
+         */
+        public int getCount() {
+            return mCount;
+        }
+
+        /**
+         * Tracks of the range.
+         *
+         * @return tracks, in playlist order.
+         */
+        public List<SoundCloudTrack> getTracks() {
+            return Collections.unmodifiableList(mTracks);
+        }
+
+        @Override
+        public String toString() {
+            return "Change{"
+                    + "type=" + mType
+                    + ", position=" + mPosition
+                    + ", toPosition=" + mToPosition
+                    + ", count=" + mCount
+                    + '}';
+        }
+    }
+}
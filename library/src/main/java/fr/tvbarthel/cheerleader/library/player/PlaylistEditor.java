@@ -0,0 +1,397 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
+
+/**
+ * Batch of edits applied to the player playlist at once.
+ * <p/>
+ * Edits are recorded and only applied on {@link #apply()}, in a single pass. Listeners are then
+ * notified once : {@link CheerleaderPlaylistBatchListener} receive one {@link PlaylistChangeSet}
+ * and the player reacts once to the removal of the current track.
+ * <p/>
+ * Positions are expressed in the playlist as left by the previous edits of the batch. The play
+ * modes are applied once the tracks have been edited.
+ * <p/>
+ * See also {@link CheerleaderPlayer#edit()}
+ */
+public final class PlaylistEditor {
+
+    /**
+     * Repeat mode : move to the next track once a track has been completed, the first track
+     * following the last one.
+     */
+    public static final int REPEAT_ALL = PlayerPlaylist.REPEAT_ALL;
+
+    /**
+     * Repeat mode : play the completed track again. Skipping still moves to the next track.
+     */
+    public static final int REPEAT_ONE = PlayerPlaylist.REPEAT_ONE;
+
+    private static final int OP_ADD = 0;
+    private static final int OP_REMOVE = 1;
+    private static final int OP_MOVE = 2;
+    private static final int OP_CLEAR = 3;
+
+    /**
+     * Player on which the edits are applied.
+     */
+    private final CheerleaderPlayer mPlayer;
+
+    /**
+     * Size of the playlist when the editor was created.
+     */
+    private final int mInitialSize;
+
+    /**
+     * Size of the playlist once the recorded edits applied.
+     */
+    private int mSize;
+
+    /**
+     * Recorded edits.
+     */
+    private final ArrayList<Operation> mOperations;
+
+    /**
+     * Shuffle to apply, null to keep the current one.
+     */
+    private Boolean mShuffle;
+
+    /**
+     * Repeat mode to apply, null to keep the current one.
+     */
+    private Integer mRepeatMode;
+
+    /**
+     * Used to know if the edits have already been applied.
+     */
+    private boolean mIsApplied;
+
+    /**
+     * Batch of edits applied to the player playlist at once.
+     *
+     * @param player      player on which the edits are applied.
+     * @param initialSize current size of the playlist.
+     */
+    PlaylistEditor(CheerleaderPlayer player, int initialSize) {
+        mPlayer = player;
+        mInitialSize = initialSize;
+        mSize = initialSize;
+        mOperations = new ArrayList<>();
+    }
+
+    /**
+     * Add a track at the end of the playlist.
+     *
+     * @param track track to add.
+     * @return editor, for chaining.
+     */
+    public PlaylistEditor add(SoundCloudTrack track) {
+        return addAll(mSize, Collections.singletonList(track));
+    }
+
+    /**
+     * Add a track at a given position.
+     *
+     * @param position position of the track once added.
+     * @param track    track to add.
+     * @return editor, for chaining.
+     */
+    public PlaylistEditor add(int position, SoundCloudTrack track) {
+        return addAll(position, Collections.singletonList(track));
+    }
+
+    /**
+     * Add tracks at the end of the playlist.
+     *
+     * @param tracks tracks to add.
+     * @return editor, for chaining.
+     */
+    public PlaylistEditor addAll(List<SoundCloudTrack> tracks) {
+        return addAll(mSize, tracks);
+    }
+
+    /**
+     * Add tracks at a given position.
+     *
+     * @param position position of the first track once added.
+     * @param tracks   tracks to add.
+     * @return editor, for chaining.
+     */
+    public PlaylistEditor addAll(int position, List<SoundCloudTrack> tracks) {
+        checkNotApplied();
+        checkRange(position, 0, mSize);
+        if (!tracks.isEmpty()) {
+            mOperations.add(new Operation(OP_ADD, position, position, tracks.size(), new ArrayList<>(tracks)));
+            mSize += tracks.size();
+        }
+        return this;
+    }
+
+    /**
+     * Remove the track at a given position.
+     *
+     * @param position position of the track to remove.
+     * @return editor, for chaining.
+     */
+    public PlaylistEditor remove(int position) {
+        return remove(position, 1);
+    }
+
+    /**
+     * Remove a range of tracks.
+     *
+     * @param position position of the first track to remove.
+     * @param count    number of tracks to remove.
+     * @return editor, for chaining.
+     */
+    public PlaylistEditor remove(int position, int count) {
+        checkNotApplied();
+        checkRange(position, count, mSize);
+        if (count > 0) {
+            mOperations.add(new Operation(OP_REMOVE, position, position, count, null));
+            mSize -= count;
+        }
+        return this;
+    }
+
+    /**
+     * Move a track to another position.
+     *
+     * @param from position of the track to move.
+     * @param to   position of the track once moved.
+     * @return editor, for chaining.
+     */
+    public PlaylistEditor move(int from, int to) {
+        return move(from, to, 1);
+    }
+
+    /**
+     * Move a range of tracks to another position.
+     *
+     * @param from  position of the first track to move.
+     * @param to    position of the first track once moved.
+     * @param count number of tracks to move.
+     * @return editor, for chaining.
+     */
+    public PlaylistEditor move(int from, int to, int count) {
+        checkNotApplied();
+        checkRange(from, count, mSize);
+        checkRange(to, count, mSize);
+        if (count > 0 && from != to) {
+            mOperations.add(new Operation(OP_MOVE, from, to, count, null));
+        }
+        return this;
+    }
+
+    /**
+     * Remove all the tracks.
+     *
+     * @return editor, for chaining.
+     */
+    public PlaylistEditor clear() {
+        checkNotApplied();
+        mOperations.add(new Operation(OP_CLEAR, 0, 0, mSize, null));
+        mSize = 0;
+        return this;
+    }
+
+    /**
+     * Enable or disable the shuffle.
+     * <p/>
+     * While shuffled, every track of the playlist is played once, in a random order, before
+     * any track is repeated. Toggling the shuffle doesn't reorder the playlist.
+     *
+     * @param enable true to play the tracks in a random order.
+     * @return editor, for chaining.
+     */
+    public PlaylistEditor setShuffle(boolean enable) {
+        checkNotApplied();
+        mShuffle = enable;
+        return this;
+    }
+
+    /**
+     * Define what is played once a track has been completed.
+     *
+     * @param repeatMode {@link #REPEAT_ALL} to move to the next track, the first one following
+     *                   the last one, or {@link #REPEAT_ONE} to play the completed track again.
+     * @return editor, for chaining.
+     */
+    public PlaylistEditor setRepeatMode(int repeatMode) {
+        checkNotApplied();
+        if (repeatMode != REPEAT_ALL && repeatMode != REPEAT_ONE) {
+            throw new IllegalArgumentException("Unknown repeat mode : " + repeatMode);
+        }
+        mRepeatMode = repeatMode;
+        return this;
+    }
+
+    /**
+     * Used to know if the play modes are edited.
+     * private package.
+     *
+     * @return true if the shuffle or the repeat mode is defined.
+     */
+    boolean hasModeChanges() {
+        return mShuffle != null || mRepeatMode != null;
+    }
+
+    /**
+     * Apply the recorded edits to the player playlist and notify the listeners.
+     * <p/>
+     * An editor can only be applied once.
+     */
+    public void apply() {
+        checkNotApplied();
+        mIsApplied = true;
+        mPlayer.applyPlaylistEdit(this);
+    }
+
+    /**
+     * Apply the recorded edits to a playlist.
+     *
+     * @param playlist playlist to edit.
+     * @return changes applied.
+     */
+    PlaylistChangeSet applyTo(PlayerPlaylist playlist) {
+        if (playlist.size() != mInitialSize) {
+            throw new IllegalStateException("Playlist modified since the creation of the editor.");
+        }
+        PlaylistChangeSet changes = new PlaylistChangeSet();
+        playlist.beginEdit();
+        for (Operation operation : mOperations) {
+            switch (operation.mType) {
+                case OP_ADD:
+                    for (int i = 0; i < operation.mCount; i++) {
+                        SoundCloudTrack track = operation.mTracks.get(i);
+                        playlist.add(operation.mPosition + i, track);
+                        changes.onInserted(operation.mPosition + i, track);
+                    }
+                    break;
+                case OP_REMOVE:
+                    for (int i = 0; i < operation.mCount; i++) {
+                        changes.onRemoved(operation.mPosition, playlist.remove(operation.mPosition));
+                    }
+                    break;
+                case OP_MOVE:
+                    applyMove(playlist, operation, changes);
+                    break;
+                case OP_CLEAR:
+                    changes.onRemoved(0, playlist.clear());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown operation : " + operation.mType);
+            }
+        }
+        if (mShuffle != null) {
+            playlist.setShuffle(mShuffle);
+        }
+        if (mRepeatMode != null) {
+            playlist.setRepeatMode(mRepeatMode);
+        }
+        playlist.endEdit();
+        changes.setPlaylistEmpty(playlist.isEmpty());
+        return changes;
+    }
+
+    /**
+     * Move a range of tracks one track at a time.
+     *
+     * @param playlist  playlist to edit.
+     * @param operation move to apply.
+     * @param changes   change set recording the move.
+     */
+    private static void applyMove(PlayerPlaylist playlist, Operation operation, PlaylistChangeSet changes) {
+        int from = operation.mPosition;
+        int to = operation.mToPosition;
+        ArrayList<SoundCloudTrack> tracks = new ArrayList<>(operation.mCount);
+        for (int i = 0; i < operation.mCount; i++) {
+            tracks.add(playlist.get(from + i));
+        }
+        for (int i = 0; i < operation.mCount; i++) {
+            if (to > from) {
+                // the first track of the range is always the next one to move.
+                playlist.move(from, to + operation.mCount - 1);
+            } else {
+                playlist.move(from + i, to + i);
+            }
+        }
+        changes.onMoved(from, to, tracks);
+    }
+
+    /**
+     * Used to check that the edits haven't been applied yet.
+     */
+    private void checkNotApplied() {
+        if (mIsApplied) {
+            throw new IllegalStateException("Editor can't be used once applied.");
+        }
+    }
+
+    /**
+     * Check that a range lies in the playlist.
+     *
+     * @param position first position of the range.
+     * @param count    number of positions.
+     * @param size     size of the playlist.
+     */
+    private static void checkRange(int position, int count, int size) {
+        if (count < 0 || position < 0 || position + count > size) {
+            throw new IndexOutOfBoundsException("Range [" + position + ", " + (position + count)
+                    + ") out of [0, " + size + "]");
+        }
+    }
+
+    /**
+     * Recorded edit.
+     */
+    private static final class Operation {
+
+        /**
+         * One of the OP_* constants.
+         */
+        private final int mType;
+
+        /**
+         * Position of the first track.
+         */
+        private final int mPosition;
+
+        /**
+         * Position of the first track once moved.
+         */
+        private final int mToPosition;
+
+        /**
+         * Number of tracks.
+         */
+        private final int mCount;
+
+        /**
+         * Added tracks, null for other edits.
+         */
+        private final List<SoundCloudTrack> mTracks;
+
+        /**
+         * Recorded edit.
+         *
+         * @param type       one of the OP_* constants.
+         * @param position   position of the first track.
+         * @param toPosition position of the first track once moved.
+         * @param count      number of tracks.
+         * @param tracks     added tracks, null for other edits.
+         */
+        private Operation(int type, int position, int toPosition, int count, List<SoundCloudTrack> tracks) {
+            mType = type;
+            mPosition = position;
+            mToPosition = toPosition;
+            mCount = count;
+            mTracks = tracks;
+        }
+    }
+}
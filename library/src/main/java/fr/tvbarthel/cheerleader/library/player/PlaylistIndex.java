@@ -0,0 +1,510 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
+
+/**
+ * Ordered sequence of tracks indexed both by position and by track id.
+ * <p/>
+ * Tracks are stored in an implicit treap, a randomized balanced binary tree ordered by position
+ * where each node knows the size of its subtree. Access, insertion and removal at a given position
+ * run in O(log n). Each node also knows its parent and nodes are mapped by track id, which allows
+ * to retrieve the position of a track in O(log n) without scanning the sequence.
+ * <p/>
+ * Each track also owns a slot, a dense and stable number in [0, size) which doesn't change when
+ * other tracks are inserted before it. Removing a track moves the last slot into the freed one.
+ * <p/>
+ * The tree can be frozen with {@link #freeze()} : frozen nodes are never modified again, the
+ * following edits copy the nodes they would modify along their path. A frozen root is therefore
+ * an immutable version of the sequence which shares its unchanged subtrees with the later ones.
+ * Slots and parents only describe the live tree and are still updated on shared nodes, they are
+ * never read through a frozen root.
+ */
+final class PlaylistIndex {
+
+    /**
+     * Root of the treap, null when empty.
+     */
+    private Node mRoot;
+
+    /**
+     * Nodes holding each track id, a track can be added several times.
+     */
+    private HashMap<Integer, ArrayList<Node>> mNodesById;
+
+    /**
+     * Nodes indexed by slot.
+     */
+    private ArrayList<Node> mSlots;
+
+    /**
+     * Used to draw the node priorities.
+     */
+    private final Random mRandom;
+
+    /**
+     * Current version of the tree, nodes created by a previous version are frozen.
+     */
+    private int mVersion;
+
+    /**
+     * Ordered sequence of tracks indexed both by position and by track id.
+     */
+    PlaylistIndex() {
+        mNodesById = new HashMap<>();
+        mSlots = new ArrayList<>();
+        mRandom = new Random();
+    }
+
+    /**
+     * Retrieve the number of tracks.
+     *
+     * @return number of tracks.
+     */
+    int size() {
+        return size(mRoot);
+    }
+
+    /**
+     * Retrieve the track at a given position.
+     *
+     * @param position position of the track.
+     * @return track.
+     */
+    SoundCloudTrack get(int position) {
+        return nodeAt(position).mTrack;
+    }
+
+    /**
+     * Insert a track at a given position, following tracks are shifted by one.
+     *
+     * @param position position at which the track is inserted.
+     * @param track    track to insert.
+     */
+    void add(int position, SoundCloudTrack track) {
+        checkPosition(position, size());
+        Node node = new Node(track, mRandom.nextInt(), mVersion);
+        ArrayList<Node> nodes = mNodesById.get(track.getId());
+        if (nodes == null) {
+            nodes = new ArrayList<>(1);
+            mNodesById.put(track.getId(), nodes);
+        }
+        nodes.add(node);
+        node.mSlot = mSlots.size();
+        mSlots.add(node);
+
+        Node[] split = split(mRoot, position);
+        setRoot(merge(merge(split[0], node), split[1]));
+    }
+
+    /**
+     * Remove the track at a given position, following tracks are shifted by one.
+     *
+     * @param position position of the track to remove.
+     * @return removed track.
+     */
+    SoundCloudTrack remove(int position) {
+        checkPosition(position, size() - 1);
+        Node[] left = split(mRoot, position);
+        Node[] right = split(left[1], 1);
+        Node removed = right[0];
+        setRoot(merge(left[0], right[1]));
+
+        ArrayList<Node> nodes = mNodesById.get(removed.mTrack.getId());
+        nodes.remove(removed);
+        if (nodes.isEmpty()) {
+            mNodesById.remove(removed.mTrack.getId());
+        }
+
+        // keep the slots dense by moving the last one into the freed slot.
+        Node last = mSlots.remove(mSlots.size() - 1);
+        if (last != removed) {
+            last.mSlot = removed.mSlot;
+            mSlots.set(removed.mSlot, last);
+        }
+        return removed.mTrack;
+    }
+
+    /**
+     * Move the track at a given position to another one, the track keeps its slot.
+     *
+     * @param from position of the track to move.
+     * @param to   position of the track once moved.
+     */
+    void move(int from, int to) {
+        checkPosition(from, size() - 1);
+        checkPosition(to, size() - 1);
+        Node[] left = split(mRoot, from);
+        Node[] right = split(left[1], 1);
+        Node[] split = split(merge(left[0], right[1]), to);
+        setRoot(merge(merge(split[0], right[0]), split[1]));
+    }
+
+    /**
+     * Retrieve the position of the first occurrence of a track.
+     *
+     * @param track track to look for, matched by id.
+     * @return position or -1 if the track isn't in the sequence.
+     */
+    int indexOf(SoundCloudTrack track) {
+        ArrayList<Node> nodes = track == null ? null : mNodesById.get(track.getId());
+        if (nodes == null) {
+            return -1;
+        }
+        int position = Integer.MAX_VALUE;
+        for (Node node : nodes) {
+            position = Math.min(position, positionOf(node));
+        }
+        return position;
+    }
+
+    /**
+     * Retrieve the slot of the track at a given position.
+     *
+     * @param position position of the track.
+     * @return slot of the track.
+     */
+    int slotAt(int position) {
+        return nodeAt(position).mSlot;
+    }
+
+    /**
+     * Retrieve the position of the track owning a given slot.
+     *
+     * @param slot slot of the track.
+     * @return position of the track.
+     */
+    int positionOfSlot(int slot) {
+        return positionOf(mSlots.get(slot));
+    }
+
+    /**
+     * Freeze the current tree, following edits won't modify any of its nodes.
+     *
+     * @return frozen root, null when empty.
+     */
+    Node freeze() {
+        mVersion++;
+        return mRoot;
+    }
+
+    /**
+     * Retrieve the track at a given position of a frozen tree.
+     *
+     * @param root     frozen root.
+     * @param position position of the track.
+     * @return track.
+     */
+    static SoundCloudTrack get(Node root, int position) {
+        return nodeAt(root, position).mTrack;
+    }
+
+    /**
+     * Iterate over the tracks of a frozen tree in order.
+     *
+     * @param root frozen root, can be null.
+     * @return iterator.
+     */
+    static Iterator<SoundCloudTrack> iterator(final Node root) {
+        return new Iterator<SoundCloudTrack>() {
+
+            // iterative in-order traversal, the depth isn't bounded in the worst case.
+            private final ArrayList<Node> mStack = new ArrayList<>();
+            private Node mNext = root;
+
+            @Override
+            public boolean hasNext() {
+                return mNext != null || !mStack.isEmpty();
+            }
+
+            @Override
+            public SoundCloudTrack next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                while (mNext != null) {
+                    mStack.add(mNext);
+                    mNext = mNext.mLeft;
+                }
+                Node node = mStack.remove(mStack.size() - 1);
+                mNext = node.mRight;
+                return node.mTrack;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Frozen tree can't be modified.");
+            }
+        };
+    }
+
+    /**
+     * Copy the tracks of a frozen tree in order.
+     *
+     * @param root frozen root, can be null.
+     * @return tracks.
+     */
+    static ArrayList<SoundCloudTrack> toList(Node root) {
+        ArrayList<SoundCloudTrack> tracks = new ArrayList<>(size(root));
+        Iterator<SoundCloudTrack> iterator = iterator(root);
+        while (iterator.hasNext()) {
+            tracks.add(iterator.next());
+        }
+        return tracks;
+    }
+
+    /**
+     * Size of a subtree.
+     *
+     * @param node root of the subtree, can be null.
+     * @return number of nodes.
+     */
+    static int size(Node node) {
+        return node == null ? 0 : node.mSize;
+    }
+
+    /**
+     * Remove all the tracks.
+     */
+    void clear() {
+        mRoot = null;
+        // new tables rather than clearing them, in constant time whatever the former size.
+        mNodesById = new HashMap<>();
+        mSlots = new ArrayList<>();
+    }
+
+    /**
+     * Retrieve the node at a given position.
+     *
+     * @param position position of the node.
+     * @return node.
+     */
+    private Node nodeAt(int position) {
+        return nodeAt(mRoot, position);
+    }
+
+    /**
+     * Retrieve the node at a given position of a subtree.
+     *
+     * @param root     root of the subtree.
+     * @param position position of the node in the subtree.
+     * @return node.
+     */
+    private static Node nodeAt(Node root, int position) {
+        checkPosition(position, size(root) - 1);
+        Node node = root;
+        int index = position;
+        while (true) {
+            int leftSize = size(node.mLeft);
+            if (index < leftSize) {
+                node = node.mLeft;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.mRight;
+            }
+        }
+    }
+
+    /**
+     * Compute the position of a node by walking up to the root.
+     *
+     * @param node node in the treap.
+     * @return position of the node.
+     */
+    private static int positionOf(Node node) {
+        int position = size(node.mLeft);
+        Node current = node;
+        while (current.mParent != null) {
+            if (current == current.mParent.mRight) {
+                position += size(current.mParent.mLeft) + 1;
+            }
+            current = current.mParent;
+        }
+        return position;
+    }
+
+    /**
+     * Split a subtree in two.
+     *
+     * @param node  root of the subtree, can be null.
+     * @param count number of nodes to keep in the left part.
+     * @return left part holding the first count nodes and right part holding the others.
+     */
+    private Node[] split(Node subtree, int count) {
+        if (subtree == null) {
+            return new Node[]{null, null};
+        }
+        Node node = mutable(subtree);
+        Node[] split;
+        int leftSize = size(node.mLeft);
+        if (count <= leftSize) {
+            split = split(node.mLeft, count);
+            node.mLeft = split[1];
+            update(node);
+            split[1] = node;
+        } else {
+            split = split(node.mRight, count - leftSize - 1);
+            node.mRight = split[0];
+            update(node);
+            split[0] = node;
+        }
+        return split;
+    }
+
+    /**
+     * Concatenate two subtrees.
+     *
+     * @param left  nodes placed first, can be null.
+     * @param right nodes placed last, can be null.
+     * @return root of the concatenation.
+     */
+    private Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.mPriority > right.mPriority) {
+            Node node = mutable(left);
+            node.mRight = merge(node.mRight, right);
+            update(node);
+            return node;
+        }
+        Node node = mutable(right);
+        node.mLeft = merge(left, node.mLeft);
+        update(node);
+        return node;
+    }
+
+    /**
+     * Retrieve a node which can be modified, copying it if frozen.
+     * <p/>
+     * The copy replaces the frozen node in the live tree indexes, the caller must replace it in
+     * its parent.
+     *
+     * @param node node to modify.
+     * @return node itself or its copy.
+     */
+    private Node mutable(Node node) {
+        if (node.mVersion == mVersion) {
+            return node;
+        }
+        Node copy = new Node(node.mTrack, node.mPriority, mVersion);
+        copy.mSize = node.mSize;
+        copy.mSlot = node.mSlot;
+        copy.mLeft = node.mLeft;
+        copy.mRight = node.mRight;
+        copy.mParent = node.mParent;
+        mSlots.set(copy.mSlot, copy);
+        ArrayList<Node> nodes = mNodesById.get(node.mTrack.getId());
+        nodes.set(nodes.indexOf(node), copy);
+        return copy;
+    }
+
+    /**
+     * Refresh the size of a node and the parent of its children.
+     *
+     * @param node node whose children changed.
+     */
+    private static void update(Node node) {
+        node.mSize = 1 + size(node.mLeft) + size(node.mRight);
+        if (node.mLeft != null) {
+            node.mLeft.mParent = node;
+        }
+        if (node.mRight != null) {
+            node.mRight.mParent = node;
+        }
+    }
+
+    /**
+     * Define the root of the treap.
+     *
+     * @param root new root, can be null.
+     */
+    private void setRoot(Node root) {
+        mRoot = root;
+        if (root != null) {
+            root.mParent = null;
+        }
+    }
+
+    /**
+     * Check that a position is in bounds.
+     *
+     * @param position position to check.
+     * @param max      maximum position allowed.
+     */
+    private static void checkPosition(int position, int max) {
+        if (position < 0 || position > max) {
+            throw new IndexOutOfBoundsException("Position " + position + " out of [0, " + max + "]");
+        }
+    }
+
+    /**
+     * Node of the treap.
+     */
+    static final class Node {
+
+        /**
+         * Track at this position.
+         */
+        private final SoundCloudTrack mTrack;
+
+        /**
+         * Heap priority, randomly drawn to keep the tree balanced.
+         */
+        private final int mPriority;
+
+        /**
+         * Version of the tree which created the node.
+         */
+        private final int mVersion;
+
+        /**
+         * Number of nodes in the subtree rooted at this node.
+         */
+        private int mSize;
+
+        /**
+         * Dense and stable number of the track.
+         */
+        private int mSlot;
+
+        /**
+         * Tracks placed before.
+         */
+        private Node mLeft;
+
+        /**
+         * Tracks placed after.
+         */
+        private Node mRight;
+
+        /**
+         * Parent node, null for the root.
+         */
+        private Node mParent;
+
+        /**
+         * Node of the treap.
+         *
+         * @param track    track at this position.
+         * @param priority heap priority.
+         * @param version  version of the tree which created the node.
+         */
+        private Node(SoundCloudTrack track, int priority, int version) {
+            mTrack = track;
+            mPriority = priority;
+            mVersion = version;
+            mSize = 1;
+        }
+    }
+}
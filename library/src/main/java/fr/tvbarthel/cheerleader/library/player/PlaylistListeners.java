@@ -0,0 +1,115 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
+
+/**
+ * Listeners of the player playlist, notified once the changes of an edit have been applied.
+ * <p/>
+ * {@link CheerleaderPlaylistBatchListener} receive the whole change set while each
+ * {@link CheerleaderPlaylistListener} is notified track by track.
+ */
+final class PlaylistListeners {
+
+    /**
+     * Listeners notified track by track.
+     */
+    private final ArrayList<CheerleaderPlaylistListener> mTrackListeners;
+
+    /**
+     * Listeners notified of the change sets.
+     */
+    private final ArrayList<CheerleaderPlaylistBatchListener> mBatchListeners;
+
+    /**
+     * Listeners of the player playlist.
+     */
+    PlaylistListeners() {
+        mTrackListeners = new ArrayList<>();
+        mBatchListeners = new ArrayList<>();
+    }
+
+    /**
+     * Register a listener notified track by track.
+     *
+     * @param listener listener to register.
+     */
+    void add(CheerleaderPlaylistListener listener) {
+        mTrackListeners.add(listener);
+    }
+
+    /**
+     * Unregister a listener notified track by track.
+     *
+     * @param listener listener to unregister.
+     */
+    void remove(CheerleaderPlaylistListener listener) {
+        mTrackListeners.remove(listener);
+    }
+
+    /**
+     * Register a listener notified of the change sets.
+     *
+     * @param listener listener to register.
+     */
+    void add(CheerleaderPlaylistBatchListener listener) {
+        mBatchListeners.add(listener);
+    }
+
+    /**
+     * Unregister a listener notified of the change sets.
+     *
+     * @param listener listener to unregister.
+     */
+    void remove(CheerleaderPlaylistBatchListener listener) {
+        mBatchListeners.remove(listener);
+    }
+
+    /**
+     * Notify the listeners of the changes applied by an edit.
+     *
+     * @param changes changes applied to the playlist, never empty.
+     */
+    void dispatch(PlaylistChangeSet changes) {
+        for (CheerleaderPlaylistBatchListener listener : mBatchListeners) {
+            listener.onPlaylistChanged(changes);
+        }
+        if (!mTrackListeners.isEmpty()) {
+            dispatchTrackChanges(changes);
+        }
+    }
+
+    /**
+     * Notify the {@link CheerleaderPlaylistListener} of each added or removed track.
+     *
+     * @param changes changes applied to the playlist.
+     */
+    private void dispatchTrackChanges(PlaylistChangeSet changes) {
+        List<PlaylistChangeSet.Change> changeList = changes.getChanges();
+        int lastRemoval = -1;
+        for (int i = 0; i < changeList.size(); i++) {
+            if (changeList.get(i).getType() == PlaylistChangeSet.TYPE_REMOVED) {
+                lastRemoval = i;
+            }
+        }
+        for (int i = 0; i < changeList.size(); i++) {
+            PlaylistChangeSet.Change change = changeList.get(i);
+            List<SoundCloudTrack> tracks = change.getTracks();
+            for (int j = 0; j < tracks.size(); j++) {
+                if (change.getType() == PlaylistChangeSet.TYPE_INSERTED) {
+                    for (CheerleaderPlaylistListener listener : mTrackListeners) {
+                        listener.onTrackAdded(tracks.get(j));
+                    }
+                } else if (change.getType() == PlaylistChangeSet.TYPE_REMOVED) {
+                    // the playlist can only be empty after the last removal.
+                    boolean isEmpty = changes.isPlaylistEmpty() && i == lastRemoval && j == tracks.size() - 1;
+                    for (CheerleaderPlaylistListener listener : mTrackListeners) {
+                        listener.onTrackRemoved(tracks.get(j), isEmpty);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Lazily generated random permutation of the {@link PlaylistIndex} slots.
+ * <p/>
+ * The permutation is filled one draw at a time by a Fisher-Yates process run on a virtual array
+ * where only the swapped cells are stored. Enabling the shuffle is O(1), each draw is O(1) and
+ * every slot is drawn once before a new cycle starts.
+ * <p/>
+ * The permutation splits the slots in a drawn prefix, in play order, and an undrawn suffix.
+ * Added slots join the undrawn suffix, removed slots are swapped out of the virtual array.
+ */
+final class PlaylistShuffle {
+
+    /**
+     * Slot stored in each swapped cell of the virtual array, other cells hold their own index.
+     */
+    private HashMap<Integer, Integer> mSlots;
+
+    /**
+     * Cell of each swapped slot, other slots are in the cell of the same index.
+     */
+    private HashMap<Integer, Integer> mCells;
+
+    /**
+     * Number of slots.
+     */
+    private int mSize;
+
+    /**
+     * Number of slots drawn in the current cycle.
+     */
+    private int mDrawn;
+
+    /**
+     * Cell of the current slot, -1 if none.
+     */
+    private int mCursor;
+
+    /**
+     * Used to draw the slots.
+     */
+    private final Random mRandom;
+
+    /**
+     * Lazily generated random permutation of the {@link PlaylistIndex} slots.
+     */
+    PlaylistShuffle() {
+        mRandom = new Random();
+        reset(0, -1);
+    }
+
+    /**
+     * Start a new cycle.
+     *
+     * @param size        number of slots.
+     * @param currentSlot slot of the current track, considered as already drawn. -1 if none.
+     */
+    void reset(int size, int currentSlot) {
+        mSlots = new HashMap<>();
+        mCells = new HashMap<>();
+        mSize = size;
+        mDrawn = 0;
+        mCursor = -1;
+        if (currentSlot >= 0) {
+            swap(0, cellOf(currentSlot));
+            mDrawn = 1;
+            mCursor = 0;
+        }
+    }
+
+    /**
+     * Move to the next slot, drawing it if needed. A new cycle starts once all slots are drawn.
+     *
+     * @return next slot or -1 if there is no slot.
+     */
+    int next() {
+        if (mSize == 0) {
+            return -1;
+        }
+        drawAhead(1);
+        if (mCursor + 1 < mDrawn) {
+            mCursor++;
+        }
+        return slotAt(mCursor);
+    }
+
+    /**
+     * Move back to the previously drawn slot.
+     *
+     * @return previous slot, the current one at the start of the cycle. -1 if there is no slot.
+     */
+    int previous() {
+        if (mSize == 0) {
+            return -1;
+        }
+        if (mCursor > 0) {
+            mCursor--;
+        }
+        return slotAt(Math.max(mCursor, 0));
+    }
+
+    /**
+     * Retrieve the slots which will be returned by the next calls to {@link #next()}, drawing them
+     * if needed.
+     *
+     * @param count maximum number of slots.
+     * @return upcoming slots, limited to the current cycle except for the first one.
+     */
+    int[] peek(int count) {
+        if (mSize == 0 || count <= 0) {
+            return new int[0];
+        }
+        drawAhead(count);
+        int available = Math.max(1, Math.min(count, mDrawn - mCursor - 1));
+        int[] slots = new int[available];
+        for (int i = 0; i < available; i++) {
+            slots[i] = slotAt(Math.min(mCursor + 1 + i, mDrawn - 1));
+        }
+        return slots;
+    }
+
+    /**
+     * Make a slot the current one, drawing it right after the current slot if not drawn yet.
+     *
+     * @param slot slot of the track being played.
+     */
+    void moveTo(int slot) {
+        int cell = cellOf(slot);
+        if (cell <= mCursor) {
+            // already played in this cycle, exchange it with the current one.
+            swap(cell, mCursor);
+            return;
+        }
+        if (cell >= mDrawn) {
+            // not drawn yet, draw it.
+            swap(cell, mDrawn);
+            cell = mDrawn;
+            mDrawn++;
+        }
+        // make it the first upcoming slot then move to it.
+        swap(cell, mCursor + 1);
+        mCursor++;
+    }
+
+    /**
+     * Register a slot added at the end of the {@link PlaylistIndex} slots.
+     */
+    void onAdded() {
+        // the new cell holds the new slot and lies in the undrawn part.
+        mSize++;
+    }
+
+    /**
+     * Unregister a removed slot.
+     * <p/>
+     * If the removed slot was the current one, moves to the next slot.
+     *
+     * @param slot     removed slot.
+     * @param lastSlot last slot before the removal, moved into the removed slot by the
+     *                 {@link PlaylistIndex} if different.
+     */
+    void onRemoved(int slot, int lastSlot) {
+        int cell = cellOf(slot);
+        boolean currentRemoved = cell == mCursor;
+        if (cell <= mCursor) {
+            // played slot, keep the current one under the cursor once the cursor moved back.
+            if (cell < mCursor) {
+                swap(cell, mCursor);
+                swap(cell, mCursor - 1);
+            }
+            swap(mCursor, mDrawn - 1);
+            cell = mDrawn - 1;
+            mCursor--;
+        } else if (cell < mDrawn) {
+            // upcoming slot already drawn.
+            swap(cell, mDrawn - 1);
+            cell = mDrawn - 1;
+        }
+        if (cell < mDrawn) {
+            mDrawn--;
+        }
+        // move the slot at the end of the virtual array before shrinking it.
+        swap(cell, mSize - 1);
+        mSlots.remove(mSize - 1);
+        mCells.remove(slot);
+        mSize--;
+
+        if (lastSlot != slot) {
+            // the last slot has been renamed by the index.
+            int lastCell = cellOf(lastSlot);
+            mCells.remove(lastSlot);
+            mSlots.put(lastCell, slot);
+            mCells.put(slot, lastCell);
+        }
+
+        if (currentRemoved) {
+            // the upcoming slot replaces the removed current one.
+            next();
+        }
+    }
+
+    /**
+     * Retrieve the current slot.
+     *
+     * @return current slot or -1 if none.
+     */
+    int current() {
+        return mCursor < 0 ? -1 : slotAt(mCursor);
+    }
+
+    /**
+     * Draw slots until the given number of slots is available after the cursor, or until the end
+     * of the cycle. Start a new cycle if no slot is available after the cursor.
+     *
+     * @param count number of slots needed after the cursor.
+     */
+    private void drawAhead(int count) {
+        if (mCursor + 1 == mDrawn && mDrawn == mSize) {
+            // every slot has been played, the current one opens the next cycle.
+            reset(mSize, mCursor < 0 ? -1 : slotAt(mCursor));
+        }
+        while (mDrawn < mSize && mDrawn - mCursor - 1 < count) {
+            swap(mDrawn, mDrawn + mRandom.nextInt(mSize - mDrawn));
+            mDrawn++;
+        }
+    }
+
+    /**
+     * Swap two cells of the virtual array.
+     *
+     * @param first  first cell.
+     * @param second second cell.
+     */
+    private void swap(int first, int second) {
+        if (first == second) {
+            return;
+        }
+        int firstSlot = slotAt(first);
+        int secondSlot = slotAt(second);
+        mSlots.put(first, secondSlot);
+        mCells.put(secondSlot, first);
+        mSlots.put(second, firstSlot);
+        mCells.put(firstSlot, second);
+    }
+
+    /**
+     * Retrieve the slot stored in a cell.
+     *
+     * @param cell cell of the virtual array.
+     * @return slot.
+     */
+    private int slotAt(int cell) {
+        Integer slot = mSlots.get(cell);
+        return slot == null ? cell : slot;
+    }
+
+    /**
+     * Retrieve the cell storing a slot.
+     *
+     * @param slot slot.
+     * @return cell of the virtual array.
+     */
+    private int cellOf(int slot) {
+        Integer cell = mCells.get(slot);
+        return cell == null ? slot : cell;
+    }
+}
@@ -0,0 +1,160 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import fr.tvbarthel.cheerleader.library.client.SoundCloudTrack;
+
+/**
+ * Immutable version of the player playlist.
+ * <p/>
+ * A snapshot shares its structure with the live playlist and with the other versions : taking
+ * one doesn't copy any track and it can be read from any thread while the playlist keeps being
+ * edited. Retrieving a track by position runs in O(log n), prefer {@link #iterator()} to go through
+ * the tracks. {@link #indexOf(Object)} and {@link #contains(Object)} look the tracks up by id.
+ * <p/>
+ * The play modes in effect are published along with the tracks.
+ * <p/>
+ * See also {@link CheerleaderPlayer#getPlaylistSnapshot()}
+ */
+public final class PlaylistSnapshot extends AbstractList<SoundCloudTrack> {
+
+    /**
+     * Snapshot of an empty playlist.
+     */
+    static final PlaylistSnapshot EMPTY = new PlaylistSnapshot(null, 0, false, PlayerPlaylist.REPEAT_ALL);
+
+    /**
+     * Frozen root of the playlist index, null when empty.
+     */
+    private final PlaylistIndex.Node mRoot;
+
+    /**
+     * Number of tracks.
+     */
+    private final int mSize;
+
+    /**
+     * Version of the playlist.
+     */
+    private final long mVersion;
+
+    /**
+     * Used to know if the tracks are played in a random order.
+     */
+    private final boolean mIsShuffled;
+
+    /**
+     * Repeat mode, {@link PlaylistEditor#REPEAT_ALL} or {@link PlaylistEditor#REPEAT_ONE}
+     */
+    private final int mRepeatMode;
+
+    /**
+     * First position of each track id, built from the frozen index on the first lookup.
+     */
+    private volatile HashMap<Integer, Integer> mPositionsById;
+
+    /**
+     * Immutable version of the player playlist.
+     *
+     * @param root       frozen root of the playlist index, null when empty.
+     * @param version    version of the playlist.
+     * @param shuffled   true if the tracks are played in a random order.
+     * @param repeatMode repeat mode.
+     */
+    PlaylistSnapshot(PlaylistIndex.Node root, long version, boolean shuffled, int repeatMode) {
+        mRoot = root;
+        mSize = PlaylistIndex.size(root);
+        mVersion = version;
+        mIsShuffled = shuffled;
+        mRepeatMode = repeatMode;
+    }
+
+    /**
+     * Retrieve the version of the playlist, incremented each time the tracks or the play modes
+     * are edited.
+     *
+     * @return version.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Used to know if the tracks are played in a random order.
+     * <p/>
+     * See also {@link PlaylistEditor#setShuffle(boolean)}
+     *
+     * @return true if the shuffle is enabled.
+     */
+    public boolean isShuffled() {
+        return mIsShuffled;
+    }
+
+    /**
+     * Retrieve what is played once a track has been completed.
+     * <p/>
+     * See also {@link PlaylistEditor#setRepeatMode(int)}
+     *
+     * @return {@link PlaylistEditor#REPEAT_ALL} or {@link PlaylistEditor#REPEAT_ONE}
+     */
+    public int getRepeatMode() {
+        return mRepeatMode;
+    }
+
+    @Override
+    public SoundCloudTrack get(int location) {
+        return PlaylistIndex.get(mRoot, location);
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public Iterator<SoundCloudTrack> iterator() {
+        return PlaylistIndex.iterator(mRoot);
+    }
+
+    @Override
+    public int indexOf(Object object) {
+        if (!(object instanceof SoundCloudTrack)) {
+            return -1;
+        }
+        Integer position = getPositionsById().get(((SoundCloudTrack) object).getId());
+        return position == null ? -1 : position;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return indexOf(object) != -1;
+    }
+
+    /**
+     * Retrieve the first position of each track id.
+     * <p/>
+     * Built once per snapshot in a single pass over the frozen index, the snapshot being
+     * immutable. Concurrent first lookups may build it twice, with the same result.
+     *
+     * @return positions indexed by track id.
+     */
+    private HashMap<Integer, Integer> getPositionsById() {
+        HashMap<Integer, Integer> positions = mPositionsById;
+        if (positions == null) {
+            positions = new HashMap<>(mSize * 4 / 3 + 1);
+            int position = 0;
+            Iterator<SoundCloudTrack> iterator = PlaylistIndex.iterator(mRoot);
+            while (iterator.hasNext()) {
+                Integer id = iterator.next().getId();
+                if (!positions.containsKey(id)) {
+                    positions.put(id, position);
+                }
+                position++;
+            }
+            mPositionsById = positions;
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,718 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import java.util.PriorityQueue;
+
+/**
+ * Deterministic {@link PlaybackEngine} which doesn't decode anything.
+ * <p/>
+ * Time is virtual : nothing happens until the shared {@link SimulatedPlaybackEngine.Clock} is
+ * advanced, events are then reported in time order on the thread advancing the clock. Prepare,
+ * seek and stall timings are configured through the {@link SimulatedPlaybackEngine.Builder} so
+ * that the playback logic can be exercised and measured on a plain JVM, the engines being driven
+ * by the test itself.
+ * <p/>
+ * As the platform player, calls made in an invalid state are reported through
+ * {@link Listener#onError(PlaybackEngine, int, int)} with {@link #ERROR_INVALID_OPERATION} as extra.
+ * <p/>
+ * Not thread safe : the engines and their clock must be used from the thread which created the
+ * clock, any other thread gets an {@link IllegalStateException}. As a consequence the engines
+ * can't be given to the {@link PlaybackService}, which drives them from its own player thread.
+ */
+public final class SimulatedPlaybackEngine implements PlaybackEngine {
+
+    /**
+     * Extra code reported along {@link #ERROR_UNKNOWN} when a call is made in an invalid state.
+     */
+    public static final int ERROR_INVALID_OPERATION = -38;
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_INITIALIZED = 1;
+    private static final int STATE_PREPARING = 2;
+    private static final int STATE_PREPARED = 3;
+    private static final int STATE_STARTED = 4;
+    private static final int STATE_PAUSED = 5;
+    private static final int STATE_COMPLETED = 6;
+    private static final int STATE_STOPPED = 7;
+    private static final int STATE_RELEASED = 8;
+
+    /**
+     * No pending deadline.
+     */
+    private static final long NONE = -1;
+
+    /**
+     * Clock on which the events are scheduled.
+     */
+    private final Clock mClock;
+
+    /**
+     * Delay between {@link #prepareAsync()} and the end of the preparation, in milli.
+     */
+    private final long mPrepareDelay;
+
+    /**
+     * Delay between {@link #seekTo(int)} and the end of the seek, in milli.
+     */
+    private final long mSeekDelay;
+
+    /**
+     * Playback duration between two stalls in milli, 0 to never stall.
+     */
+    private final long mStallInterval;
+
+    /**
+     * Duration of a stall in milli.
+     */
+    private final long mStallDuration;
+
+    /**
+     * Duration of each stream, in milli.
+     */
+    private final long mTrackDuration;
+
+    /**
+     * Listener notified of the engine events, may be null.
+     */
+    private Listener mListener;
+
+    /**
+     * One of the STATE_* constants.
+     */
+    private int mState;
+
+    /**
+     * Url of the current stream.
+     */
+    private String mDataSource;
+
+    /**
+     * Playback position at {@link #mPositionTime}, in milli.
+     */
+    private long mPosition;
+
+    /**
+     * Virtual time at which {@link #mPosition} has been computed.
+     */
+    private long mPositionTime;
+
+    /**
+     * Playback duration since the last stall, in milli.
+     */
+    private long mPlayedSinceStall;
+
+    /**
+     * Virtual time at which the preparation ends, {@link #NONE} if not preparing.
+     */
+    private long mPrepareDeadline;
+
+    /**
+     * Virtual time at which the seek ends, {@link #NONE} if not seeking.
+     */
+    private long mSeekDeadline;
+
+    /**
+     * Virtual time at which the stall ends, {@link #NONE} if not stalled.
+     */
+    private long mStallDeadline;
+
+    /**
+     * Incremented each time the pending event is rescheduled, used to drop the outdated ones.
+     */
+    private int mGeneration;
+
+    /**
+     * Engine started once the current stream completes, may be null.
+     */
+    private SimulatedPlaybackEngine mNextEngine;
+
+    /**
+     * Output volume.
+     */
+    private float mVolume;
+
+    /**
+     * Deterministic {@link PlaybackEngine} which doesn't decode anything.
+     *
+     * @param builder builder holding the timings.
+     */
+    private SimulatedPlaybackEngine(Builder builder) {
+        mClock = builder.clock;
+        mPrepareDelay = builder.prepareDelay;
+        mSeekDelay = builder.seekDelay;
+        mStallInterval = builder.stallInterval;
+        mStallDuration = builder.stallDuration;
+        mTrackDuration = builder.trackDuration;
+        mVolume = 1f;
+        clearDeadlines();
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void setDataSource(String url) {
+        if (mState != STATE_IDLE) {
+            throw new IllegalStateException("Data source can only be set once reset.");
+        }
+        mDataSource = url;
+        mState = STATE_INITIALIZED;
+    }
+
+    @Override
+    public void prepareAsync() {
+        if (mState != STATE_INITIALIZED && mState != STATE_STOPPED) {
+            throw new IllegalStateException("Data source must be set before preparing.");
+        }
+        mState = STATE_PREPARING;
+        mPosition = 0;
+        mPlayedSinceStall = 0;
+        mPrepareDeadline = mClock.now() + mPrepareDelay;
+        reschedule();
+    }
+
+    @Override
+    public void start() {
+        switch (mState) {
+            case STATE_STARTED:
+                return;
+            case STATE_COMPLETED:
+                if (mPosition >= mTrackDuration) {
+                    mPosition = 0;
+                }
+                // fall through
+            case STATE_PREPARED:
+            case STATE_PAUSED:
+                mState = STATE_STARTED;
+                mPositionTime = mClock.now();
+                reschedule();
+                break;
+            default:
+                reportInvalidOperation();
+                break;
+        }
+    }
+
+    @Override
+    public void pause() {
+        if (mState == STATE_PAUSED) {
+            return;
+        }
+        if (mState != STATE_STARTED && mState != STATE_COMPLETED) {
+            reportInvalidOperation();
+            return;
+        }
+        syncPosition();
+        mState = STATE_PAUSED;
+        reschedule();
+    }
+
+    @Override
+    public void stop() {
+        if (mState == STATE_IDLE || mState == STATE_INITIALIZED || mState == STATE_RELEASED) {
+            reportInvalidOperation();
+            return;
+        }
+        syncPosition();
+        mState = STATE_STOPPED;
+        clearDeadlines();
+        reschedule();
+    }
+
+    @Override
+    public void seekTo(int milli) {
+        if (mState != STATE_PREPARED && mState != STATE_STARTED
+                && mState != STATE_PAUSED && mState != STATE_COMPLETED) {
+            reportInvalidOperation();
+            return;
+        }
+        syncPosition();
+        mPosition = Math.max(0, Math.min(milli, mTrackDuration));
+        // the seek supersedes the current stall, if any.
+        mStallDeadline = NONE;
+        mSeekDeadline = mClock.now() + mSeekDelay;
+        reschedule();
+    }
+
+    @Override
+    public void reset() {
+        if (mState == STATE_RELEASED) {
+            return;
+        }
+        mState = STATE_IDLE;
+        mDataSource = null;
+        mPosition = 0;
+        mPlayedSinceStall = 0;
+        mNextEngine = null;
+        clearDeadlines();
+        reschedule();
+    }
+
+    @Override
+    public void release() {
+        reset();
+        mState = STATE_RELEASED;
+        mListener = null;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        long position = mPosition;
+        if (isAdvancing()) {
+            position = Math.min(mTrackDuration, position + mClock.now() - mPositionTime);
+        }
+        return (int) position;
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        mVolume = volume;
+    }
+
+    @Override
+    public boolean isGaplessSupported() {
+        return true;
+    }
+
+    @Override
+    public void setNextEngine(PlaybackEngine next) {
+        mNextEngine = (SimulatedPlaybackEngine) next;
+    }
+
+    /**
+     * Url of the current stream.
+     *
+     * @return url, null if idle.
+     */
+    public String getDataSource() {
+        return mDataSource;
+    }
+
+    /**
+     * Output volume.
+     *
+     * @return volume between 0 and 1.
+     */
+    public float getVolume() {
+        return mVolume;
+    }
+
+    /**
+     * Used to know if the playback is currently moving forward.
+     *
+     * @return true if started and neither seeking nor stalled.
+     */
+    public boolean isPlaying() {
+        return isAdvancing();
+    }
+
+    /**
+     * Used to know if the playback is stalled, either while seeking or buffering.
+     *
+     * @return true if stalled.
+     */
+    public boolean isBuffering() {
+        return mSeekDeadline != NONE || mStallDeadline != NONE;
+    }
+
+    /**
+     * Used to know if the position currently moves forward with the clock.
+     *
+     * @return true if started and neither seeking nor stalled.
+     */
+    private boolean isAdvancing() {
+        return mState == STATE_STARTED && !isBuffering();
+    }
+
+    /**
+     * Bring {@link #mPosition} up to the current virtual time.
+     */
+    private void syncPosition() {
+        long now = mClock.now();
+        if (isAdvancing()) {
+            long played = Math.min(mTrackDuration - mPosition, now - mPositionTime);
+            mPosition += played;
+            mPlayedSinceStall += played;
+        }
+        mPositionTime = now;
+    }
+
+    /**
+     * Drop any pending preparation, seek or stall.
+     */
+    private void clearDeadlines() {
+        mPrepareDeadline = NONE;
+        mSeekDeadline = NONE;
+        mStallDeadline = NONE;
+    }
+
+    /**
+     * Schedule the next event according to the current state, dropping the pending one.
+     */
+    private void reschedule() {
+        mGeneration++;
+        long time;
+        if (mPrepareDeadline != NONE) {
+            time = mPrepareDeadline;
+        } else if (mSeekDeadline != NONE) {
+            time = mSeekDeadline;
+        } else if (mStallDeadline != NONE) {
+            time = mStallDeadline;
+        } else if (isAdvancing()) {
+            long remaining = mTrackDuration - mPosition;
+            if (mStallInterval > 0) {
+                remaining = Math.min(remaining, Math.max(0, mStallInterval - mPlayedSinceStall));
+            }
+            time = mClock.now() + remaining;
+        } else {
+            return;
+        }
+        final int generation = mGeneration;
+        mClock.schedule(time, new Runnable() {
+            @Override
+            public void run() {
+                if (generation == mGeneration) {
+                    onEvent();
+                }
+            }
+        });
+    }
+
+    /**
+     * Handle the pending event once its time has been reached.
+     */
+    private void onEvent() {
+        syncPosition();
+        if (mPrepareDeadline != NONE) {
+            mPrepareDeadline = NONE;
+            mState = STATE_PREPARED;
+            reschedule();
+            if (mListener != null) {
+                mListener.onPrepared(this);
+            }
+        } else if (mSeekDeadline != NONE) {
+            mSeekDeadline = NONE;
+            mPlayedSinceStall = 0;
+            reschedule();
+            if (mListener != null) {
+                mListener.onSeekComplete(this);
+            }
+        } else if (mStallDeadline != NONE) {
+            mStallDeadline = NONE;
+            mPlayedSinceStall = 0;
+            reschedule();
+            if (mListener != null) {
+                mListener.onInfo(this, INFO_BUFFERING_END, 0);
+            }
+        } else if (mPosition >= mTrackDuration) {
+            complete();
+        } else {
+            mStallDeadline = mClock.now() + mStallDuration;
+            reschedule();
+            if (mListener != null) {
+                mListener.onInfo(this, INFO_BUFFERING_START, 0);
+            }
+        }
+    }
+
+    /**
+     * Complete the current stream and start the next engine, if any.
+     */
+    private void complete() {
+        mState = STATE_COMPLETED;
+        reschedule();
+        SimulatedPlaybackEngine next = mNextEngine;
+        mNextEngine = null;
+        if (next != null && next.mState == STATE_PREPARED) {
+            next.start();
+        }
+        if (mListener != null) {
+            mListener.onCompletion(this);
+        }
+    }
+
+    /**
+     * Report a call made in an invalid state, as the platform player does.
+     */
+    private void reportInvalidOperation() {
+        mClock.schedule(mClock.now(), new Runnable() {
+            @Override
+            public void run() {
+                if (mState != STATE_RELEASED && mListener != null) {
+                    mListener.onError(SimulatedPlaybackEngine.this, ERROR_UNKNOWN, ERROR_INVALID_OPERATION);
+                }
+            }
+        });
+    }
+
+    /**
+     * Virtual clock shared by the simulated engines.
+     * <p/>
+     * Not thread safe, must be used from the thread which created it, as the engines using it.
+     */
+    public static final class Clock {
+
+        /**
+         * Thread which created the clock, the only one allowed to use it.
+         */
+        private final Thread mThread;
+
+        /**
+         * Current virtual time in milli.
+         */
+        private long mNow;
+
+        /**
+         * Used to run the events scheduled at the same time in their scheduling order.
+         */
+        private long mSequence;
+
+        /**
+         * Pending events, ordered by time.
+         */
+        private final PriorityQueue<Event> mEvents;
+
+        /**
+         * Virtual clock shared by the simulated engines, starting at 0.
+         */
+        public Clock() {
+            mThread = Thread.currentThread();
+            mEvents = new PriorityQueue<>();
+        }
+
+        /**
+         * Current virtual time.
+         *
+         * @return time in milli.
+         */
+        public long now() {
+            checkThread();
+            return mNow;
+        }
+
+        /**
+         * Move the time forward, running the events reached in time order.
+         *
+         * @param milli duration in milli.
+         */
+        public void advance(long milli) {
+            checkThread();
+            if (milli < 0) {
+                throw new IllegalArgumentException("Time can't go backward : " + milli);
+            }
+            long target = mNow + milli;
+            Event event = mEvents.peek();
+            while (event != null && event.mTime <= target) {
+                mEvents.poll();
+                mNow = event.mTime;
+                event.mRunnable.run();
+                event = mEvents.peek();
+            }
+            mNow = target;
+        }
+
+        /**
+         * Move the time to the next pending event and run it.
+         *
+         * @return false if no event was pending.
+         */
+        public boolean runNext() {
+            checkThread();
+            Event event = mEvents.peek();
+            if (event == null) {
+                return false;
+            }
+            advance(event.mTime - mNow);
+            return true;
+        }
+
+        /**
+         * Schedule an event.
+         *
+         * @param time     virtual time at which the event must run, in milli.
+         * @param runnable event.
+         */
+        void schedule(long time, Runnable runnable) {
+            checkThread();
+            mEvents.add(new Event(Math.max(time, mNow), mSequence++, runnable));
+        }
+
+        /**
+         * Check that the clock is used from the thread which created it.
+         */
+        private void checkThread() {
+            if (Thread.currentThread() != mThread) {
+                throw new IllegalStateException("Simulated engines must be used from the thread which created "
+                        + "their clock, not from " + Thread.currentThread().getName());
+            }
+        }
+    }
+
+    /**
+     * Builder used to configure the timings of the simulated engines.
+     */
+    public static class Builder {
+
+        private final Clock clock;
+        private long prepareDelay;
+        private long seekDelay;
+        private long stallInterval;
+        private long stallDuration;
+        private long trackDuration;
+
+        /**
+         * Builder used to configure the timings of the simulated engines.
+         *
+         * @param clock clock on which the engines schedule their events.
+         */
+        public Builder(Clock clock) {
+            if (clock == null) {
+                throw new IllegalArgumentException("Clock can't be null.");
+            }
+            this.clock = clock;
+            this.trackDuration = 180000;
+        }
+
+        /**
+         * Time needed to prepare a stream.
+         *
+         * @param prepareDelay delay in milli.
+         * @return {@link SimulatedPlaybackEngine.Builder}
+         */
+        public Builder prepareDelay(long prepareDelay) {
+            this.prepareDelay = checkDuration(prepareDelay);
+            return this;
+        }
+
+        /**
+         * Time needed to buffer the stream once seeking.
+         *
+         * @param seekDelay delay in milli.
+         * @return {@link SimulatedPlaybackEngine.Builder}
+         */
+        public Builder seekDelay(long seekDelay) {
+            this.seekDelay = checkDuration(seekDelay);
+            return this;
+        }
+
+        /**
+         * Periodic stalls of the playback while buffering.
+         *
+         * @param stallInterval playback duration between two stalls in milli, 0 to never stall.
+         * @param stallDuration duration of each stall in milli.
+         * @return {@link SimulatedPlaybackEngine.Builder}
+         */
+        public Builder stalls(long stallInterval, long stallDuration) {
+            this.stallInterval = checkDuration(stallInterval);
+            this.stallDuration = checkDuration(stallDuration);
+            return this;
+        }
+
+        /**
+         * Duration of each stream, 3 minutes by default.
+         *
+         * @param trackDuration duration in milli.
+         * @return {@link SimulatedPlaybackEngine.Builder}
+         */
+        public Builder trackDuration(long trackDuration) {
+            this.trackDuration = checkDuration(trackDuration);
+            return this;
+        }
+
+        /**
+         * Create an idle engine.
+         *
+         * @return engine.
+         */
+        public SimulatedPlaybackEngine build() {
+            return new SimulatedPlaybackEngine(this);
+        }
+
+        /**
+         * Factory creating engines with the current timings.
+         * <p/>
+         * Meant for test harnesses creating the engines on the clock thread, not for
+         * {@link PlaybackOptions#playbackEngine(PlaybackEngine.Factory)}.
+         *
+         * @return factory.
+         */
+        public PlaybackEngine.Factory factory() {
+            final Builder builder = copy();
+            return new PlaybackEngine.Factory() {
+                @Override
+                public PlaybackEngine create() {
+                    return builder.build();
+                }
+            };
+        }
+
+        /**
+         * Copy the builder, so that the factory isn't affected by later changes.
+         *
+         * @return copy.
+         */
+        private Builder copy() {
+            return new Builder(clock)
+                    .prepareDelay(prepareDelay)
+                    .seekDelay(seekDelay)
+                    .stalls(stallInterval, stallDuration)
+                    .trackDuration(trackDuration);
+        }
+
+        /**
+         * Check that a duration isn't negative.
+         *
+         * @param duration duration in milli.
+         * @return the duration.
+         */
+        private static long checkDuration(long duration) {
+            if (duration < 0) {
+                throw new IllegalArgumentException("Duration can't be negative : " + duration);
+            }
+            return duration;
+        }
+    }
+
+    /**
+     * Event scheduled on the virtual clock.
+     */
+    private static final class Event implements Comparable<Event> {
+
+        /**
+         * Virtual time at which the event runs.
+         */
+        private final long mTime;
+
+        /**
+         * Scheduling order, used between events of the same time.
+         */
+        private final long mSequence;
+
+        /**
+         * Event to run.
+         */
+        private final Runnable mRunnable;
+
+        /**
+         * Event scheduled on the virtual clock.
+         *
+         * @param time     virtual time at which the event runs.
+         * @param sequence scheduling order.
+         * @param runnable event to run.
+         */
+        private Event(long time, long sequence, Runnable runnable) {
+            mTime = time;
+            mSequence = sequence;
+            mRunnable = runnable;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (mTime != other.mTime) {
+                return mTime < other.mTime ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+
+/**
+ * Disk cache of the track streams, keyed by track id and bounded in size.
+ * <p/>
+ * Streams are written in a partial file then committed once fully downloaded. Least recently
+ * played streams are deleted first when the cache exceeds its maximum size.
+ */
+final class StreamCache {
+
+    /**
+     * Extension of the fully downloaded streams.
+     */
+    private static final String EXTENSION_COMPLETE = ".stream";
+
+    /**
+     * Extension of the streams being downloaded.
+     */
+    private static final String EXTENSION_PARTIAL = ".partial";
+
+    /**
+     * Directory holding the streams.
+     */
+    private final File mDirectory;
+
+    /**
+     * Maximum size of the cache in bytes.
+     */
+    private final long mMaxSize;
+
+    /**
+     * Ids of the tracks currently being written.
+     */
+    private final HashSet<Integer> mWriting;
+
+    /**
+     * Disk cache of the track streams.
+     *
+     * @param directory directory holding the streams, created if needed.
+     * @param maxSize   maximum size of the cache in bytes.
+     */
+    StreamCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+        mWriting = new HashSet<>();
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new IllegalStateException("Can't create stream cache directory : " + directory);
+        }
+        // partial files left by a previous process can't be resumed.
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(EXTENSION_PARTIAL)) {
+                    delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieve the fully downloaded stream of a track.
+     *
+     * @param trackId track id.
+     * @return stream file or null if not cached.
+     */
+    synchronized File get(int trackId) {
+        File file = new File(mDirectory, trackId + EXTENSION_COMPLETE);
+        if (!file.exists()) {
+            return null;
+        }
+        // keep track of the last play to evict the least recently played streams first.
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Start writing the stream of a track.
+     *
+     * @param trackId track id.
+     * @return partial file to write or null if the stream is already being written.
+     */
+    synchronized File startWriting(int trackId) {
+        if (!mWriting.add(trackId)) {
+            return null;
+        }
+        return new File(mDirectory, trackId + EXTENSION_PARTIAL);
+    }
+
+    /**
+     * Commit a fully downloaded stream then evict streams if the cache exceeds its size.
+     *
+     * @param trackId track id.
+     * @param partial partial file returned by {@link StreamCache#startWriting(int)}
+     */
+    synchronized void commit(int trackId, File partial) {
+        mWriting.remove(trackId);
+        if (!partial.renameTo(new File(mDirectory, trackId + EXTENSION_COMPLETE))) {
+            delete(partial);
+            return;
+        }
+        trim();
+    }
+
+    /**
+     * Discard a stream which won't be fully downloaded.
+     *
+     * @param trackId track id.
+     * @param partial partial file returned by {@link StreamCache#startWriting(int)}
+     */
+    synchronized void abort(int trackId, File partial) {
+        mWriting.remove(trackId);
+        delete(partial);
+    }
+
+    /**
+     * Delete the least recently played streams until the cache fits in its maximum size.
+     */
+    private void trim() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= mMaxSize) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long diff = lhs.lastModified() - rhs.lastModified();
+                return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && size > mMaxSize; i++) {
+            if (files[i].getName().endsWith(EXTENSION_COMPLETE)) {
+                size -= files[i].length();
+                delete(files[i]);
+            }
+        }
+    }
+
+    /**
+     * Delete a file, ignoring failures.
+     *
+     * @param file file to delete.
+     */
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * Local http proxy placed between the media player and SoundCloud.
+ * <p/>
+ * Streams are served from the {@link StreamCache} when already downloaded, byte ranges included.
+ * Otherwise they are fetched from SoundCloud and copied into the cache while being played.
+ * <p/>
+ * Only streams played from their first byte are cached, ranged requests on a stream which isn't
+ * cached yet are forwarded as is.
+ * <p/>
+ * The proxy isn't open to the other applications of the device : local urls hold a secret drawn
+ * for each proxy and only the stream urls registered through {@link #getUrl(int, String)} are
+ * fetched, a request never chooses the upstream host.
+ */
+final class StreamProxy {
+
+    /**
+     * Log cat.
+     */
+    private static final String TAG = StreamProxy.class.getSimpleName();
+
+    /**
+     * Name of the loopback interface the proxy listens on.
+     */
+    private static final String HOST = "localhost";
+
+    /**
+     * Number of random bytes of the secret.
+     */
+    private static final int SECRET_SIZE = 16;
+
+    /**
+     * Prefix of the Range header.
+     */
+    private static final String HEADER_RANGE = "range:";
+
+    /**
+     * Unit of the supported ranges.
+     */
+    private static final String RANGE_UNIT = "bytes=";
+
+    /**
+     * Content type of the cached streams.
+     */
+    private static final String CONTENT_TYPE = "audio/mpeg";
+
+    /**
+     * Size of the segments copied from the upstream to the player.
+     */
+    private static final int SEGMENT_SIZE = 8192;
+
+    /**
+     * Disk cache of the streams.
+     */
+    private final StreamCache mCache;
+
+    /**
+     * Client used to fetch the streams which aren't cached.
+     */
+    private final OkHttpClient mOkHttpClient;
+
+    /**
+     * Secret expected as first path segment of the local urls.
+     */
+    private final String mSecret;
+
+    /**
+     * Upstream stream urls registered for each track id.
+     */
+    private final HashMap<Integer, String> mStreamUrls;
+
+    /**
+     * Executor running one task per player connection.
+     */
+    private ExecutorService mExecutor;
+
+    /**
+     * Socket accepting the player connections.
+     */
+    private ServerSocket mServerSocket;
+
+    /**
+     * Local http proxy.
+     *
+     * @param cache disk cache of the streams.
+     */
+    StreamProxy(StreamCache cache) {
+        mCache = cache;
+        mOkHttpClient = new OkHttpClient();
+        mStreamUrls = new HashMap<>();
+        byte[] secret = new byte[SECRET_SIZE];
+        new SecureRandom().nextBytes(secret);
+        mSecret = ByteString.of(secret).hex();
+    }
+
+    /**
+     * Start listening on the loopback interface.
+     *
+     * @throws IOException if the proxy can't listen.
+     */
+    synchronized void start() throws IOException {
+        if (mServerSocket != null) {
+            return;
+        }
+        mServerSocket = new ServerSocket(0, 0, InetAddress.getByName(HOST));
+        mExecutor = Executors.newCachedThreadPool();
+        final ServerSocket serverSocket = mServerSocket;
+        final ExecutorService executor = mExecutor;
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept(serverSocket, executor);
+            }
+        }, TAG);
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * Stop listening and close the pending connections.
+     */
+    synchronized void stop() {
+        if (mServerSocket == null) {
+            return;
+        }
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close the stream proxy : " + e.getMessage());
+        }
+        mExecutor.shutdownNow();
+        mServerSocket = null;
+        mExecutor = null;
+    }
+
+    /**
+     * Build the url to give to the player in order to play a stream through the proxy.
+     * <p/>
+     * The stream url is registered for the track, replacing the previous one.
+     *
+     * @param trackId   id of the track, used as cache key.
+     * @param streamUrl upstream stream url.
+     * @return local url of the stream or the upstream one if the proxy isn't started.
+     */
+    synchronized String getUrl(int trackId, String streamUrl) {
+        if (mServerSocket == null) {
+            return streamUrl;
+        }
+        mStreamUrls.put(trackId, streamUrl);
+        return new HttpUrl.Builder()
+                .scheme("http")
+                .host(mServerSocket.getInetAddress().getHostAddress())
+                .port(mServerSocket.getLocalPort())
+                .addPathSegment(mSecret)
+                .addPathSegment(String.valueOf(trackId))
+                .build()
+                .toString();
+    }
+
+    /**
+     * Retrieve the stream url registered for a track.
+     *
+     * @param trackId id of the track.
+     * @return upstream stream url, null if none has been registered.
+     */
+    private synchronized String getStreamUrl(int trackId) {
+        return mStreamUrls.get(trackId);
+    }
+
+    /**
+     * Used to know if a requested url holds the secret of the proxy.
+     *
+     * @param url requested url.
+     * @return true if the first path segment is the secret.
+     */
+    private boolean isAuthorized(HttpUrl url) {
+        if (url == null || url.pathSize() != 2) {
+            return false;
+        }
+        // constant time comparison, the secret can't be guessed byte after byte.
+        return MessageDigest.isEqual(mSecret.getBytes(), url.pathSegments().get(0).getBytes());
+    }
+
+    /**
+     * Accept the player connections until the socket is closed.
+     *
+     * @param serverSocket socket accepting the connections.
+     * @param executor     executor running one task per connection.
+     */
+    private void accept(ServerSocket serverSocket, ExecutorService executor) {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(socket);
+                    }
+                });
+            } catch (IOException e) {
+                // socket closed by stop().
+                return;
+            }
+        }
+    }
+
+    /**
+     * Serve a player connection.
+     *
+     * @param socket player connection.
+     */
+    private void handle(Socket socket) {
+        try {
+            BufferedSource request = Okio.buffer(Okio.source(socket));
+            BufferedSink response = Okio.buffer(Okio.sink(socket));
+
+            String[] requestLine = request.readUtf8LineStrict().split(" ");
+            String range = null;
+            String header;
+            while (!(header = request.readUtf8LineStrict()).isEmpty()) {
+                if (header.toLowerCase().startsWith(HEADER_RANGE)) {
+                    range = header.substring(HEADER_RANGE.length()).trim();
+                }
+            }
+
+            HttpUrl url = requestLine.length < 2 ? null : HttpUrl.parse("http://" + HOST + requestLine[1]);
+            if (!isAuthorized(url)) {
+                writeStatus(response, "403 Forbidden");
+                response.writeUtf8("\r\n").flush();
+                return;
+            }
+
+            int trackId = Integer.parseInt(url.pathSegments().get(1));
+            String streamUrl = getStreamUrl(trackId);
+            if (streamUrl == null) {
+                writeStatus(response, "404 Not Found");
+                response.writeUtf8("\r\n").flush();
+                return;
+            }
+            long[] bounds = parseRange(range);
+            File cached = mCache.get(trackId);
+            if (cached != null) {
+                serveFromDisk(response, cached, bounds);
+            } else {
+                serveFromNetwork(response, trackId, streamUrl, range, bounds);
+            }
+        } catch (IOException | NumberFormatException e) {
+            // player closed the connection, mostly while seeking.
+            Log.d(TAG, "Stream connection ended : " + e.getMessage());
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to close stream connection : " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Serve a stream, or a byte range of it, from the disk cache.
+     *
+     * @param response sink of the player connection.
+     * @param file     cached stream.
+     * @param bounds   first and last requested bytes, null for the whole stream.
+     * @throws IOException if the stream can't be read or written.
+     */
+    private void serveFromDisk(BufferedSink response, File file, long[] bounds) throws IOException {
+        long length = file.length();
+        long start = bounds == null ? 0 : bounds[0];
+        long end = bounds == null || bounds[1] == -1 || bounds[1] >= length ? length - 1 : bounds[1];
+        if (start >= length || start > end) {
+            writeStatus(response, "416 Requested Range Not Satisfiable");
+            response.writeUtf8("Content-Range: bytes */" + length + "\r\n\r\n").flush();
+            return;
+        }
+
+        writeStatus(response, bounds == null ? "200 OK" : "206 Partial Content");
+        response.writeUtf8("Content-Type: " + CONTENT_TYPE + "\r\n");
+        response.writeUtf8("Accept-Ranges: bytes\r\n");
+        response.writeUtf8("Content-Length: " + (end - start + 1) + "\r\n");
+        if (bounds != null) {
+            response.writeUtf8("Content-Range: bytes " + start + "-" + end + "/" + length + "\r\n");
+        }
+        response.writeUtf8("\r\n");
+
+        BufferedSource source = Okio.buffer(Okio.source(file));
+        try {
+            source.skip(start);
+            response.write(source, end - start + 1);
+            response.flush();
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Serve a stream from SoundCloud and copy it into the disk cache while being served.
+     *
+     * @param response  sink of the player connection.
+     * @param trackId   id of the track.
+     * @param streamUrl upstream stream url.
+     * @param range     Range header sent by the player, can be null.
+     * @param bounds    first and last requested bytes, null for the whole stream.
+     * @throws IOException if the stream can't be fetched or written.
+     */
+    private void serveFromNetwork(BufferedSink response, int trackId, String streamUrl,
+                                  String range, long[] bounds) throws IOException {
+        Request.Builder request = new Request.Builder().url(streamUrl);
+        if (range != null) {
+            request.header("Range", range);
+        }
+        Response upstream = mOkHttpClient.newCall(request.build()).execute();
+        try {
+            writeStatus(response, upstream.code() + " " + upstream.message());
+            forwardHeader(response, upstream, "Content-Type");
+            forwardHeader(response, upstream, "Content-Length");
+            forwardHeader(response, upstream, "Content-Range");
+            forwardHeader(response, upstream, "Accept-Ranges");
+            response.writeUtf8("\r\n");
+
+            boolean fromStart = bounds == null || (bounds[0] == 0 && bounds[1] == -1);
+            File partial = fromStart && upstream.isSuccessful() ? mCache.startWriting(trackId) : null;
+            if (partial == null) {
+                response.writeAll(upstream.body().source());
+                response.flush();
+                return;
+            }
+            tee(upstream, response, trackId, partial);
+        } finally {
+            upstream.close();
+        }
+    }
+
+    /**
+     * Copy the upstream body to the player and to the disk cache.
+     * <p/>
+     * The stream is committed in the cache only once fully downloaded and discarded otherwise.
+     *
+     * @param upstream upstream response.
+     * @param response sink of the player connection.
+     * @param trackId  id of the track.
+     * @param partial  partial file of the stream.
+     * @throws IOException if the stream can't be fetched or written.
+     */
+    private void tee(Response upstream, BufferedSink response, int trackId, File partial) throws IOException {
+        long expected = upstream.body().contentLength();
+        BufferedSource source = upstream.body().source();
+        BufferedSink file = null;
+        boolean complete = false;
+        try {
+            file = Okio.buffer(Okio.sink(partial));
+            Buffer segment = new Buffer();
+            long written = 0;
+            long read;
+            while ((read = source.read(segment, SEGMENT_SIZE)) != -1) {
+                segment.copyTo(file.buffer(), 0, read);
+                file.emitCompleteSegments();
+                response.write(segment, read);
+                response.emitCompleteSegments();
+                written += read;
+            }
+            response.flush();
+            file.close();
+            file = null;
+            complete = expected == -1 || written == expected;
+        } finally {
+            if (file != null) {
+                file.close();
+            }
+            if (complete) {
+                mCache.commit(trackId, partial);
+            } else {
+                mCache.abort(trackId, partial);
+            }
+        }
+    }
+
+    /**
+     * Write the status line of a response.
+     *
+     * @param response sink of the player connection.
+     * @param status   status code and reason phrase.
+     * @throws IOException if the status can't be written.
+     */
+    private static void writeStatus(BufferedSink response, String status) throws IOException {
+        response.writeUtf8("HTTP/1.1 " + status + "\r\n");
+        response.writeUtf8("Connection: close\r\n");
+    }
+
+    /**
+     * Forward a header of the upstream response to the player, if present.
+     *
+     * @param response sink of the player connection.
+     * @param upstream upstream response.
+     * @param name     name of the header.
+     * @throws IOException if the header can't be written.
+     */
+    private static void forwardHeader(BufferedSink response, Response upstream, String name) throws IOException {
+        String value = upstream.header(name);
+        if (value != null) {
+            response.writeUtf8(name + ": " + value + "\r\n");
+        }
+    }
+
+    /**
+     * Parse a single byte range such as "bytes=100-" or "bytes=100-200".
+     *
+     * @param range value of the Range header, can be null.
+     * @return first and last requested bytes, last one is -1 when open ended. Null if the header
+     * is missing or not supported.
+     */
+    private static long[] parseRange(String range) {
+        if (range == null || !range.startsWith(RANGE_UNIT) || range.indexOf(',') != -1) {
+            return null;
+        }
+        String[] bounds = range.substring(RANGE_UNIT.length()).split("-", -1);
+        if (bounds.length != 2 || bounds[0].isEmpty()) {
+            return null;
+        }
+        try {
+            long start = Long.parseLong(bounds[0].trim());
+            long end = bounds[1].trim().isEmpty() ? -1 : Long.parseLong(bounds[1].trim());
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package fr.tvbarthel.cheerleader.library.player;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Resolve the redirections of the SoundCloud stream urls ahead of time.
+ * <p/>
+ * Each stream url answers with a redirection to a short lived CDN location. Resolving it before
+ * the track is played spares the media player an extra round trip when preparing the stream.
+ * <p/>
+ * Resolved locations are cached until their expiry, unresolved urls are returned as is.
+ */
+final class StreamUrlResolver {
+
+    /**
+     * Log cat.
+     */
+    private static final String TAG = StreamUrlResolver.class.getSimpleName();
+
+    /**
+     * Maximum number of cached locations.
+     */
+    private static final int MAX_ENTRIES = 32;
+
+    /**
+     * Time to live of a location which doesn't carry its own expiry, in milliseconds.
+     */
+    private static final long DEFAULT_TIME_TO_LIVE = 2 * 60 * 1000;
+
+    /**
+     * Margin kept before the expiry of a location in order to give the player time to open it.
+     */
+    private static final long EXPIRY_MARGIN = 30 * 1000;
+
+    /**
+     * Query parameter holding the expiry of a signed CDN location, in seconds since epoch.
+     */
+    private static final String PARAM_EXPIRES = "Expires";
+
+    /**
+     * Client used to request the stream urls without following the redirections.
+     */
+    private final OkHttpClient mOkHttpClient;
+
+    /**
+     * Single thread executor resolving the urls in the background.
+     */
+    private final ExecutorService mExecutor;
+
+    /**
+     * Resolved locations mapped by stream url, least recently used first.
+     */
+    private final LinkedHashMap<String, Location> mLocations;
+
+    /**
+     * Stream urls being resolved.
+     */
+    private final HashSet<String> mPending;
+
+    /**
+     * Resolve the redirections of the SoundCloud stream urls ahead of time.
+     */
+    StreamUrlResolver() {
+        mOkHttpClient = new OkHttpClient.Builder()
+                .followRedirects(false)
+                .followSslRedirects(false)
+                .build();
+        mExecutor = Executors.newSingleThreadExecutor();
+        mPending = new HashSet<>();
+        mLocations = new LinkedHashMap<String, Location>(MAX_ENTRIES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Location> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+
+    /**
+     * Retrieve the resolved location of a stream url.
+     *
+     * @param streamUrl signed stream url.
+     * @return resolved location or the given url if not resolved yet or expired.
+     */
+    synchronized String get(String streamUrl) {
+        Location location = mLocations.get(streamUrl);
+        if (location == null) {
+            return streamUrl;
+        }
+        if (location.mExpiresAt <= System.currentTimeMillis()) {
+            mLocations.remove(streamUrl);
+            return streamUrl;
+        }
+        return location.mUrl;
+    }
+
+    /**
+     * Resolve in the background the stream urls which aren't resolved yet.
+     *
+     * @param streamUrls signed stream urls, in the order they will be played.
+     */
+    synchronized void prefetch(List<String> streamUrls) {
+        long now = System.currentTimeMillis();
+        for (final String streamUrl : streamUrls) {
+            Location location = mLocations.get(streamUrl);
+            if ((location != null && location.mExpiresAt > now) || !mPending.add(streamUrl)) {
+                continue;
+            }
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Location resolved = resolve(streamUrl);
+                    synchronized (StreamUrlResolver.this) {
+                        mPending.remove(streamUrl);
+                        if (resolved != null) {
+                            mLocations.put(streamUrl, resolved);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Forget the location of a stream url, for instance once the player failed to open it.
+     *
+     * @param streamUrl signed stream url.
+     */
+    synchronized void invalidate(String streamUrl) {
+        mLocations.remove(streamUrl);
+    }
+
+    /**
+     * Stop resolving and forget the resolved locations.
+     */
+    synchronized void release() {
+        mExecutor.shutdownNow();
+        mLocations.clear();
+        mPending.clear();
+    }
+
+    /**
+     * Request a stream url and read its redirection.
+     *
+     * @param streamUrl signed stream url.
+     * @return resolved location or null if the url doesn't redirect or can't be requested.
+     */
+    private Location resolve(String streamUrl) {
+        Response response = null;
+        try {
+            Request request = new Request.Builder().url(streamUrl).build();
+            response = mOkHttpClient.newCall(request).execute();
+            String header = response.header("Location");
+            HttpUrl location = header == null ? null : response.request().url().resolve(header);
+            if (!response.isRedirect() || location == null) {
+                return null;
+            }
+            return new Location(location.toString(), getExpiry(location));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to resolve stream url : " + e.getMessage());
+            return null;
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    /**
+     * Compute the time until which a location can be given to the player.
+     *
+     * @param location resolved location.
+     * @return expiry in milliseconds since epoch.
+     */
+    private static long getExpiry(HttpUrl location) {
+        long expiresAt = System.currentTimeMillis() + DEFAULT_TIME_TO_LIVE;
+        String expires = location.queryParameter(PARAM_EXPIRES);
+        if (expires != null) {
+            try {
+                expiresAt = Math.min(expiresAt, Long.parseLong(expires) * 1000 - EXPIRY_MARGIN);
+            } catch (NumberFormatException e) {
+                Log.d(TAG, "Unsupported location expiry : " + expires);
+            }
+        }
+        return expiresAt;
+    }
+
+    /**
+     * Resolved location of a stream url.
+     */
+    private static final class Location {
+
+        /**
+         * CDN location.
+         */
+        private final String mUrl;
+
+        /**
+         * Expiry in milliseconds since epoch.
+         */
+        private final long mExpiresAt;
+
+        /**
+         * Resolved location of a stream url.
+         *
+         * @param url       CDN location.
+         * @param expiresAt expiry in milliseconds since epoch.
+         */
+        private Location(String url, long expiresAt) {
+            mUrl = url;
+            mExpiresAt = expiresAt;
+        }
+    }
+}
@@ -121,10 +121,7 @@ public class ArtistActivity extends ActionBarActivity implements
         setTrackListPadding();
 
         // check if tracks are already loaded into the player.
-        ArrayList<SoundCloudTrack> currentsTracks = mCheerleaderPlayer.getTracks();
-        if (currentsTracks != null) {
-            mPlaylistTracks.addAll(currentsTracks);
-        }
+        mPlaylistTracks.addAll(mCheerleaderPlayer.getPlaylistSnapshot());
 
         // synchronize the player view with the current player (loaded track, playing state, etc.)
         mPlaybackView.synchronize(mCheerleaderPlayer);
@@ -323,7 +320,7 @@ public class ArtistActivity extends ActionBarActivity implements
         mRetrieveTracksListener = new TrackView.Listener() {
             @Override
             public void onTrackClicked(SoundCloudTrack track) {
-                if (mCheerleaderPlayer.getTracks().contains(track)) {
+                if (mCheerleaderPlayer.getPlaylistSnapshot().contains(track)) {
                     mCheerleaderPlayer.play(track);
                 } else {
                     boolean playNow = !mCheerleaderPlayer.isPlaying();